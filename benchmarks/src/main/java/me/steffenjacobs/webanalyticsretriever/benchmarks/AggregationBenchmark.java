@@ -0,0 +1,66 @@
+package me.steffenjacobs.webanalyticsretriever.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.steffenjacobs.webanalyticsretriever.aggregation.ParallelAggregator;
+import me.steffenjacobs.webanalyticsretriever.aggregation.PartialAggregate;
+
+/**
+ * Scaling of the {@link ParallelAggregator} with the number of output files and
+ * threads.
+ * 
+ * @author Steffen Jacobs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class AggregationBenchmark {
+
+	@Param({ "4", "32" })
+	private int files;
+
+	@Param({ "1000", "100000" })
+	private int rowsPerFile;
+
+	@Param({ "1", "2", "4", "8" })
+	private int threads;
+
+	private Path directory;
+	private List<Path> paths;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("aggregation-benchmark");
+		paths = BenchmarkData.writeCsvFiles(directory, files, rowsPerFile);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkData.delete(directory);
+	}
+
+	@Benchmark
+	public PartialAggregate aggregate() throws IOException {
+		return ParallelAggregator.aggregate(paths, threads);
+	}
+}
@@ -0,0 +1,81 @@
+package me.steffenjacobs.webanalyticsretriever.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever;
+
+/**
+ * Creates reproducible synthetic output files of the
+ * {@link WebAnalyticsRetriever}: platform names with and without markers and
+ * log-normally distributed search result counts, about 5% of them missing.
+ * 
+ * @author Steffen Jacobs
+ */
+final class BenchmarkData {
+
+	/** The number of platform names. */
+	static final int PLATFORMS = 250;
+
+	private BenchmarkData() {
+	}
+
+	/** @return the platform names, each with and without all markers. */
+	static List<String> terms() {
+		final List<String> terms = new ArrayList<>();
+		for (int i = 0; i < PLATFORMS; i++) {
+			terms.add("Platform " + i);
+			for (String keyWord : WebAnalyticsRetriever.KEY_WORDS) {
+				terms.add("Platform " + i + " " + keyWord);
+			}
+		}
+		return terms;
+	}
+
+	/** @return a search result count or -1 for a failed search. */
+	static long count(Random random) {
+		return random.nextInt(20) == 0 ? -1 : (long) Math.exp(8 + 3 * random.nextGaussian());
+	}
+
+	/** Writes a csv file in the current format with the given number of rows. */
+	static void writeCsv(Path file, int rows, long seed) throws IOException {
+		final List<String> terms = terms();
+		final Random random = new Random(seed);
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < rows; i++) {
+				writer.write(terms.get(i % terms.size()) + ", " + count(random) + ", " + count(random) + ", " + count(random) + ", " + count(random) + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Writes the given number of output files named like the files of the
+	 * {@link WebAnalyticsRetriever}.
+	 */
+	static List<Path> writeCsvFiles(Path directory, int files, int rowsPerFile) throws IOException {
+		final List<Path> paths = new ArrayList<>();
+		for (int i = 0; i < files; i++) {
+			final Path file = directory.resolve(String.format("output-2019-%02d-%02d-10-00.csv", i / 28 + 1, i % 28 + 1));
+			writeCsv(file, rowsPerFile, i);
+			paths.add(file);
+		}
+		return paths;
+	}
+
+	/** Deletes the directory with all files in it. */
+	static void delete(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
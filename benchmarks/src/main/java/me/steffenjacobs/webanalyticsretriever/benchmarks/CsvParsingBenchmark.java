@@ -0,0 +1,89 @@
+package me.steffenjacobs.webanalyticsretriever.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import me.steffenjacobs.webanalyticsretriever.aggregation.PartialAggregate;
+import me.steffenjacobs.webanalyticsretriever.aggregation.SearchResultsCsvParser;
+
+/**
+ * Parsing of a single output file of the given number of rows: the
+ * memory-mapped {@link SearchResultsCsvParser} against splitting each line with
+ * {@link String#split(String)} as the AnalyticsAggregator originally did, and
+ * the complete import into the per-term statistics.
+ * 
+ * @author Steffen Jacobs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class CsvParsingBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	private int rows;
+
+	private Path directory;
+	private Path file;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("csv-parsing-benchmark");
+		file = directory.resolve("output-2019-08-01-10-00.csv");
+		BenchmarkData.writeCsv(file, rows, 42);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkData.delete(directory);
+	}
+
+	@Benchmark
+	public int mappedParser(Blackhole blackhole) throws IOException {
+		return SearchResultsCsvParser.parse(file, (term, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact) -> {
+			blackhole.consume(term);
+			blackhole.consume(reddit + googleSearchApi + googleWebSearch + googleWebSearchExact);
+		});
+	}
+
+	@Benchmark
+	public int stringSplit(Blackhole blackhole) throws IOException {
+		int count = 0;
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] split = line.split(",");
+				blackhole.consume(split[0]);
+				blackhole.consume(Long.parseLong(split[1].trim()) + Long.parseLong(split[2].trim()) + Long.parseLong(split[3].trim())
+						+ Long.parseLong(split[4].trim()));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public PartialAggregate parseIntoStatistics() throws IOException {
+		return PartialAggregate.parse(file);
+	}
+}
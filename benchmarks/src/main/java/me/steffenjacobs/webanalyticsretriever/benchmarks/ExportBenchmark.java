@@ -0,0 +1,99 @@
+package me.steffenjacobs.webanalyticsretriever.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.steffenjacobs.webanalyticsretriever.AnalyticsAggregator;
+
+/**
+ * Export of the given number of rows of averages and run counts to the
+ * consolidated csv files with
+ * {@link AnalyticsAggregator#writeAggregated(java.util.Collection, boolean, Writer)},
+ * with exact and with rounded averages. The rows are written to a
+ * {@link CountingWriter} instead of a file, so that the disk does not
+ * distort the results.
+ * 
+ * @author Steffen Jacobs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ExportBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	private int rows;
+
+	private List<AnalyticsAggregator.Result> results;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		results = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			results.add(new AnalyticsAggregator.Result("Platform " + i, average(random), average(random), average(random), average(random), random.nextInt(100),
+					random.nextInt(100), random.nextInt(100), random.nextInt(100)));
+		}
+	}
+
+	@Benchmark
+	public long exact() throws IOException {
+		return export(false);
+	}
+
+	@Benchmark
+	public long rounded() throws IOException {
+		return export(true);
+	}
+
+	private long export(boolean rounded) throws IOException {
+		final CountingWriter writer = new CountingWriter();
+		AnalyticsAggregator.writeAggregated(results, rounded, writer);
+		return writer.count;
+	}
+
+	private static double average(Random random) {
+		return Math.exp(8 + 3 * random.nextGaussian());
+	}
+
+	/** Discards all characters and counts them. */
+	private static final class CountingWriter extends Writer {
+		private long count;
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
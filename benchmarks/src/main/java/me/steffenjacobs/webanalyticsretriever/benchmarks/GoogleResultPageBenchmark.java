@@ -0,0 +1,73 @@
+package me.steffenjacobs.webanalyticsretriever.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.jsoup.Jsoup;
+
+import me.steffenjacobs.webanalyticsretriever.GoogleResultPage;
+
+/**
+ * Extraction of the search result count from a Google WebSearch result page
+ * with the given number of search results: parsing the complete page with
+ * Jsoup, as the Selenium backend does, against scanning the page only up to
+ * the relevant elements, as the HTTP backend does.
+ * 
+ * @author Steffen Jacobs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GoogleResultPageBenchmark {
+
+	@Param({ "10", "100" })
+	private int results;
+
+	private String html;
+
+	@Setup
+	public void setup() {
+		final StringBuilder sb = new StringBuilder("<!doctype html><html><head><title>smart home - Google-Suche</title>");
+		for (int i = 0; i < 20; i++) {
+			sb.append("<script>(function(){var a=").append(i).append(";window.google=window.google||{};google.x=function(b){return b+a;};})();</script>");
+		}
+		sb.append("<style>.g{line-height:1.54}.r{font-weight:normal;margin:0}</style></head><body><div id=\"searchform\"><form action=\"/search\">");
+		sb.append("<input name=\"q\" value=\"smart home\"></form></div><div id=\"appbar\"><div id=\"resultStats\">Ungefähr 1.460.000 Ergebnisse");
+		sb.append("<nobr> (0,45 Sekunden)&nbsp;</nobr></div></div><div id=\"topstuff\"></div><div id=\"search\">");
+		for (int i = 0; i < results; i++) {
+			sb.append("<div class=\"g\"><div class=\"r\"><a href=\"https://example.com/").append(i).append("\"><h3>Result ").append(i);
+			sb.append("</h3><cite>https://example.com/").append(i).append("</cite></a></div><div class=\"s\"><span class=\"st\">");
+			for (int j = 0; j < 10; j++) {
+				sb.append("Lorem ipsum dolor sit amet, <em>smart home</em> consetetur sadipscing elitr. ");
+			}
+			sb.append("</span></div></div>");
+		}
+		sb.append("</div><div id=\"foot\"></div></body></html>");
+		html = sb.toString();
+	}
+
+	@Benchmark
+	public long jsoupDocument() {
+		return GoogleResultPage.fromDocument(Jsoup.parse(html)).getResultCount();
+	}
+
+	@Benchmark
+	public long elementScan() throws IOException {
+		return GoogleResultPage.scan(new StringReader(html)).getResultCount();
+	}
+}
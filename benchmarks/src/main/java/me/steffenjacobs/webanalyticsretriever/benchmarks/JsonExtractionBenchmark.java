@@ -0,0 +1,74 @@
+package me.steffenjacobs.webanalyticsretriever.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import me.steffenjacobs.webanalyticsretriever.JsonResultExtractor;
+import me.steffenjacobs.webanalyticsretriever.domain.google.GoogleCustomSearchTotalResult;
+import me.steffenjacobs.webanalyticsretriever.domain.reddit.RedditSearchResult;
+
+/**
+ * Compares binding the complete API responses to the domain objects with
+ * Jackson databind against extracting the counts with the streaming
+ * {@link JsonResultExtractor}.
+ * 
+ * @author Steffen Jacobs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonExtractionBenchmark {
+
+	private static final ObjectReader REDDIT_READER = new ObjectMapper().readerFor(RedditSearchResult.class);
+	private static final ObjectReader GOOGLE_READER = new ObjectMapper().readerFor(GoogleCustomSearchTotalResult.class);
+
+	private byte[] redditResponse;
+	private byte[] googleResponse;
+
+	@Setup
+	public void setup() throws IOException {
+		redditResponse = IOUtils.toByteArray(JsonExtractionBenchmark.class.getResourceAsStream("/reddit-response.json"));
+		googleResponse = IOUtils.toByteArray(JsonExtractionBenchmark.class.getResourceAsStream("/google-api-response.json"));
+	}
+
+	@Benchmark
+	public long redditDatabind() throws IOException {
+		final RedditSearchResult result = REDDIT_READER.readValue(new ByteArrayInputStream(redditResponse));
+		return result.getAggs().getCreatedUtc().stream().mapToLong(c -> c.getDocCount()).sum();
+	}
+
+	@Benchmark
+	public long redditStreaming() throws IOException {
+		return JsonResultExtractor.extractRedditYears(new ByteArrayInputStream(redditResponse)).getTotal();
+	}
+
+	@Benchmark
+	public long googleApiDatabind() throws IOException {
+		final GoogleCustomSearchTotalResult result = GOOGLE_READER.readValue(new ByteArrayInputStream(googleResponse));
+		return Long.parseLong(result.getQueries().getRequest().get(0).getTotalResults());
+	}
+
+	@Benchmark
+	public long googleApiStreaming() throws IOException {
+		return JsonResultExtractor.extractGoogleTotalResults(new ByteArrayInputStream(googleResponse));
+	}
+}
@@ -0,0 +1,92 @@
+package me.steffenjacobs.webanalyticsretriever.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
+import org.apache.commons.math3.util.MathArrays;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.steffenjacobs.webanalyticsretriever.aggregation.TermStatistics;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+
+/**
+ * The normalized standard deviation of all search engines over the given
+ * number of runs of a single term: the single-pass {@link TermStatistics}
+ * against filtering the stored {@link SearchResults} once per statistic and
+ * search engine, normalizing the values with {@link MathArrays#normalizeArray}
+ * and evaluating a {@link StandardDeviation}, as the AnalyticsAggregator
+ * originally did.
+ * 
+ * @author Steffen Jacobs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class StatisticsBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	private int rows;
+
+	private List<SearchResults> results;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		results = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			results.add(new SearchResults("Platform", BenchmarkData.count(random), BenchmarkData.count(random), BenchmarkData.count(random),
+					BenchmarkData.count(random)));
+		}
+	}
+
+	@Benchmark
+	public double termStatistics() {
+		final TermStatistics statistics = new TermStatistics();
+		for (SearchResults r : results) {
+			statistics.add(r.getRedditSearchResultCount(), r.getGoogleSearchResultCount(), r.getGoogleBrowserSearchResultCount(),
+					r.getGoogleBrowserExactSearchResultCount());
+		}
+		double sum = 0;
+		for (ResultPart part : ResultPart.values()) {
+			sum += statistics.getNormalizedStandardDeviation(part);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double filteredStreams() {
+		final StandardDeviation sd = new StandardDeviation();
+		return normalizedStandardDeviation(sd, SearchResults::getGoogleSearchResultCount)
+				+ normalizedStandardDeviation(sd, SearchResults::getRedditSearchResultCount)
+				+ normalizedStandardDeviation(sd, SearchResults::getGoogleBrowserSearchResultCount)
+				+ normalizedStandardDeviation(sd, SearchResults::getGoogleBrowserExactSearchResultCount);
+	}
+
+	private double normalizedStandardDeviation(StandardDeviation sd, Function<SearchResults, Long> mapper) {
+		final long sum = filteredStream(mapper).sum();
+		return sum > 1 ? sd.evaluate(MathArrays.normalizeArray(filteredStream(mapper).mapToDouble(v -> v).toArray(), 1)) : 0;
+	}
+
+	private LongStream filteredStream(Function<SearchResults, Long> mapper) {
+		return results.stream().map(mapper).filter(v -> v != -1).mapToLong(Long::longValue);
+	}
+}
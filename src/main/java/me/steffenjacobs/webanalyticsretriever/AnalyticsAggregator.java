@@ -2,29 +2,33 @@ package me.steffenjacobs.webanalyticsretriever;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.LongStream;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
-import org.apache.commons.math3.util.MathArrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.aggregation.AggregateState;
+import me.steffenjacobs.webanalyticsretriever.aggregation.OutputFiles;
+import me.steffenjacobs.webanalyticsretriever.aggregation.ParallelAggregator;
+import me.steffenjacobs.webanalyticsretriever.aggregation.PartialAggregate;
+import me.steffenjacobs.webanalyticsretriever.aggregation.RunningStatistics;
+import me.steffenjacobs.webanalyticsretriever.aggregation.TermStatistics;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
 
 /**
  * Main entry point for the aggregation of the csv files created by the
@@ -35,90 +39,38 @@ import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
 public class AnalyticsAggregator {
 	private static final Logger LOG = LoggerFactory.getLogger(AnalyticsAggregator.class);
 
-	private static final Pattern FILE_PATTERN = Pattern.compile("output-\\d\\d\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d.csv");
-	private static final SimpleDateFormat sdf = new SimpleDateFormat("YYYY-MM-dd-HH-mm");
+	private static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd-HH-mm");
 
 	/*** Main entry point */
 	public static void main(String[] args) throws IOException {
 
-		// step one: load all csv files into a Map keyed with the search term (platform
-		// name plus optional markers). Each platform name is associated with all its
-		// search results
-		final Map<String, Collection<SearchResults>> results = new HashMap<>();
-
-		int countEntries = 0;
-		int countFiles = 0;
-		for (File file : new File(".").listFiles()) {
-			Matcher m = FILE_PATTERN.matcher(file.getName());
-			if (m.find()) {
-				countFiles++;
-				for (String line : Files.readAllLines(file.toPath())) {
-					String[] split = line.split(",");
-					countEntries += split.length;
-
-					long valGoogle = -1;
-					long valReddit = -1;
-					long valGoogleBrowser = -1;
-					long valGoogleBrowserExact = -1;
-					if (split.length == 2) {
-						// compatibility for initial google api-only csv files
-						valGoogle = Long.parseLong(split[1].trim());
-					} else if (split.length == 3) {
-						// compatibility for 2nd gen google api + reddit csv files
-						valReddit = Long.parseLong(split[1].trim());
-						valGoogle = Long.parseLong(split[2].trim());
-					} else if (split.length == 4) {
-						// compatibility for reddit + google api + google web search csv files
-						valReddit = Long.parseLong(split[1].trim());
-						valGoogle = Long.parseLong(split[2].trim());
-						valGoogleBrowser = Long.parseLong(split[3].trim());
-					} else {
-						// current version of csv files with reddit, google api and google web search
-						// (with and without exact terms)
-						valReddit = Long.parseLong(split[1].trim());
-						valGoogle = Long.parseLong(split[2].trim());
-						valGoogleBrowser = Long.parseLong(split[3].trim());
-						valGoogleBrowserExact = Long.parseLong(split[4].trim());
-					}
-					results.putIfAbsent(split[0], new ArrayList<SearchResults>());
-					results.get(split[0]).add(new SearchResults(split[0], valReddit, valGoogle, valGoogleBrowser, valGoogleBrowserExact));
-
-				}
-			}
+		// step one: parse all csv and columnar files in parallel into running
+		// statistics keyed with the search term (platform name plus optional markers).
+		// Search results equal to -1 are ignored
+		final List<Path> files = OutputFiles.find(new File("."));
+
+		final int threads = Integer.getInteger("aggregator.threads", Runtime.getRuntime().availableProcessors());
+		final long start = System.nanoTime();
+		final PartialAggregate aggregate;
+		if (Boolean.parseBoolean(System.getProperty("aggregator.incremental", "true"))) {
+			aggregate = new AggregateState(new File(System.getProperty("aggregator.state-file", "aggregate-state.bin"))).update(files, threads);
+		} else {
+			aggregate = ParallelAggregator.aggregate(files, threads);
 		}
-		LOG.info("Imported {} entries from {} files.", countEntries, countFiles);
+		final Map<String, TermStatistics> results = aggregate.getStatistics();
+		final long countEntries = aggregate.getRows();
+		LOG.info("Aggregated {} entries from {} files with {} threads in {} ms.", countEntries, aggregate.getFiles(), threads,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
 
-		// filter null values (search results equal to -1) and calculate the average for
-		// each search engine
+		// calculate the average for each search engine
 		final Map<String, Result> transformedResults = new HashMap<>();
 
-		for (Map.Entry<String, Collection<SearchResults>> e : results.entrySet()) {
-			LongStream sGoogle = filteredStream(e.getValue(), SearchResults::getGoogleSearchResultCount);
-			final long countGoogle = sGoogle.count();
-
-			sGoogle = filteredStream(e.getValue(), SearchResults::getGoogleSearchResultCount);
-			final double avgGoogle = sGoogle.average().orElse(-1);
-
-			LongStream sReddit = filteredStream(e.getValue(), SearchResults::getRedditSearchResultCount);
-			final long countReddit = sReddit.count();
-
-			sReddit = filteredStream(e.getValue(), SearchResults::getRedditSearchResultCount);
-			final double avgReddit = sReddit.average().orElse(-1);
-
-			LongStream sGoogleWebSearch = filteredStream(e.getValue(), SearchResults::getGoogleBrowserSearchResultCount);
-			final double avgGoogleWebSearch = sGoogleWebSearch.average().orElse(-1);
-
-			sGoogleWebSearch = filteredStream(e.getValue(), SearchResults::getGoogleBrowserSearchResultCount);
-			final long countGoogleWebSearch = sGoogleWebSearch.count();
-
-			LongStream sGoogleWebSearchExact = filteredStream(e.getValue(), SearchResults::getGoogleBrowserExactSearchResultCount);
-			final double avgGoogleWebSearchExact = sGoogleWebSearchExact.average().orElse(-1);
-
-			sGoogleWebSearchExact = filteredStream(e.getValue(), SearchResults::getGoogleBrowserExactSearchResultCount);
-			final long countGoogleWebSearchExact = sGoogleWebSearchExact.count();
-
-			transformedResults.put(e.getKey().trim(), new Result(e.getKey().trim(), avgGoogle, avgReddit, avgGoogleWebSearch, avgGoogleWebSearchExact, countGoogle, countReddit,
-					countGoogleWebSearch, countGoogleWebSearchExact));
+		for (Map.Entry<String, TermStatistics> e : results.entrySet()) {
+			final TermStatistics s = e.getValue();
+			transformedResults.put(e.getKey().trim(),
+					new Result(e.getKey().trim(), s.getAverage(ResultPart.GOOGLE_SEARCH_API), s.getAverage(ResultPart.REDDIT), s.getAverage(ResultPart.GOOGLE_WEB_SEARCH),
+							s.getAverage(ResultPart.GOOGLE_WEB_SEARCH_EXACT), s.getCount(ResultPart.GOOGLE_SEARCH_API), s.getCount(ResultPart.REDDIT),
+							s.getCount(ResultPart.GOOGLE_WEB_SEARCH), s.getCount(ResultPart.GOOGLE_WEB_SEARCH_EXACT)));
 		}
 
 		LOG.info("Aggregated {} entries to {} entries.", countEntries, transformedResults.size());
@@ -174,41 +126,49 @@ public class AnalyticsAggregator {
 		exportToTableFile(consolidatedResults);
 
 		calculateAndStore(results);
+		exportRedditYears(results);
+	}
+
+	/**
+	 * Stores the average number of Reddit comments per year of creation across
+	 * all runs for each platform to a csv file.
+	 */
+	private static void exportRedditYears(final Map<String, TermStatistics> results) throws IOException {
+		final StringBuilder sb = new StringBuilder("name,year,runs,averageReddit\n");
+		for (final Map.Entry<String, TermStatistics> e : new TreeMap<>(results).entrySet()) {
+			for (Map.Entry<Integer, RunningStatistics> year : e.getValue().getRedditYears().entrySet()) {
+				sb.append(e.getKey().trim());
+				sb.append(",");
+				sb.append(year.getKey());
+				sb.append(",");
+				sb.append(year.getValue().getCount());
+				sb.append(",");
+				sb.append(year.getValue().getAverage());
+				sb.append("\n");
+			}
+		}
+
+		final String filename = "output-reddit-years-" + sdf.format(Calendar.getInstance().getTime()) + ".csv";
+		FileUtils.write(new File(filename), sb.toString(), StandardCharsets.UTF_8);
+		LOG.info("Exported Reddit comments per year to file '{}'.", filename);
 	}
 
 	/**
 	 * Calculates and stores the standard deviation for each search engine across
 	 * all runs for each platform and stores it to a csv file.
 	 */
-	private static void calculateAndStore(final Map<String, Collection<SearchResults>> results) throws IOException {
+	private static void calculateAndStore(final Map<String, TermStatistics> results) throws IOException {
 		final StringBuilder sb = new StringBuilder("name,stdGoogle,stdReddit,stdGoogleSearchBrowser,stdGoogleSearchBrowserExact\n");
-		final StandardDeviation sd = new StandardDeviation();
-		for (final Map.Entry<String, Collection<SearchResults>> e : results.entrySet()) {
-			LongStream sGoogle = filteredStream(e.getValue(), SearchResults::getGoogleSearchResultCount);
-			long sumGoogle = filteredStream(e.getValue(), SearchResults::getGoogleSearchResultCount).sum();
-			final double sdGoogle = sumGoogle > 1 ? sd.evaluate(MathArrays.normalizeArray(sGoogle.mapToDouble(d -> d).toArray(), 1)) : 0;
-
-			LongStream sReddit = filteredStream(e.getValue(), SearchResults::getRedditSearchResultCount);
-			long sumReddit = filteredStream(e.getValue(), SearchResults::getRedditSearchResultCount).sum();
-			final double sdReddit = sumReddit > 1 ? sd.evaluate(MathArrays.normalizeArray(sReddit.mapToDouble(d -> d).toArray(), 1)) : 0;
-
-			LongStream sGWS = filteredStream(e.getValue(), SearchResults::getGoogleBrowserSearchResultCount);
-			long sumGWS = filteredStream(e.getValue(), SearchResults::getGoogleBrowserSearchResultCount).sum();
-			final double sdGWS = sumGWS > 1 ? sd.evaluate(MathArrays.normalizeArray(sGWS.mapToDouble(d -> d).toArray(), 1)) : 0;
-
-			LongStream sGWSE = filteredStream(e.getValue(), SearchResults::getGoogleBrowserExactSearchResultCount);
-			long sumGWSE = filteredStream(e.getValue(), SearchResults::getGoogleBrowserExactSearchResultCount).sum();
-			final double sdGWSE = sumGWSE > 1 ? sd.evaluate(MathArrays.normalizeArray(sGWSE.mapToDouble(d -> d).toArray(), 1)) : 0;
-
+		for (final Map.Entry<String, TermStatistics> e : results.entrySet()) {
 			sb.append(e.getKey());
 			sb.append(",");
-			sb.append(sdGoogle);
+			sb.append(e.getValue().getNormalizedStandardDeviation(ResultPart.GOOGLE_SEARCH_API));
 			sb.append(",");
-			sb.append(sdReddit);
+			sb.append(e.getValue().getNormalizedStandardDeviation(ResultPart.REDDIT));
 			sb.append(",");
-			sb.append(sdGWS);
+			sb.append(e.getValue().getNormalizedStandardDeviation(ResultPart.GOOGLE_WEB_SEARCH));
 			sb.append(",");
-			sb.append(sdGWSE);
+			sb.append(e.getValue().getNormalizedStandardDeviation(ResultPart.GOOGLE_WEB_SEARCH_EXACT));
 			sb.append("\n");
 		}
 
@@ -217,19 +177,27 @@ public class AnalyticsAggregator {
 		LOG.info("Exported standard deviation values to file '{}'.", filename);
 	}
 
-	/**
-	 * @return a stream based on the applied mapper on the collection of
-	 *         {@link SearchResults} with the null values (search result equal to
-	 *         -1) filtered out.
-	 */
-	private static LongStream filteredStream(Collection<SearchResults> l, Function<SearchResults, Long> mapper) {
-		return l.stream().mapToLong(v -> mapper.apply(v).longValue()).filter(v -> v != -1);
+	private static void exportToFile(Set<Result> transformedResults, final boolean rounded, final boolean original) throws IOException {
+		final String filename = "output" + (original ? "-original-" : "-consolidated-") + (rounded ? "rounded" : "exact") + "-aggregated-"
+				+ sdf.format(Calendar.getInstance().getTime()) + ".csv";
+		try (Writer writer = Files.newBufferedWriter(new File(filename).toPath(), StandardCharsets.UTF_8)) {
+			writeAggregated(transformedResults, rounded, writer);
+		}
+		LOG.info("Exported {} aggregated values to file '{}'.", rounded ? "rounded" : "exact", filename);
 	}
 
-	private static void exportToFile(Set<Result> transformedResults, final boolean rounded, final boolean original) throws IOException {
-		final StringBuilder sb = new StringBuilder(
+	/**
+	 * Writes the averages and the number of runs of each {@link Result} as csv
+	 * rows with a header, the averages either exact or rounded to whole numbers.
+	 * The rows are streamed to the writer, so that the memory usage does not
+	 * depend on the number of results.
+	 */
+	public static void writeAggregated(Collection<Result> transformedResults, final boolean rounded, Writer writer) throws IOException {
+		writer.write(
 				"name,averageGoogle,averageReddit,averageGoogleSearchBrowser,averageGoogleSearchBrowserExact,countGoogle,countReddit,countGoogleSearchBrowser,countGoogleSearchBrowserExact\n");
+		final StringBuilder sb = new StringBuilder();
 		for (Result r : transformedResults) {
+			sb.setLength(0);
 			sb.append(r.getName());
 			sb.append(",");
 			sb.append(new BigDecimal(rounded ? Math.round(r.getAverageGoogle()) : r.getAverageGoogle()).toPlainString());
@@ -248,12 +216,8 @@ public class AnalyticsAggregator {
 			sb.append(",");
 			sb.append(r.getCountGoogleWebSearchExact());
 			sb.append("\n");
+			writer.append(sb);
 		}
-
-		final String filename = "output" + (original ? "-original-" : "-consolidated-") + (rounded ? "rounded" : "exact") + "-aggregated-"
-				+ sdf.format(Calendar.getInstance().getTime()) + ".csv";
-		FileUtils.write(new File(filename), sb.toString(), StandardCharsets.UTF_8);
-		LOG.info("Exported {} aggregated values to file '{}'.", rounded ? "rounded" : "exact", filename);
 	}
 
 	private static void exportToFileWithoutCountRounded(Set<Result> transformedResults) throws IOException {
@@ -302,7 +266,7 @@ public class AnalyticsAggregator {
 	 * Result-class that contains the average result counts plus the number of runs
 	 * for each search engine for each platform.
 	 */
-	static class Result {
+	public static class Result {
 		private final String name;
 		private final double averageGoogle;
 		private final long countGoogle;
@@ -0,0 +1,68 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link SearchService} that retrieves the search result counts without
+ * blocking the calling thread, so that the number of concurrent searches is not
+ * limited by the number of threads. The synchronous methods wait for the
+ * asynchronous search.
+ *
+ * @author Steffen Jacobs
+ */
+public interface AsyncSearchService extends SearchService {
+
+	/**
+	 * Starts the search for the given {@link String term}.
+	 *
+	 * @param executor
+	 *            completes the returned future once the response has been
+	 *            parsed, so that the dependent actions, e.g. writing to the cache
+	 *            or the output files, do not block the I/O threads of the HTTP
+	 *            client.
+	 * @return completes with the search result count and the number of results
+	 *         per year, if the search engine provides them, or with
+	 *         {@link SearchCount#FAILED} if the count could not be retrieved.
+	 */
+	CompletableFuture<SearchCount> searchAsync(String term, Executor executor);
+
+	@Override
+	default long search(String term) {
+		return searchWithYears(term).getCount();
+	}
+
+	/**
+	 * Waits for the asynchronous search. The dependent actions run on the
+	 * thread that receives the response.
+	 */
+	@Override
+	default SearchCount searchWithYears(String term) {
+		try {
+			return searchAsync(term, Runnable::run).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Searches with the given service asynchronously if it is an
+	 * {@link AsyncSearchService}, else synchronously on the calling thread.
+	 *
+	 * @return completes exceptionally if the service failed with an exception.
+	 */
+	static CompletableFuture<SearchCount> searchAsync(SearchService service, String term, Executor executor) {
+		try {
+			return service instanceof AsyncSearchService ? ((AsyncSearchService) service).searchAsync(term, executor)
+					: CompletableFuture.completedFuture(service.searchWithYears(term));
+		} catch (RuntimeException e) {
+			final CompletableFuture<SearchCount> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed-size pool of headless {@link ChromeDriver chrome driver} sessions.
+ * Each session is used by one thread at a time: it is checked out, used and
+ * released again. Sessions are started lazily, checked for health on checkout
+ * and replaced after a configurable number of pages or after they ran into a
+ * captcha, so that memory stays bounded over long runs.
+ * 
+ * @author Steffen Jacobs
+ */
+public class ChromeDriverPool implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(ChromeDriverPool.class);
+
+	private final int maxPagesPerSession;
+	private final Semaphore available;
+	private final BlockingQueue<Session> idle = new LinkedBlockingQueue<>();
+	private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong recycled = new AtomicLong();
+	private volatile boolean closed;
+
+	/**
+	 * @param size
+	 *            the maximum number of chrome driver sessions.
+	 * @param maxPagesPerSession
+	 *            the number of pages after which a session is replaced.
+	 */
+	public ChromeDriverPool(int size, int maxPagesPerSession) {
+		this.maxPagesPerSession = maxPagesPerSession;
+		this.available = new Semaphore(size);
+	}
+
+	/**
+	 * Blocks until a healthy {@link Session} is available. The session must be
+	 * {@link #release(Session) released} after usage.
+	 */
+	public Session checkout() throws InterruptedException {
+		if (closed) {
+			throw new IllegalStateException("The chrome driver pool has been closed.");
+		}
+		available.acquire();
+		try {
+			Session session;
+			while ((session = idle.poll()) != null) {
+				if (session.isHealthy()) {
+					return session;
+				}
+				LOG.info("Chrome driver session is not responding anymore, replacing it.");
+				dispose(session);
+			}
+			return start();
+		} catch (RuntimeException e) {
+			available.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the {@link Session} to the pool. Sessions that are used up or
+	 * marked for recycling are disposed and replaced on the next checkout.
+	 */
+	public void release(Session session) {
+		try {
+			if (closed || session.recycle || session.pages >= maxPagesPerSession) {
+				dispose(session);
+			} else {
+				idle.add(session);
+			}
+		} finally {
+			available.release();
+		}
+	}
+
+	/** Quits all chrome driver sessions. */
+	@Override
+	public void close() {
+		closed = true;
+		sessions.forEach(this::dispose);
+		LOG.info("Closed chrome driver pool after starting {} and recycling {} sessions.", started.get(), recycled.get());
+	}
+
+	public long getStartedSessions() {
+		return started.get();
+	}
+
+	public long getRecycledSessions() {
+		return recycled.get();
+	}
+
+	private Session start() {
+		final ChromeOptions options = new ChromeOptions();
+		options.addArguments("--headless");
+		final Session session = new Session(new ChromeDriver(options));
+		sessions.add(session);
+		started.incrementAndGet();
+		return session;
+	}
+
+	private void dispose(Session session) {
+		if (sessions.remove(session)) {
+			recycled.incrementAndGet();
+			try {
+				// quit instead of close to also stop the chrome process
+				session.driver.quit();
+			} catch (WebDriverException e) {
+				LOG.warn("Could not quit chrome driver session: {}", e.getMessage());
+			}
+		}
+	}
+
+	/** A single chrome driver session checked out of the pool. */
+	public static class Session {
+		private final ChromeDriver driver;
+		private int pages;
+		private boolean recycle;
+
+		private Session(ChromeDriver driver) {
+			this.driver = driver;
+		}
+
+		/** Loads the given {@link String url} and returns the page source. */
+		public String load(String url) {
+			pages++;
+			driver.get(url);
+			return driver.getPageSource();
+		}
+
+		/** Marks this session to be replaced when it is released. */
+		public void markForRecycling() {
+			recycle = true;
+		}
+
+		private boolean isHealthy() {
+			try {
+				driver.getWindowHandle();
+				return true;
+			} catch (WebDriverException e) {
+				return false;
+			}
+		}
+	}
+}
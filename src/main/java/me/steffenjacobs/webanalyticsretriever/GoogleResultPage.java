@@ -0,0 +1,144 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * The parts of a Google WebSearch result page that are needed to determine the
+ * search result count: the element "resultStats" containing the count and the
+ * element "topstuff" indicating a redirected search.
+ * 
+ * @author Steffen Jacobs
+ */
+public class GoogleResultPage {
+
+	private static final Pattern PATTERN_NUMBER = Pattern.compile(".*\\s([\\d|.]*)\\s.*");
+	private static final String ID_RESULT_STATS = "resultStats";
+	private static final String ID_TOPSTUFF = "topstuff";
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Element resultStats;
+	private final Element topstuff;
+
+	public GoogleResultPage(Element resultStats, Element topstuff) {
+		this.resultStats = resultStats;
+		this.topstuff = topstuff;
+	}
+
+	/** Extracts the relevant elements from a completely parsed page. */
+	public static GoogleResultPage fromDocument(Document doc) {
+		return new GoogleResultPage(doc.getElementById(ID_RESULT_STATS), doc.getElementById(ID_TOPSTUFF));
+	}
+
+	/**
+	 * Reads the HTML from the {@link Reader reader} only until both relevant
+	 * elements are complete and parses only these elements. The rest of the page
+	 * is neither read nor parsed.
+	 */
+	public static GoogleResultPage scan(Reader reader) throws IOException {
+		final StringBuilder html = new StringBuilder();
+		final ElementScanner resultStatsScanner = new ElementScanner(ID_RESULT_STATS);
+		final ElementScanner topstuffScanner = new ElementScanner(ID_TOPSTUFF);
+
+		final char[] buffer = new char[BUFFER_SIZE];
+		int read;
+		while ((resultStatsScanner.element == null || topstuffScanner.element == null) && (read = reader.read(buffer)) != -1) {
+			html.append(buffer, 0, read);
+			resultStatsScanner.scan(html);
+			topstuffScanner.scan(html);
+		}
+		return new GoogleResultPage(resultStatsScanner.element, topstuffScanner.element);
+	}
+
+	public Element getResultStats() {
+		return resultStats;
+	}
+
+	public Element getTopstuff() {
+		return topstuff;
+	}
+
+	/**
+	 * @return the search result count, 0 if the search was redirected or -1 if the
+	 *         page does not contain a search result count (e.g. because of a
+	 *         captcha).
+	 */
+	public long getResultCount() {
+		if (resultStats == null || topstuff == null) {
+			return -1;
+		}
+
+		// element "topstuff" does only have child nodes if the search was redirected
+		// (e.g. because of a typo) and no results were found for the original search
+		// request
+		if (topstuff.childNodeSize() != 0) {
+			return 0;
+		}
+		Matcher m = PATTERN_NUMBER.matcher(resultStats.ownText());
+		if (m.find() && !m.group(1).replace(".", "").isEmpty()) {
+			return new BigInteger(m.group(1).replace(".", "")).longValue();
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds a single element by its id in a growing HTML text and parses it as
+	 * soon as its closing tag has arrived.
+	 */
+	private static class ElementScanner {
+		private final String id;
+		private final Pattern openingTag;
+		private Pattern tags;
+		private int start = -1;
+		private int searchFrom;
+		private int depth;
+		private Element element;
+
+		ElementScanner(String id) {
+			this.id = id;
+			this.openingTag = Pattern.compile("<(\\w+)[^<>]*\\sid=[\"']?" + id + "[\"'\\s/>]");
+		}
+
+		void scan(StringBuilder html) {
+			if (element != null) {
+				return;
+			}
+			if (start < 0) {
+				final Matcher m = openingTag.matcher(html);
+				if (!m.find(searchFrom)) {
+					// the opening tag may have been cut off at the end of the current text
+					searchFrom = Math.max(0, html.lastIndexOf("<"));
+					return;
+				}
+				start = m.start();
+				searchFrom = start;
+				tags = Pattern.compile("<(/?)" + m.group(1) + "[\\s/>]", Pattern.CASE_INSENSITIVE);
+			}
+
+			// count nested tags of the same name until the element is closed again
+			final Matcher m = tags.matcher(html);
+			int position = searchFrom;
+			while (m.find(position)) {
+				if (html.indexOf(">", m.end() - 1) < 0) {
+					// the tag itself is not complete yet
+					break;
+				}
+				position = m.end();
+				searchFrom = position;
+				depth += m.group(1).isEmpty() ? 1 : -1;
+				if (depth == 0) {
+					final int end = html.indexOf(">", m.end() - 1) + 1;
+					element = Jsoup.parseBodyFragment(html.substring(start, end)).getElementById(id);
+					return;
+				}
+			}
+		}
+	}
+}
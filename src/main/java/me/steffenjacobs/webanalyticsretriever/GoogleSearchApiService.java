@@ -1,15 +1,26 @@
 package me.steffenjacobs.webanalyticsretriever;
 
 import java.io.IOException;
-import java.net.URL;
+import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
 import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
-import me.steffenjacobs.webanalyticsretriever.domain.google.GoogleCustomSearchTotalResult;
+import me.steffenjacobs.webanalyticsretriever.metrics.ErrorType;
+import me.steffenjacobs.webanalyticsretriever.metrics.SourceMetrics;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.AdaptiveRateLimiter;
 
 /**
  * Simple Wrapper service to call the Google Search API:
@@ -18,37 +29,96 @@ import me.steffenjacobs.webanalyticsretriever.domain.google.GoogleCustomSearchTo
  * 
  * @author Steffen Jacobs
  */
-public class GoogleSearchApiService {
+public class GoogleSearchApiService implements AsyncSearchService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(GoogleSearchApiService.class);
 
+	private final String baseUrl;
 	private final String apiKey;
+	private final CloseableHttpAsyncClient httpClient;
+	private final AdaptiveRateLimiter rateLimiter;
+	private final SourceMetrics metrics;
 
-	public GoogleSearchApiService(String apiKey) {
+	/**
+	 * @param baseUrl
+	 *            the URL of the Google Search API, e.g.
+	 *            https://www.googleapis.com/customsearch/v1
+	 * @param apiKey
+	 *            the key for the Google Search API
+	 * @param httpClient
+	 *            the shared, non-blocking HTTP client
+	 * @param rateLimiter
+	 *            is notified if the daily limit has been exceeded
+	 * @param metrics
+	 *            records the errors and retries
+	 */
+	public GoogleSearchApiService(String baseUrl, String apiKey, CloseableHttpAsyncClient httpClient, AdaptiveRateLimiter rateLimiter, SourceMetrics metrics) {
+		this.baseUrl = baseUrl;
 		this.apiKey = apiKey;
+		this.httpClient = httpClient;
+		this.rateLimiter = rateLimiter;
+		this.metrics = metrics;
 	}
 
-	/** Search for the given {@link String term} via the Google Search Api */
-	public long search(String term) {
-		final ObjectMapper objectMapper = new ObjectMapper();
-		try {
-			// URL encoding
-			final String encodedTerm = URLEncoder.encode(term, "UTF-8");
-
-			// send GET and automatically unpack it via Jackson
-			GoogleCustomSearchTotalResult result = objectMapper.readValue(new URL("https://www.googleapis.com/customsearch/v1?key=" + apiKey
-					+ "&cx=002845322276752338984:vxqzfa86nqc&q=" + encodedTerm + "&exactTerms=" + encodedTerm + "&alt=json&fields=queries(request(totalResults))"),
-					new TypeReference<GoogleCustomSearchTotalResult>() {
-					});
-			LOG.info("Retrieved Google Search API result for '{}'.", term);
-			return Long.parseLong(result.getQueries().getRequest().get(0).getTotalResults());
-		} catch (IOException e) {
-			if (e.getMessage().contains("403")) {
-				LOG.error("Daily limit exceeded.");
-			} else {
-				LOG.error(e.getMessage(), e);
+	/**
+	 * Search for the given {@link String term} via the Google Search Api. The
+	 * response is parsed on the I/O thread that received it, then the future is
+	 * completed by the given executor.
+	 */
+	@Override
+	public CompletableFuture<SearchCount> searchAsync(String term, Executor executor) {
+		final String encodedTerm = encode(term);
+		final HttpGet get = new HttpGet(baseUrl + "?key=" + apiKey + "&cx=002845322276752338984:vxqzfa86nqc&q=" + encodedTerm + "&exactTerms=" + encodedTerm
+				+ "&alt=json&fields=queries(request(totalResults))");
+		return HttpClientFactory.execute(httpClient, get).handle((response, e) -> {
+			if (e != null) {
+				metrics.onError(ErrorType.IO);
+				LOG.error("Google Search API request for '{}' failed: {}", term, e.toString());
+				return isNotSent(e) ? SearchCount.NOT_SENT : SearchCount.FAILED;
+			}
+			final int status = response.getStatusLine().getStatusCode();
+			if (status != HttpStatus.SC_OK) {
+				metrics.onError(ErrorType.ofStatus(status));
+				if (status == HttpStatus.SC_FORBIDDEN) {
+					LOG.error("Daily limit exceeded.");
+					rateLimiter.onQuotaExceeded();
+				} else if (status == 429) {
+					LOG.error("Too many requests to the Google Search API.");
+					rateLimiter.onThrottled();
+				} else {
+					LOG.error("Google Search API request for '{}' failed with HTTP status {}.", term, status);
+				}
+				return SearchCount.FAILED;
 			}
+			try {
+				final long count = JsonResultExtractor.extractGoogleTotalResults(response.getEntity().getContent());
+				LOG.info("Retrieved Google Search API result for '{}'.", term);
+				return SearchCount.of(count);
+			} catch (JsonProcessingException ex) {
+				metrics.onError(ErrorType.PARSE);
+				LOG.error("Unexpected Google Search API response for '{}': {}", term, ex.getMessage());
+			} catch (IOException ex) {
+				metrics.onError(ErrorType.IO);
+				LOG.error(ex.getMessage(), ex);
+			}
+			return SearchCount.FAILED;
+		}).thenApplyAsync(count -> count, executor);
+	}
+
+	/**
+	 * @return true, if the request failed before it could be sent, so that the
+	 *         Google Search API has not counted it against the daily limit.
+	 */
+	private static boolean isNotSent(Throwable e) {
+		return e instanceof ConnectException || e instanceof NoRouteToHostException || e instanceof UnknownHostException
+				|| e instanceof ConnectTimeoutException;
+	}
+
+	private static String encode(String term) {
+		try {
+			return URLEncoder.encode(term, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
 		}
-		return -1;
 	}
 }
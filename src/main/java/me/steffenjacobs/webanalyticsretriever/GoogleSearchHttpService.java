@@ -0,0 +1,111 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.metrics.ErrorType;
+import me.steffenjacobs.webanalyticsretriever.metrics.SourceMetrics;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.AdaptiveRateLimiter;
+
+/**
+ * Extracts the google search result count from the Google Web Search with a
+ * plain HTTP request instead of a browser. The result page is only read until
+ * the search result count has been found.
+ * 
+ * @author Steffen Jacobs
+ */
+public class GoogleSearchHttpService implements SearchService {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GoogleSearchHttpService.class);
+	private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/76.0.3809.132 Safari/537.36";
+
+	private final String baseUrl;
+	private final CloseableHttpClient httpClient;
+	private final AdaptiveRateLimiter rateLimiter;
+	private final SourceMetrics metrics;
+
+	/**
+	 * @param baseUrl
+	 *            the URL of the Google WebSearch, e.g.
+	 *            https://www.google.de/search
+	 * @param httpClient
+	 *            the shared, pooled HTTP client
+	 * @param rateLimiter
+	 *            is notified about captchas and delays the retry
+	 * @param metrics
+	 *            records the captchas, errors and retries
+	 */
+	public GoogleSearchHttpService(String baseUrl, CloseableHttpClient httpClient, AdaptiveRateLimiter rateLimiter, SourceMetrics metrics) {
+		this.baseUrl = baseUrl;
+		this.httpClient = httpClient;
+		this.rateLimiter = rateLimiter;
+		this.metrics = metrics;
+	}
+
+	/** Uses the Google WebSearch with the given {@link String term}. */
+	@Override
+	public long search(String term) {
+		try {
+			final String url = baseUrl + "?q=" + URLEncoder.encode(term, "UTF-8");
+			GoogleResultPage page = fetch(url);
+
+			if (page.getResultStats() == null) {
+				// no search result count -> probably ran into capture -> back off and retry
+				LOG.info("Ran into capture with term {}, backing off...", term);
+				metrics.onError(ErrorType.CAPTCHA);
+				metrics.onRetry();
+				rateLimiter.onThrottled();
+				if (!rateLimiter.acquire()) {
+					LOG.info("Daily quota exhausted, not retrying '{}'.", term);
+					return -1;
+				}
+				page = fetch(url);
+			}
+
+			final long count = page.getResultCount();
+			if (count >= 0) {
+				LOG.info("Retrieved Google web search result for '{}'.", term);
+				return count;
+			}
+			LOG.info("Ran into another capture with term {}.", term);
+			metrics.onError(page.getResultStats() == null ? ErrorType.CAPTCHA : ErrorType.PARSE);
+			rateLimiter.onThrottled();
+		} catch (IOException e) {
+			metrics.onError(ErrorType.IO);
+			LOG.error(e.getMessage() + " element {} ", term, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return -1;
+	}
+
+	private GoogleResultPage fetch(String url) throws IOException {
+		final HttpGet get = new HttpGet(url);
+		get.setHeader(HttpHeaders.USER_AGENT, USER_AGENT);
+		get.setHeader(HttpHeaders.ACCEPT_LANGUAGE, "de-DE,de;q=0.9");
+		try (CloseableHttpResponse response = httpClient.execute(get)) {
+			final HttpEntity entity = response.getEntity();
+			if (entity == null) {
+				return new GoogleResultPage(null, null);
+			}
+			final Charset charset = ContentType.getOrDefault(entity).getCharset();
+			final GoogleResultPage page = GoogleResultPage.scan(new InputStreamReader(entity.getContent(), charset != null ? charset : StandardCharsets.UTF_8));
+
+			// do not download the rest of the page
+			get.abort();
+			return page;
+		}
+	}
+}
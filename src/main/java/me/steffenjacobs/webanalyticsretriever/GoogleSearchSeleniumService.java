@@ -1,95 +1,113 @@
 package me.steffenjacobs.webanalyticsretriever;
 
 import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
 import java.net.URLEncoder;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
 import org.openqa.selenium.WebDriverException;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import me.steffenjacobs.webanalyticsretriever.metrics.ErrorType;
+import me.steffenjacobs.webanalyticsretriever.metrics.SourceMetrics;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.AdaptiveRateLimiter;
+
 /**
  * Extracts the google search result count from the Google Web Search via
  * <a href="https://www.seleniumhq.org/">Selenium</a>.
  */
-public class GoogleSearchSeleniumService {
+public class GoogleSearchSeleniumService implements SearchService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(GoogleSearchSeleniumService.class);
-	private static final Pattern PATTERN_NUMBER = Pattern.compile(".*\\s([\\d|.]*)\\s.*");
-	private ChromeDriver driver;
+	private final String baseUrl;
+	private final ChromeDriverPool pool;
+	private final AdaptiveRateLimiter rateLimiter;
+	private final SourceMetrics metrics;
 
-	/** Starts a {@link ChromeDriver chrome driver} instance */
-	public GoogleSearchSeleniumService(String chromeDriverPath) {
+	/**
+	 * Creates a {@link ChromeDriverPool pool} of up to {@link int poolSize} chrome
+	 * driver sessions that are replaced after {@link int maxPagesPerSession}
+	 * pages. The search result pages are loaded from the {@link String baseUrl},
+	 * e.g. https://www.google.de/search. The {@link AdaptiveRateLimiter
+	 * rateLimiter} is notified about captchas and delays the retry. The captchas,
+	 * errors and retries are recorded in the {@link SourceMetrics metrics}.
+	 */
+	public GoogleSearchSeleniumService(String baseUrl, String chromeDriverPath, int poolSize, int maxPagesPerSession, AdaptiveRateLimiter rateLimiter, SourceMetrics metrics) {
+		this.baseUrl = baseUrl;
 		System.setProperty("webdriver.chrome.driver", chromeDriverPath);
-		final ChromeOptions options = new ChromeOptions();
-		options.addArguments("--headless");
-		driver = new ChromeDriver(options);
+		pool = new ChromeDriverPool(poolSize, maxPagesPerSession);
+		this.rateLimiter = rateLimiter;
+		this.metrics = metrics;
 	}
 
 	/** Uses the Google WebSearch with the given {@link String term}. */
+	@Override
 	public long search(String term) {
+		ChromeDriverPool.Session session = null;
 		try {
 			// encode the term
 			String encodedTerm = URLEncoder.encode(term, "UTF-8");
 
 			// call the URL
-			String baseUrl = "https://www.google.de/search?q=" + encodedTerm;
-			driver.get(baseUrl);
-
-			// parse the resulting HTML
-			Document doc = Jsoup.parse(driver.getPageSource());
+			String url = baseUrl + "?q=" + encodedTerm;
+			session = pool.checkout();
 
-			// find the search result count
-			Element elem = doc.getElementById("resultStats");
+			// parse the resulting HTML and find the search result count
+			GoogleResultPage page = GoogleResultPage.fromDocument(Jsoup.parse(session.load(url)));
 
-			if (elem == null) {
-				// no search result count -> probably ran into capture -> wait 30s and restart
-				// chrome driver
-				LOG.info("Ran into capture with term {}, waiting for 30 seconds and starting up a new chrome driver instance...", term);
-				Thread.sleep(30000);
-				final ChromeOptions options = new ChromeOptions();
-				options.addArguments("--headless");
-				driver = new ChromeDriver(options);
-				driver.get(baseUrl);
-				doc = Jsoup.parse(driver.getPageSource());
+			if (page.getResultStats() == null) {
+				// no search result count -> probably ran into capture -> back off and retry
+				// with another chrome driver session
+				LOG.info("Ran into capture with term {}, backing off and starting up a new chrome driver instance...", term);
+				metrics.onError(ErrorType.CAPTCHA);
+				metrics.onRetry();
+				session.markForRecycling();
+				pool.release(session);
+				session = null;
+				rateLimiter.onThrottled();
+				if (!rateLimiter.acquire()) {
+					LOG.info("Daily quota exhausted, not retrying '{}'.", term);
+					return -1;
+				}
+				session = pool.checkout();
 
 				// search result count should be present by now
-				elem = doc.getElementById("resultStats");
+				page = GoogleResultPage.fromDocument(Jsoup.parse(session.load(url)));
 			}
 
-			// element "topstuff" does only have child nodes if the search was redirected
-			// (e.g. because of a typo) and no results were found for the original search
-			// request
-			Element topstuffDiv = doc.getElementById("topstuff");
-			if (topstuffDiv.childNodeSize() != 0) {
-				return 0;
+			final long count = page.getResultCount();
+			if (count >= 0) {
+				LOG.info("Retrieved Google browser search result for '{}'.", term);
+				return count;
 			} else {
-				Matcher m = PATTERN_NUMBER.matcher(elem.ownText());
-				if (m.find()) {
-					BigInteger val = new BigInteger(m.group(1).replace(".", ""));
-					LOG.info("Retrieved Google browser search result for '{}'.", term);
-					return val.longValue();
-				} else {
-					LOG.info("Ran into another capture, waiting for 30 seconds...");
-					Thread.sleep(30000);
+				LOG.info("Ran into another capture with term {}.", term);
+				metrics.onError(page.getResultStats() == null ? ErrorType.CAPTCHA : ErrorType.PARSE);
+				if (page.getResultStats() == null) {
+					// do not hand the blocked session to the next search
+					session.markForRecycling();
 				}
+				rateLimiter.onThrottled();
 			}
 
-		} catch (UnsupportedEncodingException | WebDriverException | NullPointerException | InterruptedException e) {
+		} catch (UnsupportedEncodingException | WebDriverException e) {
+			if (session != null && e instanceof WebDriverException) {
+				session.markForRecycling();
+			}
+			metrics.onError(e instanceof WebDriverException ? ErrorType.IO : ErrorType.PARSE);
 			LOG.error(e.getMessage() + " element {} ", term, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} finally {
+			if (session != null) {
+				pool.release(session);
+			}
 		}
 		return -1;
 	}
 
+	/** Quits all chrome driver sessions. */
+	@Override
 	public void dispose() {
-		driver.close();
+		pool.close();
 	}
 }
@@ -0,0 +1,134 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+
+/**
+ * Creates the {@link CloseableHttpClient HTTP client} shared by all HTTP based
+ * search services. Connections are pooled and kept alive between requests, so
+ * that the TLS handshake is not repeated for every search term. Responses are
+ * requested gzip compressed and decompressed transparently. The
+ * {@link CloseableHttpAsyncClient asynchronous client} of the API based
+ * services sends the requests and receives the responses on a few I/O threads,
+ * so that no thread waits for a response. It buffers the compressed responses,
+ * which are small JSON documents, and decompresses them while they are parsed.
+ * 
+ * @author Steffen Jacobs
+ */
+public final class HttpClientFactory {
+
+	private HttpClientFactory() {
+	}
+
+	/** Creates a pooled HTTP client configured by the settings.properties. */
+	public static CloseableHttpClient createPooledClient(Settings settings) {
+		return createPooledClient(settings.getInt("http.max-connections-per-host", 8), settings.getInt("http.max-connections", 32),
+				settings.getInt("http.connect-timeout-ms", 10000), settings.getInt("http.read-timeout-ms", 30000), settings.getLong("http.keep-alive-ms", 30000));
+	}
+
+	/**
+	 * @param maxConnectionsPerHost
+	 *            the maximum number of connections to a single host.
+	 * @param maxConnections
+	 *            the maximum number of connections in total.
+	 * @param connectTimeoutMillis
+	 *            the timeout for establishing a connection.
+	 * @param readTimeoutMillis
+	 *            the maximum time of inactivity while waiting for data.
+	 * @param keepAliveMillis
+	 *            the time an idle connection is kept alive, if the server does not
+	 *            specify it.
+	 */
+	public static CloseableHttpClient createPooledClient(int maxConnectionsPerHost, int maxConnections, int connectTimeoutMillis, int readTimeoutMillis,
+			long keepAliveMillis) {
+		final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(keepAliveMillis, TimeUnit.MILLISECONDS);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setValidateAfterInactivity(2000);
+
+		final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeoutMillis).setConnectionRequestTimeout(connectTimeoutMillis)
+				.setSocketTimeout(readTimeoutMillis).build();
+
+		return HttpClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy((response, context) -> {
+					final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+					return keepAlive > 0 ? keepAlive : keepAliveMillis;
+				}).evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS).build();
+	}
+
+	/**
+	 * Creates and starts a non-blocking HTTP client with the same pool limits
+	 * and timeouts as the {@link #createPooledClient(Settings) pooled client}.
+	 * The number of I/O threads is configured by http.io-threads. Responses are
+	 * requested gzip compressed, see {@link #execute(CloseableHttpAsyncClient, HttpUriRequest)}.
+	 */
+	public static CloseableHttpAsyncClient createAsyncClient(Settings settings) {
+		final int connectTimeoutMillis = settings.getInt("http.connect-timeout-ms", 10000);
+		final int readTimeoutMillis = settings.getInt("http.read-timeout-ms", 30000);
+		final long keepAliveMillis = settings.getLong("http.keep-alive-ms", 30000);
+
+		final IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(settings.getInt("http.io-threads", 2))
+				.setConnectTimeout(connectTimeoutMillis).setSoTimeout(readTimeoutMillis).build();
+		final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeoutMillis).setConnectionRequestTimeout(connectTimeoutMillis)
+				.setSocketTimeout(readTimeoutMillis).build();
+
+		final CloseableHttpAsyncClient client = HttpAsyncClients.custom().setDefaultIOReactorConfig(ioReactorConfig).setDefaultRequestConfig(requestConfig)
+				.setMaxConnPerRoute(settings.getInt("http.max-connections-per-host", 8)).setMaxConnTotal(settings.getInt("http.max-connections", 32))
+				.addInterceptorLast(new RequestAcceptEncoding(Collections.singletonList("gzip"))).setKeepAliveStrategy((response, context) -> {
+					final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+					return keepAlive > 0 ? keepAlive : keepAliveMillis;
+				}).build();
+		client.start();
+		return client;
+	}
+
+	/**
+	 * Sends the request with the asynchronous client.
+	 *
+	 * @return completes with the buffered response on an I/O thread of the
+	 *         client or exceptionally if the request failed. A gzip compressed
+	 *         entity is decompressed while it is read.
+	 */
+	public static CompletableFuture<HttpResponse> execute(CloseableHttpAsyncClient client, HttpUriRequest request) {
+		final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+		client.execute(request, new FutureCallback<HttpResponse>() {
+			@Override
+			public void completed(HttpResponse response) {
+				final HttpEntity entity = response.getEntity();
+				final Header encoding = entity != null ? entity.getContentEncoding() : null;
+				if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+					response.setEntity(new GzipDecompressingEntity(entity));
+				}
+				future.complete(response);
+			}
+
+			@Override
+			public void failed(Exception e) {
+				future.completeExceptionally(e);
+			}
+
+			@Override
+			public void cancelled() {
+				future.cancel(false);
+			}
+		});
+		return future;
+	}
+}
@@ -0,0 +1,152 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * Extracts the search result counts from the JSON responses of the Reddit and
+ * the Google Search API by streaming over the tokens. Only the needed values
+ * are read, everything else is skipped without being bound to objects.
+ * Unexpected responses are reported with a {@link JsonParseException}, so that
+ * they can be told apart from failed connections.
+ * 
+ * @author Steffen Jacobs
+ */
+public final class JsonResultExtractor {
+
+	// the caller consumes and closes the response stream
+	private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+	private JsonResultExtractor() {
+	}
+
+	/**
+	 * Extracts "aggs.created_utc[].doc_count" from a pushshift response. The
+	 * buckets are keyed with the start of the year in seconds since the epoch,
+	 * buckets without key are skipped.
+	 * 
+	 * @return the number of comments per year of creation.
+	 */
+	public static YearHistogram extractRedditYears(InputStream in) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+			expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+			if (!moveToField(parser, "aggs")) {
+				throw new JsonParseException(parser, "Missing aggs in Reddit response.");
+			}
+			expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+			if (!moveToField(parser, "created_utc")) {
+				throw new JsonParseException(parser, "Missing aggs.created_utc in Reddit response.");
+			}
+			expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+
+			long[] keys = new long[16];
+			long[] counts = new long[16];
+			int size = 0;
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				if (size == keys.length) {
+					keys = Arrays.copyOf(keys, size * 2);
+					counts = Arrays.copyOf(counts, size * 2);
+				}
+				boolean keyed = false;
+				counts[size] = 0;
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					final String name = parser.getCurrentName();
+					parser.nextToken();
+					if ("key".equals(name)) {
+						keys[size] = parser.getValueAsLong();
+						keyed = true;
+					} else if ("doc_count".equals(name)) {
+						counts[size] = parser.getValueAsLong();
+					} else {
+						parser.skipChildren();
+					}
+				}
+				// a bucket without key cannot be assigned to a year
+				if (keyed) {
+					size++;
+				}
+			}
+			return toHistogram(keys, counts, size);
+		}
+	}
+
+	/**
+	 * Extracts "queries.request[0].totalResults" from a Google Search API
+	 * response.
+	 */
+	public static long extractGoogleTotalResults(InputStream in) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+			expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+			if (!moveToField(parser, "queries")) {
+				throw new JsonParseException(parser, "Missing queries in Google Search API response.");
+			}
+			expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+			if (!moveToField(parser, "request")) {
+				throw new JsonParseException(parser, "Missing queries.request in Google Search API response.");
+			}
+			expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+			expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+			if (!moveToField(parser, "totalResults")) {
+				throw new JsonParseException(parser, "Missing queries.request[0].totalResults in Google Search API response.");
+			}
+			parser.nextToken();
+			// the total results are sent as string
+			try {
+				return Long.parseLong(parser.getValueAsString("").trim());
+			} catch (NumberFormatException e) {
+				throw new JsonParseException(parser, "Invalid totalResults in Google Search API response.", e);
+			}
+		}
+	}
+
+	/**
+	 * Moves the parser within the current object to the value of the field with
+	 * the given name, skipping all other fields.
+	 * 
+	 * @return false, if the object does not contain the field.
+	 */
+	private static boolean moveToField(JsonParser parser, String name) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			if (name.equals(parser.getCurrentName())) {
+				return true;
+			}
+			parser.nextToken();
+			parser.skipChildren();
+		}
+		return false;
+	}
+
+	private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+		if (actual != expected) {
+			throw new JsonParseException(parser, "Expected " + expected + " but got " + actual + ".");
+		}
+	}
+
+	private static YearHistogram toHistogram(long[] keys, long[] counts, int size) {
+		// sort the buckets by year, they are usually sorted already
+		final int[] years = new int[size];
+		final long[] sortedCounts = new long[size];
+		for (int i = 0; i < size; i++) {
+			final int year = Instant.ofEpochSecond(keys[i]).atZone(ZoneOffset.UTC).getYear();
+			int j = i;
+			while (j > 0 && years[j - 1] > year) {
+				years[j] = years[j - 1];
+				sortedCounts[j] = sortedCounts[j - 1];
+				j--;
+			}
+			years[j] = year;
+			sortedCounts[j] = counts[i];
+		}
+		return new YearHistogram(years, sortedCounts);
+	}
+}
@@ -0,0 +1,56 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive lock of a file that must only be written by a single process, e.g.
+ * the quota or the cache file. The lock is held on a separate ".lock" file next
+ * to it until it is closed or the process exits, so that a second process
+ * configured with the same file fails at startup instead of overwriting the
+ * data of the first one.
+ *
+ * @author Steffen Jacobs
+ */
+public final class ProcessLock implements Closeable {
+
+	private final FileChannel channel;
+
+	private ProcessLock(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Locks the given file.
+	 *
+	 * @param setting
+	 *            the setting that configures the file, for the error message.
+	 * @throws IOException
+	 *             if the file is locked by another process.
+	 */
+	public static ProcessLock acquire(File file, String setting) throws IOException {
+		final FileChannel channel = FileChannel.open(new File(file.getPath() + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock lock;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			lock = null;
+		}
+		if (lock == null) {
+			channel.close();
+			throw new IOException(String.format("%s is used by another process. Please configure a separate %s for each process.", file, setting));
+		}
+		return new ProcessLock(channel);
+	}
+
+	/** Releases the lock. */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
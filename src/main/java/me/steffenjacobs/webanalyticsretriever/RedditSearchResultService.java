@@ -1,44 +1,101 @@
 package me.steffenjacobs.webanalyticsretriever;
 
 import java.io.IOException;
-import java.net.URL;
+import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
-import me.steffenjacobs.webanalyticsretriever.domain.reddit.RedditSearchResult;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+import me.steffenjacobs.webanalyticsretriever.metrics.ErrorType;
+import me.steffenjacobs.webanalyticsretriever.metrics.SourceMetrics;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.AdaptiveRateLimiter;
 
 /**
  * Simple wrapper to call the Reddit Comment API <a href=
- * "https://api.pushshift.io/reddit/search/comment/">https://api.pushshift.io/reddit/search/comment/</a>.
+ * "https://api.pushshift.io/reddit/search/comment/">https://api.pushshift.io/reddit/search/comment/</a>
+ * without blocking the calling thread.
  * 
  * @author Steffen Jacobs
  */
-public class RedditSearchResultService {
+public class RedditSearchResultService implements AsyncSearchService {
 	private static final Logger LOG = LoggerFactory.getLogger(RedditSearchResultService.class);
 
-	/** Searches for the {@link String term} in the Reddit comments */
-	public long search(String term) {
-		final ObjectMapper objectMapper = new ObjectMapper();
+	private final String baseUrl;
+	private final CloseableHttpAsyncClient httpClient;
+	private final AdaptiveRateLimiter rateLimiter;
+	private final SourceMetrics metrics;
+
+	/**
+	 * @param baseUrl
+	 *            the URL of the comment search, e.g.
+	 *            https://api.pushshift.io/reddit/search/comment/
+	 * @param httpClient
+	 *            the shared, non-blocking HTTP client
+	 * @param rateLimiter
+	 *            is notified if Reddit signals too many requests
+	 * @param metrics
+	 *            records the errors and retries
+	 */
+	public RedditSearchResultService(String baseUrl, CloseableHttpAsyncClient httpClient, AdaptiveRateLimiter rateLimiter, SourceMetrics metrics) {
+		this.baseUrl = baseUrl;
+		this.httpClient = httpClient;
+		this.rateLimiter = rateLimiter;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Searches for the {@link String term} in the Reddit comments and completes
+	 * with the number of comments per year of creation along with the total. The
+	 * response is parsed on the I/O thread that received it, then the future is
+	 * completed by the given executor.
+	 */
+	@Override
+	public CompletableFuture<SearchCount> searchAsync(String term, Executor executor) {
+		final HttpGet get = new HttpGet(baseUrl + "?q=" + encode(term) + "&aggs=created_utc&frequency=year&size=0");
+		return HttpClientFactory.execute(httpClient, get).handle((response, e) -> {
+			if (e != null) {
+				metrics.onError(ErrorType.IO);
+				LOG.error("Reddit search for '{}' failed: {}", term, e.toString());
+				return SearchCount.FAILED;
+			}
+			final int status = response.getStatusLine().getStatusCode();
+			if (status != HttpStatus.SC_OK) {
+				metrics.onError(ErrorType.ofStatus(status));
+				if (status == 429) {
+					rateLimiter.onThrottled();
+				}
+				LOG.error("Reddit search for '{}' failed with HTTP status {}.", term, status);
+				return SearchCount.FAILED;
+			}
+			try {
+				final YearHistogram years = JsonResultExtractor.extractRedditYears(response.getEntity().getContent());
+				LOG.info("Retrieved Reddit search result for '{}'.", term);
+				return new SearchCount(years.getTotal(), years);
+			} catch (JsonProcessingException ex) {
+				metrics.onError(ErrorType.PARSE);
+				LOG.error("Unexpected Reddit response for '{}': {}", term, ex.getMessage());
+			} catch (IOException ex) {
+				metrics.onError(ErrorType.IO);
+				LOG.error(ex.getMessage(), ex);
+			}
+			return SearchCount.FAILED;
+		}).thenApplyAsync(count -> count, executor);
+	}
+
+	private static String encode(String term) {
 		try {
-			// URL encode
-			final String encodedTerm = URLEncoder.encode(term, "UTF-8");
-
-			// send GET and automatically unpack it with Jackson
-			RedditSearchResult result = objectMapper.readValue(
-					new URL("https://api.pushshift.io/reddit/search/comment/?q=" + encodedTerm + "&aggs=created_utc&frequency=year&size=0"),
-					new TypeReference<RedditSearchResult>() {
-					});
-			LOG.info("Retrieved Reddit search result for '{}'.", term);
-			return result.getAggs().getCreatedUtc().stream().mapToLong(c -> c.getDocCount()).sum();
-		} catch (IOException e) {
-			LOG.error(e.getMessage(), e);
+			return URLEncoder.encode(term, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
 		}
-		return -1;
 	}
-
 }
@@ -0,0 +1,79 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * The search result count retrieved by a {@link SearchService}, together with
+ * the number of results per year if the search engine provides them.
+ * 
+ * @author Steffen Jacobs
+ */
+public class SearchCount {
+
+	/** A failed search. */
+	public static final SearchCount FAILED = new SearchCount(-1, null);
+
+	/**
+	 * A failed search whose request has not reached the search engine, e.g.
+	 * because the connection could not be established.
+	 */
+	public static final SearchCount NOT_SENT = new SearchCount(-1, null, false, false);
+
+	private final long count;
+	private final YearHistogram years;
+	private final boolean cached;
+	private final boolean sent;
+
+	public SearchCount(long count, YearHistogram years) {
+		this(count, years, false, true);
+	}
+
+	private SearchCount(long count, YearHistogram years, boolean cached, boolean sent) {
+		this.count = count;
+		this.years = years;
+		this.cached = cached;
+		this.sent = sent;
+	}
+
+	/** @return a search result count without histogram. */
+	public static SearchCount of(long count) {
+		return count == -1 ? FAILED : new SearchCount(count, null);
+	}
+
+	/**
+	 * @return a search result count retrieved by a previous search and answered
+	 *         from a cache.
+	 */
+	public static SearchCount cached(long count) {
+		return new SearchCount(count, null, true, true);
+	}
+
+	/** @return the search result count or -1 if the search failed. */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the number of search results per year or null, if not provided by
+	 *         the search engine.
+	 */
+	public YearHistogram getYears() {
+		return years;
+	}
+
+	/**
+	 * @return true, if the count has been retrieved by a previous search and is
+	 *         not a new observation.
+	 */
+	public boolean isCached() {
+		return cached;
+	}
+
+	/**
+	 * @return false, if the request of the search has not reached the search
+	 *         engine, so that it cannot have been counted by it.
+	 */
+	public boolean isSent() {
+		return sent;
+	}
+}
@@ -0,0 +1,30 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+/**
+ * Common contract of all search engine wrappers: retrieves the search result
+ * count for a single search term.
+ * 
+ * @author Steffen Jacobs
+ */
+@FunctionalInterface
+public interface SearchService {
+
+	/**
+	 * @return the search result count for the given {@link String term} or -1 if
+	 *         the count could not be retrieved.
+	 */
+	long search(String term);
+
+	/**
+	 * Retrieves the search result count for the given {@link String term}
+	 * together with the number of results per year, if the search engine provides
+	 * them. By default, only the count is retrieved.
+	 */
+	default SearchCount searchWithYears(String term) {
+		return SearchCount.of(search(term));
+	}
+
+	/** Releases the resources held by this service. */
+	default void dispose() {
+	}
+}
@@ -0,0 +1,22 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+/**
+ * The search engines the {@link WebAnalyticsRetriever} collects search result
+ * counts from. The {@link #getKey() key} is used to look up source specific
+ * settings in the settings.properties.
+ * 
+ * @author Steffen Jacobs
+ */
+public enum SearchSource {
+	GOOGLE_SEARCH_API("google-api"), REDDIT("reddit"), GOOGLE_WEB_SEARCH("google-web");
+
+	private final String key;
+
+	private SearchSource(String key) {
+		this.key = key;
+	}
+
+	public String getKey() {
+		return key;
+	}
+}
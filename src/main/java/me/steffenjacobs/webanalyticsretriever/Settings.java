@@ -0,0 +1,55 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.util.ResourceBundle;
+
+/**
+ * Typed access to the values of the settings.properties. Optional settings fall
+ * back to the given default value if they are not specified. A system property
+ * with the same key overrides a setting, e.g. -Dcluster.mode=worker, so that
+ * several processes can share one settings.properties.
+ * 
+ * @author Steffen Jacobs
+ */
+public class Settings {
+
+	private final ResourceBundle bundle;
+
+	public Settings(ResourceBundle bundle) {
+		this.bundle = bundle;
+	}
+
+	/** @return the value of a mandatory setting. */
+	public String getString(String key) {
+		final String value = System.getProperty(key);
+		return value != null ? value : bundle.getString(key);
+	}
+
+	public String getString(String key, String defaultValue) {
+		final String value = find(key);
+		return value != null ? value : defaultValue;
+	}
+
+	public int getInt(String key, int defaultValue) {
+		final String value = find(key);
+		return value != null ? Integer.parseInt(value) : defaultValue;
+	}
+
+	public long getLong(String key, long defaultValue) {
+		final String value = find(key);
+		return value != null ? Long.parseLong(value) : defaultValue;
+	}
+
+	public boolean getBoolean(String key, boolean defaultValue) {
+		final String value = find(key);
+		return value != null ? Boolean.parseBoolean(value) : defaultValue;
+	}
+
+	/** @return the trimmed value of an optional setting or null, if not specified. */
+	private String find(String key) {
+		final String value = System.getProperty(key);
+		if (value != null) {
+			return value.trim();
+		}
+		return bundle.containsKey(key) ? bundle.getString(key).trim() : null;
+	}
+}
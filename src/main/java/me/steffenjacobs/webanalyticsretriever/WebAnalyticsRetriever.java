@@ -1,26 +1,57 @@
 package me.steffenjacobs.webanalyticsretriever;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.net.InetSocketAddress;
 import java.text.SimpleDateFormat;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PropertyResourceBundle;
+import java.util.Random;
 import java.util.ResourceBundle;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import me.steffenjacobs.webanalyticsretriever.cache.CachingSearchService;
+import me.steffenjacobs.webanalyticsretriever.cache.PersistentResultCache;
+import me.steffenjacobs.webanalyticsretriever.cluster.LeasedQuota;
+import me.steffenjacobs.webanalyticsretriever.cluster.ShardCoordinator;
+import me.steffenjacobs.webanalyticsretriever.cluster.ShardWorker;
+import me.steffenjacobs.webanalyticsretriever.daemon.RetrieverDaemon;
+import me.steffenjacobs.webanalyticsretriever.daemon.TermResultCache;
 import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.metrics.InstrumentedSearchService;
+import me.steffenjacobs.webanalyticsretriever.metrics.MetricsRegistry;
+import me.steffenjacobs.webanalyticsretriever.metrics.MetricsReporter;
+import me.steffenjacobs.webanalyticsretriever.pipeline.CheckpointJournal;
+import me.steffenjacobs.webanalyticsretriever.pipeline.CoalescingSearchService;
+import me.steffenjacobs.webanalyticsretriever.pipeline.PipelinedTermScheduler;
+import me.steffenjacobs.webanalyticsretriever.pipeline.SourceExecutor;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.AdaptiveRateLimiter;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.DailyQuota;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.RateLimitedSearchService;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.RequestQuota;
+import me.steffenjacobs.webanalyticsretriever.sink.AsyncResultSink;
+import me.steffenjacobs.webanalyticsretriever.sink.CsvResultSink;
+import me.steffenjacobs.webanalyticsretriever.sink.JsonLinesResultSink;
+import me.steffenjacobs.webanalyticsretriever.sink.ResultSink;
+import me.steffenjacobs.webanalyticsretriever.store.ColumnarResultWriter;
+import me.steffenjacobs.webanalyticsretriever.terms.TermSource;
 
 /**
  * This class contains the main entry point for the web mining application that
@@ -30,14 +61,27 @@ import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
  * PLEASE SPECIFY YOUR GOOGLE SEARCH API KEY AND THE PATH TO YOUR CHROMEDRIVER
  * IN THE settings.properties FILE. If it does not exist yet, please create it.
  */
-public class WebAnalyticsRetriever {
+public class WebAnalyticsRetriever implements Closeable {
 	private static final Logger LOG = LoggerFactory.getLogger(WebAnalyticsRetriever.class);
 
-	private static final SimpleDateFormat sdf = new SimpleDateFormat("YYYY-MM-dd-HH-mm");
+	private static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd-HH-mm");
 
 	private GoogleSearchApiService googleSearchApiService;
-	private GoogleSearchSeleniumService googleBrowserService;
-	private final RedditSearchResultService redditService = new RedditSearchResultService();
+	private SearchService googleBrowserService;
+	private RedditSearchResultService redditService;
+	private CloseableHttpClient httpClient;
+	private CloseableHttpAsyncClient asyncHttpClient;
+	private Settings settings;
+	private int googleWebSearchThreads;
+	private PersistentResultCache cache;
+	private DailyQuota googleApiQuota;
+	private LeasedQuota leasedQuota;
+	private final List<ProcessLock> locks = new ArrayList<>();
+	private final Map<SearchSource, AdaptiveRateLimiter> rateLimiters = new EnumMap<>(SearchSource.class);
+	private BiFunction<SearchSource, SearchService, SearchService> serviceDecorator = (source, service) -> service;
+	private Map<SearchSource, SearchService> services;
+	private final MetricsRegistry metrics = new MetricsRegistry();
+	private MetricsReporter metricsReporter;
 
 	public static final String[] KEY_WORDS = new String[] { "IoT", "Home Automation", "Smart Home" };
 
@@ -55,12 +99,21 @@ public class WebAnalyticsRetriever {
 			LOG.error("Configuration with google-api-key is missing. Please create {}.", resourceFile);
 			return;
 		}
-		ResourceBundle rb = loadResource(resourceFile);
-		String apiKey = rb.getString("google-api-key");
-		String chromeDriverPath = rb.getString("webdriver.chrome.driver");
+		init(new Settings(loadResource(resourceFile)));
 
-		googleSearchApiService = new GoogleSearchApiService(apiKey);
-		googleBrowserService = new GoogleSearchSeleniumService(chromeDriverPath);
+		// a worker retrieves the terms leased by the coordinator instead of its own
+		final String mode = settings.getString("cluster.mode", "standalone");
+		if ("worker".equals(mode)) {
+			try {
+				runWorker();
+			} finally {
+				close();
+			}
+			return;
+		} else if (!"standalone".equals(mode) && !"coordinator".equals(mode)) {
+			close();
+			throw new IllegalArgumentException("Unknown cluster.mode: " + mode);
+		}
 
 		// load the terms.txt file with the platform names in it
 		if (args.length != 1) {
@@ -69,89 +122,509 @@ public class WebAnalyticsRetriever {
 		}
 		File f = new File(args[0]);
 
-		String csv = FileUtils.readFileToString(f, StandardCharsets.UTF_8);
+		// a daemon keeps the services warm and collects repeatedly until it is stopped
+		if (settings.getBoolean("daemon.enabled", false)) {
+			runDaemon(f);
+			return;
+		}
+
+		// retrieve the results and store the results directly to csv term-wise
+		try {
+			collect(f, v -> {
+			});
+		} finally {
+			close();
+		}
+	}
 
-		String[] split = csv.split("\r\n");
+	/**
+	 * Retrieves the results for all terms of the terms file and stores them in
+	 * new output files, or continues an interrupted collection with the same
+	 * terms. The retriever has to be {@link #init(Settings) initialized} before.
+	 * 
+	 * @param listener
+	 *            receives each result in addition to the output files.
+	 * @return true, if the results for all terms have been retrieved.
+	 */
+	public boolean collect(File termsFile, Consumer<SearchResults> listener) throws IOException {
+		// the terms are created lazily from the distinct platform names and markers
+		final TermSource termSource = TermSource.load(termsFile.toPath(), getMarkers());
 
-		List<String> terms = new ArrayList<>();
-		terms.addAll(Arrays.asList(split));
+		// visit the terms in a pseudo-random order to make sure the google search api
+		// limitation of 100 requests per day does not result in only the first 100
+		// terms having actual results
+		final long configuredSeed = settings.getLong("terms.seed", new Random().nextLong());
 
-		// extend each platform name with all marker permutations
-		for (String term : split) {
-			for (String keyWord : KEY_WORDS) {
-				terms.add(term + " " + keyWord);
-			}
+		// continue an interrupted run with the same terms in the same order as before
+		final String outputFilename = "output-" + sdf.format(Calendar.getInstance().getTime()) + ".csv";
+		final CheckpointJournal journal = settings.getBoolean("checkpoint.enabled", false)
+				? new CheckpointJournal(new File(settings.getString("checkpoint.file", "checkpoint.journal")), termSource.getFingerprint(), outputFilename,
+						configuredSeed, settings.getInt("checkpoint.fsync-batch-size", 50))
+				: null;
+		final long seed = journal != null ? journal.getSeed() : configuredSeed;
+		List<String> terms = termSource.permuted(seed);
+		final int startPosition = Math.min(settings.getInt("terms.start-position", 0), terms.size());
+		if (startPosition > 0) {
+			terms = terms.subList(startPosition, terms.size());
 		}
+		LOG.info("Retrieving {} terms in the order of seed {} starting at position {}.", terms.size(), seed, startPosition);
 
-		// shuffle the list of turns to make sure the google search api limitation of
-		// 100 requests per day does not result in only the first 100 terms having
-		// actual results
-		Collections.shuffle(terms);
-
-		final String filename = "output-" + sdf.format(Calendar.getInstance().getTime()) + ".csv";
+		final String filename = journal != null ? journal.getOutputFilename() : outputFilename;
 		final File file = new File(filename);
 		LOG.info("Storing result to ./{}...", filename);
 
-		// retrieve the results and store the results directly to csv term-wise
-		getResultCounts(terms, v -> {
-			final StringBuilder sb = new StringBuilder();
-			sb.append(v.getTerm());
-			sb.append(", ");
-			sb.append(v.getGoogleSearchResultCount());
-			sb.append(", ");
-			sb.append(v.getRedditSearchResultCount());
-			sb.append(", ");
-			sb.append(v.getGoogleBrowserSearchResultCount());
-			sb.append(", ");
-			sb.append(v.getGoogleBrowserExactSearchResultCount());
-			sb.append("\n");
+		try {
+			final boolean completed;
+			try (AsyncResultSink sink = createSink(file, journal)) {
+				final Consumer<SearchResults> consumer = v -> {
+					sink.write(v);
+					listener.accept(v);
+				};
+				completed = "coordinator".equals(settings.getString("cluster.mode", "standalone")) ? coordinate(terms, journal, consumer)
+						: getResultCounts(terms, journal, consumer);
+			}
+			if (journal != null && completed) {
+				journal.complete();
+			}
+			return completed;
+		} finally {
+			if (journal != null) {
+				journal.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs a {@link RetrieverDaemon} for the terms file as configured with
+	 * "daemon.*" in the settings.properties until the process is terminated.
+	 */
+	private void runDaemon(File termsFile) throws IOException {
+		final RetrieverDaemon daemon = new RetrieverDaemon(this, termsFile,
+				new TermResultCache(settings.getInt("daemon.cache.max-entries", 100000), TimeUnit.MINUTES.toMillis(settings.getLong("daemon.cache.ttl-minutes", 60))),
+				settings.getInt("daemon.http-port", 8090), settings.getInt("daemon.http-threads", 8),
+				TimeUnit.MINUTES.toMillis(settings.getLong("daemon.collection-interval-minutes", 60)), settings.getBoolean("daemon.collect-on-start", true),
+				settings.getLong("daemon.lookup-timeout-ms", 120000));
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			LOG.info("Stopping the daemon...");
+			daemon.close();
 			try {
-				FileUtils.write(file, sb.toString(), StandardCharsets.UTF_8, true);
+				close();
 			} catch (IOException e) {
-				LOG.error(e.getMessage(), e);
+				LOG.error("Could not close the retriever: {}", e.getMessage(), e);
 			}
+		}, "daemon-shutdown"));
+	}
+
+	/**
+	 * Creates the HTTP clients, the rate limiters, the search services and the
+	 * cache as configured in the {@link Settings settings}.
+	 */
+	public void init(Settings settings) throws IOException {
+		this.settings = settings;
+		String apiKey = settings.getString("google-api-key");
+
+		final RequestQuota quota;
+		if ("worker".equals(settings.getString("cluster.mode", "standalone"))) {
+			// the coordinator owns the quota file and grants requests with the leases
+			leasedQuota = new LeasedQuota();
+			quota = leasedQuota;
+		} else {
+			final File quotaFile = new File(settings.getString("quota.google-api.file", "quota-google-api.properties"));
+			locks.add(ProcessLock.acquire(quotaFile, "quota.google-api.file"));
+			googleApiQuota = new DailyQuota(quotaFile, settings.getInt("quota.google-api.daily-limit", 100),
+					ZoneId.of(settings.getString("quota.google-api.time-zone", "America/Los_Angeles")));
+			quota = googleApiQuota;
+		}
+
+		httpClient = HttpClientFactory.createPooledClient(settings);
+		asyncHttpClient = HttpClientFactory.createAsyncClient(settings);
+		rateLimiters.put(SearchSource.GOOGLE_SEARCH_API, createRateLimiter(SearchSource.GOOGLE_SEARCH_API, 5000, quota));
+		rateLimiters.put(SearchSource.REDDIT, createRateLimiter(SearchSource.REDDIT, 5000, null));
+		rateLimiters.put(SearchSource.GOOGLE_WEB_SEARCH, createRateLimiter(SearchSource.GOOGLE_WEB_SEARCH, 30000, null));
+		rateLimiters.forEach((source, rateLimiter) -> {
+			metrics.get(source).setGauge("rateLimitWaitMs", rateLimiter::getThrottledMillis);
+			metrics.get(source).setGauge("throttleSignals", rateLimiter::getThrottleSignals);
 		});
+		googleSearchApiService = new GoogleSearchApiService(settings.getString("google-api.base-url", "https://www.googleapis.com/customsearch/v1"), apiKey, asyncHttpClient,
+				rateLimiters.get(SearchSource.GOOGLE_SEARCH_API), metrics.get(SearchSource.GOOGLE_SEARCH_API));
+		redditService = new RedditSearchResultService(settings.getString("reddit.base-url", "https://api.pushshift.io/reddit/search/comment/"), asyncHttpClient,
+				rateLimiters.get(SearchSource.REDDIT), metrics.get(SearchSource.REDDIT));
+		googleBrowserService = createGoogleWebSearchService();
+		cache = createCache();
 
+		final String metricsFile = settings.getString("metrics.dump-file", "");
+		metricsReporter = new MetricsReporter(metrics, settings.getInt("metrics.http-port", -1), metricsFile.isEmpty() ? null : new File(metricsFile),
+				settings.getLong("metrics.dump-interval-ms", 10000));
 	}
 
 	/**
-	 * Retrieves the actual search result counts for each term in {@link Collection
-	 * terms} from each search engine and delivers the result to the given
-	 * {@link Consumer consumer}.
-	 */
-	private void getResultCounts(Collection<String> terms, Consumer<SearchResults> consumer) {
-		int count = 0;
-		for (String term : terms) {
-			// retrieve results
-			CompletableFuture<Long> googleResultFuture = CompletableFuture.supplyAsync(() -> googleSearchApiService.search(term));
-			CompletableFuture<Long> redditResultFuture = CompletableFuture.supplyAsync(() -> redditService.search(term));
-			CompletableFuture<Long> googleBrowserSearchResultFuture = CompletableFuture.supplyAsync(() -> googleBrowserService.search(term));
-			CompletableFuture<Long> googleBrowserSearchExactResultFuture = null;
-
-			// handle exact search for search terms with whitespaces
-			final boolean containsWhitespaces = term.contains(" ");
-			if (containsWhitespaces) {
-				googleBrowserSearchExactResultFuture = CompletableFuture.supplyAsync(() -> googleBrowserService.search(term.replace(" ", " AND ")));
+	 * @return the markers configured with "terms.markers" in the
+	 *         settings.properties, separated by commas. Defaults to the
+	 *         {@link #KEY_WORDS}.
+	 */
+	private List<String> getMarkers() {
+		final List<String> markers = new ArrayList<>();
+		for (String marker : settings.getString("terms.markers", String.join(",", KEY_WORDS)).split(",")) {
+			if (!marker.trim().isEmpty()) {
+				markers.add(marker.trim());
 			}
+		}
+		return markers;
+	}
 
-			// wait until all 4 (or 3) results are back
-			long googleSearchApiResult = googleResultFuture.join();
-			long redditResult = redditResultFuture.join();
-			long googleBrowserSearchResult = googleBrowserSearchResultFuture.join();
-			long googleBrowserExactSearchResult = googleBrowserSearchResult;
+	/**
+	 * Retrieves the search result counts for each term in {@link Iterable terms}
+	 * without recording a checkpoint. The retriever has to be
+	 * {@link #init(Settings) initialized} before. If the terms are no
+	 * {@link Collection}, e.g. because they are requested while they are
+	 * retrieved, the total and the ETA of the run are reported as unknown.
+	 * 
+	 * @return true, if the results for all terms have been retrieved.
+	 */
+	public boolean retrieve(Iterable<String> terms, Consumer<SearchResults> consumer) {
+		return getResultCounts(terms, null, consumer);
+	}
 
-			if (containsWhitespaces) {
-				googleBrowserExactSearchResult = googleBrowserSearchExactResultFuture.join();
-			}
+	/**
+	 * Sets a function that wraps the search service of each {@link SearchSource}
+	 * before it is rate limited and cached, e.g. to measure the latency of the
+	 * single requests. Has to be set before the first results are retrieved.
+	 */
+	public void setServiceDecorator(BiFunction<SearchSource, SearchService, SearchService> serviceDecorator) {
+		this.serviceDecorator = serviceDecorator;
+	}
+
+	/**
+	 * @return the metrics of the search engines, the pipeline and the sinks,
+	 *         updated while the results are retrieved.
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the share of the Google Search API quota granted by the
+	 *         coordinator, if the retriever has been initialized as a worker, else
+	 *         null.
+	 */
+	public LeasedQuota getLeasedQuota() {
+		return leasedQuota;
+	}
+
+	/**
+	 * Shuts down the chrome drivers and closes the HTTP clients, the cache and the
+	 * metrics endpoint.
+	 */
+	@Override
+	public void close() throws IOException {
+		metricsReporter.close();
+		googleBrowserService.dispose();
+		httpClient.close();
+		asyncHttpClient.close();
+		if (cache != null) {
+			cache.close();
+		}
+		for (ProcessLock lock : locks) {
+			lock.close();
+		}
+	}
+
+	/**
+	 * Retrieves the actual search result counts for each term in {@link Iterable
+	 * terms} from each search engine and delivers the result to the given
+	 * {@link Consumer consumer}. The search engines are queried in a pipeline, so
+	 * that the fast search engines are not slowed down by the slowest one. If a
+	 * {@link CheckpointJournal journal} is given, the retrieved results are
+	 * recorded and the terms and results that have already been retrieved in a
+	 * previous, interrupted run are skipped.
+	 * 
+	 * @return true, if the results for all terms have been retrieved.
+	 */
+	private boolean getResultCounts(Iterable<String> terms, CheckpointJournal journal, Consumer<SearchResults> consumer) {
+		final Map<SearchSource, SearchService> services = getServices();
+		// identical queries of different terms are only sent once
+		final Map<SearchSource, CoalescingSearchService> coalescingServices = new EnumMap<>(SearchSource.class);
+		if (settings.getBoolean("coalescing.enabled", true)) {
+			services.replaceAll((source, service) -> {
+				final CoalescingSearchService coalescingService = new CoalescingSearchService(service, settings.getInt("coalescing.max-entries", 100000));
+				coalescingServices.put(source, coalescingService);
+				metrics.get(source).setGauge("coalescedInFlight", coalescingService::getJoined);
+				metrics.get(source).setGauge("coalescedRepeated", coalescingService::getRepeated);
+				return coalescingService;
+			});
+		}
+
+		final int maxInFlightTerms = settings.getInt("scheduler.max-in-flight-terms", 8);
+		final Map<SearchSource, SourceExecutor> executors = createExecutors(maxInFlightTerms);
+		executors.forEach((source, executor) -> {
+			metrics.get(source).setGauge("queueDepth", executor::getQueueDepth);
+			metrics.get(source).setGauge("activeThreads", executor::getActiveThreads);
+		});
+		// the total is unknown, if the terms are requested while they are retrieved
+		final int total = terms instanceof Collection ? ((Collection<?>) terms).size() : -1;
+		metrics.startRun(total);
 
+		final AtomicInteger count = new AtomicInteger();
+		try (PipelinedTermScheduler scheduler = new PipelinedTermScheduler(services, executors, maxInFlightTerms, v -> {
 			// give the result to the consumer
-			consumer.accept(new SearchResults(term, googleSearchApiResult, redditResult, googleBrowserSearchResult,
-					containsWhitespaces ? googleBrowserExactSearchResult : googleBrowserSearchResult));
+			consumer.accept(v);
+			metrics.onTermCompleted();
 
 			// progress indicator
-			count++;
-			LOG.info("Retrieved results for search term {} ({}/{})", term, count, terms.size());
+			final int current = count.incrementAndGet();
+			LOG.info("Retrieved results for search term {} ({}/{})", v.getTerm(), current, total >= 0 ? total : "?");
+			if (current % 100 == 0) {
+				LOG.info("Executors: {}", executors.values());
+				LOG.info("Rate limits: {}", rateLimiters.values());
+				LOG.info("Progress: {} terms/s, ETA {} s", String.format("%.2f", metrics.getTermsPerSecond()), metrics.getEtaSeconds());
+			}
+		})) {
+			metrics.setPipelineGauge("inFlightTerms", scheduler::getInFlightTerms);
+			if (journal != null) {
+				scheduler.setPartListener(journal::recordPart);
+			}
+			for (String term : terms) {
+				if (journal != null && journal.isDone(term)) {
+					// already retrieved in a previous run
+					count.incrementAndGet();
+					metrics.onTermSkipped();
+					continue;
+				}
+				scheduler.submit(term, journal != null ? journal.getCompletedParts(term) : Collections.emptyMap());
+			}
+			scheduler.awaitCompletion();
+			LOG.info("Executors: {}", executors.values());
+			LOG.info("Rate limits: {}", rateLimiters.values());
+			coalescingServices.forEach((source, service) -> LOG.info("Coalesced {}: {}", source.getKey(), service));
+			return true;
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while retrieving search results.", e);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a scheduler that retrieves single terms on demand with the same
+	 * services, rate limits and cache as the collections, e.g. while a collection
+	 * is running. The retriever has to be {@link #init(Settings) initialized}
+	 * before and the scheduler has to be closed after usage.
+	 * 
+	 * @param consumer
+	 *            receives the results of the submitted terms.
+	 * @param refresh
+	 *            true to retrieve the terms again instead of answering them from
+	 *            the cache configured with "cache.mode". The retrieved counts are
+	 *            still cached.
+	 */
+	public PipelinedTermScheduler createScheduler(Consumer<SearchResults> consumer, boolean refresh) {
+		final int maxInFlightTerms = settings.getInt("scheduler.max-in-flight-terms", 8);
+		final Map<SearchSource, SearchService> services = getServices();
+		if (refresh) {
+			services.replaceAll((source, service) -> service instanceof CachingSearchService ? ((CachingSearchService) service).refreshing() : service);
 		}
+		return new PipelinedTermScheduler(services, createExecutors(maxInFlightTerms), maxInFlightTerms, consumer);
+	}
+
+	/**
+	 * @return the search service of each {@link SearchSource}, instrumented, rate
+	 *         limited and cached. The services are created once and shared by all
+	 *         collections and schedulers, so that their metrics are registered
+	 *         only once.
+	 */
+	private synchronized Map<SearchSource, SearchService> getServices() {
+		if (services == null) {
+			services = new EnumMap<>(SearchSource.class);
+			services.put(SearchSource.GOOGLE_SEARCH_API, googleSearchApiService);
+			services.put(SearchSource.REDDIT, redditService);
+			services.put(SearchSource.GOOGLE_WEB_SEARCH, googleBrowserService);
+			// cached results do not count against the rate limits
+			services.replaceAll((source, service) -> withCache(source, new RateLimitedSearchService(
+					new InstrumentedSearchService(serviceDecorator.apply(source, service), metrics.get(source)), rateLimiters.get(source))));
+		}
+		return new EnumMap<>(services);
+	}
+
+	private Map<SearchSource, SourceExecutor> createExecutors(int maxInFlightTerms) {
+		final Map<SearchSource, SourceExecutor> executors = new EnumMap<>(SearchSource.class);
+		executors.put(SearchSource.GOOGLE_SEARCH_API, createExecutor(SearchSource.GOOGLE_SEARCH_API, 2, true, maxInFlightTerms));
+		executors.put(SearchSource.REDDIT, createExecutor(SearchSource.REDDIT, 2, true, maxInFlightTerms));
+		executors.put(SearchSource.GOOGLE_WEB_SEARCH, new SourceExecutor(SearchSource.GOOGLE_WEB_SEARCH.getKey(), googleWebSearchThreads, 2 * maxInFlightTerms, false));
+		return executors;
+	}
+
+	/**
+	 * Distributes the terms among the {@link ShardWorker workers} connected to
+	 * the address configured with "cluster.host" and "cluster.port" and delivers
+	 * their results to the given {@link Consumer consumer}. Terms recorded as done
+	 * in the {@link CheckpointJournal journal} are skipped.
+	 * 
+	 * @return true, if the results for all terms have been retrieved.
+	 */
+	private boolean coordinate(List<String> terms, CheckpointJournal journal, Consumer<SearchResults> consumer) throws IOException {
+		metrics.startRun(terms.size());
+		final AtomicInteger count = new AtomicInteger();
+		try (ShardCoordinator coordinator = new ShardCoordinator(terms, term -> {
+			if (journal != null && journal.isDone(term)) {
+				// already retrieved in a previous run
+				count.incrementAndGet();
+				metrics.onTermSkipped();
+				return true;
+			}
+			return false;
+		}, settings.getInt("cluster.batch-size", 50), settings.getLong("cluster.lease-ms", 60000), googleApiQuota)) {
+			metrics.setPipelineGauge("workers", coordinator::getWorkers);
+			metrics.setPipelineGauge("leasedTerms", coordinator::getLeasedTerms);
+			return coordinator.run(getCoordinatorAddress(), v -> {
+				consumer.accept(v);
+				metrics.onTermCompleted();
+
+				final int current = count.incrementAndGet();
+				LOG.info("Retrieved results for search term {} ({}/{})", v.getTerm(), current, terms.size());
+				if (current % 100 == 0) {
+					LOG.info("Progress: {} terms/s with {} workers, ETA {} s", String.format("%.2f", metrics.getTermsPerSecond()), coordinator.getWorkers(),
+							metrics.getEtaSeconds());
+				}
+			});
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while coordinating the workers.", e);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Retrieves the terms leased by the coordinator configured with
+	 * "cluster.host" and "cluster.port" until all terms have been retrieved.
+	 */
+	private void runWorker() throws IOException {
+		final ShardWorker worker = new ShardWorker(this, getCoordinatorAddress(), settings.getLong("cluster.heartbeat-ms", 10000),
+				settings.getLong("cluster.connect-timeout-ms", 60000), leasedQuota);
+		try {
+			if (!worker.run()) {
+				LOG.warn("Stopped before all leased terms have been retrieved.");
+			}
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while retrieving leased terms.", e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private InetSocketAddress getCoordinatorAddress() {
+		return new InetSocketAddress(settings.getString("cluster.host", "localhost"), settings.getInt("cluster.port", 7341));
+	}
+
+	/**
+	 * Creates the {@link ResultSink sinks} for the formats configured with
+	 * "sink.formats" in the settings.properties: "csv" (default) and/or "jsonl".
+	 * Results are written in the background and the terms are recorded as done in
+	 * the {@link CheckpointJournal journal} once all sinks have flushed them.
+	 */
+	private AsyncResultSink createSink(File csvFile, CheckpointJournal journal) throws IOException {
+		final List<ResultSink> sinks = new ArrayList<>();
+		for (String format : settings.getString("sink.formats", "csv").split(",")) {
+			final String baseName = csvFile.getPath().substring(0, csvFile.getPath().length() - ".csv".length());
+			switch (format.trim()) {
+			case "csv":
+				sinks.add(new CsvResultSink(csvFile));
+				break;
+			case "jsonl":
+				sinks.add(new JsonLinesResultSink(new File(baseName + ".jsonl")));
+				break;
+			case "columnar":
+				sinks.add(new ColumnarResultWriter(new File(baseName + ".col"), System.currentTimeMillis()));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown sink format: " + format);
+			}
+		}
+		final AsyncResultSink sink = new AsyncResultSink(sinks, settings.getInt("sink.batch-size", 100), settings.getLong("sink.flush-interval-ms", 1000), batch -> {
+			if (journal != null) {
+				batch.forEach(v -> journal.recordDone(v.getTerm()));
+			}
+		}, metrics.getSinkWriteLatency());
+		metrics.setSinkGauge("queued", sink::getQueued);
+		return sink;
+	}
+
+	/**
+	 * Creates the {@link PersistentResultCache} as configured with "cache.mode" in
+	 * the settings.properties: "off" (default) or "read-through" to answer
+	 * searches from the cache until they expire, so that only the expired results
+	 * are retrieved again. The output files still contain all terms, the cached
+	 * counts are marked as such and are not aggregated as observations of the run.
+	 */
+	private PersistentResultCache createCache() throws IOException {
+		final String mode = settings.getString("cache.mode", "off");
+		if ("off".equals(mode)) {
+			return null;
+		} else if (!"read-through".equals(mode)) {
+			throw new IllegalArgumentException("Unknown cache.mode: " + mode);
+		}
+
+		final Map<SearchSource, Long> ttl = new EnumMap<>(SearchSource.class);
+		for (SearchSource source : SearchSource.values()) {
+			ttl.put(source, TimeUnit.HOURS.toMillis(settings.getLong("cache.ttl-hours." + source.getKey(), 24)));
+		}
+		final File file = new File(settings.getString("cache.file", "result-cache.log"));
+		locks.add(ProcessLock.acquire(file, "cache.file"));
+		return new PersistentResultCache(file, settings.getInt("cache.max-entries", 100000), ttl);
+	}
+
+	private SearchService withCache(SearchSource source, SearchService service) {
+		if (cache == null) {
+			return service;
+		}
+		final CachingSearchService cachingService = new CachingSearchService(service, source, cache);
+		metrics.get(source).setGauge("cacheHits", cachingService::getHits);
+		metrics.get(source).setGauge("cacheMisses", cachingService::getMisses);
+		return cachingService;
+	}
+
+	/**
+	 * Creates the service for the Google WebSearch: either a pool of chrome
+	 * drivers (default) or plain HTTP requests, as configured with
+	 * "google-web-search.backend" in the settings.properties.
+	 */
+	private SearchService createGoogleWebSearchService() {
+		final String backend = settings.getString("google-web-search.backend", "selenium");
+		final String baseUrl = settings.getString("google-web-search.base-url", "https://www.google.de/search");
+		if ("http".equals(backend)) {
+			googleWebSearchThreads = settings.getInt("executor.google-web.threads", 1);
+			return new GoogleSearchHttpService(baseUrl, httpClient, rateLimiters.get(SearchSource.GOOGLE_WEB_SEARCH), metrics.get(SearchSource.GOOGLE_WEB_SEARCH));
+		} else if ("selenium".equals(backend)) {
+			// one thread per chrome driver session
+			googleWebSearchThreads = settings.getInt("browser.pool-size", 1);
+			return new GoogleSearchSeleniumService(baseUrl, settings.getString("webdriver.chrome.driver"), googleWebSearchThreads,
+					settings.getInt("browser.max-pages-per-session", 200), rateLimiters.get(SearchSource.GOOGLE_WEB_SEARCH), metrics.get(SearchSource.GOOGLE_WEB_SEARCH));
+		}
+		throw new IllegalArgumentException("Unknown google-web-search.backend: " + backend);
+	}
+
+	/**
+	 * Creates the {@link AdaptiveRateLimiter} for the given {@link SearchSource}
+	 * as configured in the settings.properties.
+	 */
+	private AdaptiveRateLimiter createRateLimiter(SearchSource source, long defaultBackoffMillis, RequestQuota quota) {
+		final String prefix = "rate-limit." + source.getKey() + ".";
+		final double maxRate = Double.parseDouble(settings.getString(prefix + "max-per-second", "0"));
+		final double minRate = Double.parseDouble(settings.getString(prefix + "min-per-second", Double.toString(maxRate / 100)));
+		return new AdaptiveRateLimiter(source.getKey(), minRate, maxRate, settings.getInt(prefix + "burst", 1), settings.getLong(prefix + "backoff-ms", defaultBackoffMillis),
+				quota);
+	}
+
+	/**
+	 * Creates the {@link SourceExecutor} for the given {@link SearchSource} as
+	 * configured in the settings.properties. Each term enqueues at most two
+	 * requests per source (web search and exact web search), so by default the
+	 * queue never overflows while the number of terms in flight is limited. The
+	 * responses of asynchronous searches are queued in place of their requests,
+	 * so they never block the I/O threads of the HTTP client either.
+	 */
+	private SourceExecutor createExecutor(SearchSource source, int defaultThreads, boolean defaultVirtualThreads, int maxInFlightTerms) {
+		final String prefix = "executor." + source.getKey() + ".";
+		return new SourceExecutor(source.getKey(), settings.getInt(prefix + "threads", defaultThreads), settings.getInt(prefix + "queue-capacity", 2 * maxInFlightTerms),
+				settings.getBoolean(prefix + "virtual-threads", defaultVirtualThreads));
 	}
 
 	/** Loads a resource bundle from a file. */
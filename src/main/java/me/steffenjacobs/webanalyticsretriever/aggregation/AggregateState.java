@@ -0,0 +1,201 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+
+/**
+ * Persisted {@link PartialAggregate} together with a manifest of the files it
+ * has been aggregated from (name, size and modification time). Each run of the
+ * {@link me.steffenjacobs.webanalyticsretriever.AnalyticsAggregator} only
+ * parses files that are not yet in the manifest. The statistics cannot be
+ * subtracted, so if a file in the manifest changed or has been removed, the
+ * aggregate is rebuilt from all files.
+ * 
+ * @author Steffen Jacobs
+ */
+public class AggregateState {
+	private static final Logger LOG = LoggerFactory.getLogger(AggregateState.class);
+
+	private static final int MAGIC = 0x57415241;
+	private static final int VERSION = 2;
+
+	private final File file;
+	private final Map<String, FileEntry> manifest = new LinkedHashMap<>();
+	private PartialAggregate aggregate = new PartialAggregate();
+
+	/** Loads the state from the file, if it exists and is readable. */
+	public AggregateState(File file) {
+		this.file = file;
+		if (file.exists()) {
+			try {
+				load();
+			} catch (IOException e) {
+				LOG.warn("Discarding unreadable aggregate state {}: {}", file, e.getMessage());
+				manifest.clear();
+				aggregate = new PartialAggregate();
+			}
+		}
+	}
+
+	/**
+	 * Brings the aggregate up to date with the given files and stores the state.
+	 * 
+	 * @param files
+	 *            all csv files, sorted by name.
+	 * @param threads
+	 *            the number of threads parsing new files.
+	 * @return the aggregate over all files.
+	 */
+	public PartialAggregate update(List<Path> files, int threads) throws IOException {
+		final Map<String, FileEntry> current = new LinkedHashMap<>();
+		for (Path path : files) {
+			current.put(path.getFileName().toString(), FileEntry.of(path));
+		}
+
+		boolean rebuild = false;
+		for (Map.Entry<String, FileEntry> e : manifest.entrySet()) {
+			if (!e.getValue().equals(current.get(e.getKey()))) {
+				LOG.info("{} changed since the last aggregation, rebuilding the aggregate.", e.getKey());
+				rebuild = true;
+				break;
+			}
+		}
+		if (rebuild) {
+			manifest.clear();
+			aggregate = new PartialAggregate();
+		}
+
+		final List<Path> newFiles = new ArrayList<>();
+		for (Path path : files) {
+			if (!manifest.containsKey(path.getFileName().toString())) {
+				newFiles.add(path);
+			}
+		}
+		LOG.info("Reusing the aggregate of {} files, parsing {} new files.", manifest.size(), newFiles.size());
+
+		if (!newFiles.isEmpty()) {
+			aggregate.merge(ParallelAggregator.aggregate(newFiles, threads));
+			for (Path path : newFiles) {
+				manifest.put(path.getFileName().toString(), current.get(path.getFileName().toString()));
+			}
+			store();
+		}
+		return aggregate;
+	}
+
+	private void load() throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unsupported file format.");
+			}
+			final int files = in.readInt();
+			for (int i = 0; i < files; i++) {
+				manifest.put(in.readUTF(), new FileEntry(in.readLong(), in.readLong()));
+			}
+			aggregate = new PartialAggregate(in.readLong(), files);
+			final int terms = in.readInt();
+			for (int i = 0; i < terms; i++) {
+				final TermStatistics statistics = new TermStatistics();
+				aggregate.getStatistics().put(in.readUTF(), statistics);
+				for (ResultPart part : ResultPart.values()) {
+					statistics.get(part).merge(readStatistics(in));
+				}
+				final int years = in.readInt();
+				for (int j = 0; j < years; j++) {
+					statistics.getRedditYear(in.readInt()).merge(readStatistics(in));
+				}
+			}
+		}
+	}
+
+	private void store() throws IOException {
+		final File tmp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream fos = new FileOutputStream(tmp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(manifest.size());
+			for (Map.Entry<String, FileEntry> e : manifest.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeLong(e.getValue().size);
+				out.writeLong(e.getValue().lastModified);
+			}
+			out.writeLong(aggregate.getRows());
+			out.writeInt(aggregate.getStatistics().size());
+			for (Map.Entry<String, TermStatistics> e : aggregate.getStatistics().entrySet()) {
+				out.writeUTF(e.getKey());
+				for (ResultPart part : ResultPart.values()) {
+					writeStatistics(out, e.getValue().get(part));
+				}
+				out.writeInt(e.getValue().getRedditYears().size());
+				for (Map.Entry<Integer, RunningStatistics> year : e.getValue().getRedditYears().entrySet()) {
+					out.writeInt(year.getKey());
+					writeStatistics(out, year.getValue());
+				}
+			}
+			out.flush();
+			fos.getFD().sync();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static RunningStatistics readStatistics(DataInputStream in) throws IOException {
+		return RunningStatistics.of(in.readLong(), in.readLong(), in.readDouble(), in.readDouble(), in.readLong(), in.readLong());
+	}
+
+	private static void writeStatistics(DataOutputStream out, RunningStatistics s) throws IOException {
+		out.writeLong(s.getCount());
+		out.writeLong(s.getSum());
+		out.writeDouble(s.getMean());
+		out.writeDouble(s.getM2());
+		out.writeLong(s.getMin());
+		out.writeLong(s.getMax());
+	}
+
+	/** Size and modification time of an aggregated file. */
+	private static class FileEntry {
+		private final long size;
+		private final long lastModified;
+
+		private FileEntry(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		private static FileEntry of(Path path) throws IOException {
+			return new FileEntry(Files.size(path), Files.getLastModifiedTime(path).toMillis());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FileEntry)) {
+				return false;
+			}
+			final FileEntry other = (FileEntry) obj;
+			return size == other.size && lastModified == other.lastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(size) * 31 + Long.hashCode(lastModified);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the output files of the runs of the
+ * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever} in a
+ * directory.
+ * 
+ * @author Steffen Jacobs
+ */
+public final class OutputFiles {
+
+	private static final Pattern FILE_PATTERN = Pattern.compile("output-(\\d\\d\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d)\\.(csv|col)");
+
+	private OutputFiles() {
+	}
+
+	/**
+	 * @return the csv and columnar output files in the directory, sorted by name.
+	 *         If a run has been stored as csv and columnar file, only the columnar
+	 *         file is returned.
+	 */
+	public static List<Path> find(File directory) {
+		final Map<String, Path> runs = new TreeMap<>();
+		for (File file : directory.listFiles()) {
+			Matcher m = FILE_PATTERN.matcher(file.getName());
+			if (m.matches() && (!runs.containsKey(m.group(1)) || "col".equals(m.group(2)))) {
+				runs.put(m.group(1), file.toPath());
+			}
+		}
+		return new ArrayList<>(runs.values());
+	}
+
+	/**
+	 * @return the start of the run as encoded in the name of the output file in
+	 *         milliseconds since the epoch, or -1 if the name is not the name of
+	 *         an output file.
+	 */
+	public static long getRunTimestamp(Path file) {
+		final Matcher m = FILE_PATTERN.matcher(file.getFileName().toString());
+		if (!m.matches()) {
+			return -1;
+		}
+		try {
+			return new SimpleDateFormat("yyyy-MM-dd-HH-mm").parse(m.group(1)).getTime();
+		} catch (ParseException e) {
+			return -1;
+		}
+	}
+}
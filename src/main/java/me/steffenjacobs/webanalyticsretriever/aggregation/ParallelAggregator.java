@@ -0,0 +1,67 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates csv files in two phases: the map phase parses each file into a
+ * {@link PartialAggregate} in parallel on a {@link ForkJoinPool}, the reduce
+ * phase merges the partial aggregates in the order of the files. Because the
+ * merge order is fixed, the result is exactly the same for any number of
+ * threads.
+ * 
+ * @author Steffen Jacobs
+ */
+public final class ParallelAggregator {
+
+	private ParallelAggregator() {
+	}
+
+	/**
+	 * @param files
+	 *            the csv files to aggregate.
+	 * @param threads
+	 *            the number of threads parsing the files, 1 to parse them
+	 *            sequentially on the calling thread.
+	 */
+	public static PartialAggregate aggregate(List<Path> files, int threads) throws IOException {
+		final List<PartialAggregate> partials;
+		if (threads <= 1) {
+			partials = files.stream().map(ParallelAggregator::parse).collect(Collectors.toList());
+		} else {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				partials = pool.submit(() -> files.parallelStream().map(ParallelAggregator::parse).collect(Collectors.toList())).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while aggregating files.", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) e.getCause()).getCause();
+				}
+				throw new IOException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		final PartialAggregate result = new PartialAggregate();
+		for (PartialAggregate partial : partials) {
+			result.merge(partial);
+		}
+		return result;
+	}
+
+	private static PartialAggregate parse(Path file) {
+		try {
+			return PartialAggregate.parse(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
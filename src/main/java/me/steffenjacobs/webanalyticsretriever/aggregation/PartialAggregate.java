@@ -0,0 +1,84 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+import me.steffenjacobs.webanalyticsretriever.store.ColumnarResultReader;
+
+/**
+ * The {@link TermStatistics} of each search term over a set of csv or columnar
+ * result files. Partial aggregates of disjunct sets of files can be
+ * {@link #merge(PartialAggregate) merged}.
+ * 
+ * @author Steffen Jacobs
+ */
+public class PartialAggregate {
+
+	private final Map<String, TermStatistics> statistics = new HashMap<>();
+	private long rows;
+	private int files;
+
+	public PartialAggregate() {
+	}
+
+	/** Restores a previously persisted aggregate without statistics. */
+	PartialAggregate(long rows, int files) {
+		this.rows = rows;
+		this.files = files;
+	}
+
+	/**
+	 * Parses a single csv file or columnar result file (ending with ".col") into a
+	 * new partial aggregate.
+	 */
+	public static PartialAggregate parse(Path file) throws IOException {
+		final PartialAggregate aggregate = new PartialAggregate();
+		final SearchResultsCsvParser.RowHandler handler = new SearchResultsCsvParser.RowHandler() {
+			@Override
+			public void onRow(String term, long reddit, long google, long googleWebSearch, long googleWebSearchExact) {
+				onRow(term, reddit, google, googleWebSearch, googleWebSearchExact, null);
+			}
+
+			@Override
+			public void onRow(String term, long reddit, long google, long googleWebSearch, long googleWebSearchExact, YearHistogram redditYears) {
+				final TermStatistics statistics = aggregate.statistics.computeIfAbsent(term, t -> new TermStatistics());
+				statistics.add(reddit, google, googleWebSearch, googleWebSearchExact);
+				if (redditYears != null) {
+					statistics.addRedditYears(redditYears);
+				}
+			}
+		};
+		if (file.getFileName().toString().endsWith(".col")) {
+			aggregate.rows = ColumnarResultReader.open(file).read(handler);
+		} else {
+			aggregate.rows = SearchResultsCsvParser.parse(file, handler);
+		}
+		aggregate.files = 1;
+		return aggregate;
+	}
+
+	/** Adds all statistics of the other aggregate to this one. */
+	public void merge(PartialAggregate other) {
+		for (Map.Entry<String, TermStatistics> e : other.statistics.entrySet()) {
+			statistics.computeIfAbsent(e.getKey(), t -> new TermStatistics()).merge(e.getValue());
+		}
+		rows += other.rows;
+		files += other.files;
+	}
+
+	/** @return the statistics keyed with the search term. */
+	public Map<String, TermStatistics> getStatistics() {
+		return statistics;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public int getFiles() {
+		return files;
+	}
+}
@@ -0,0 +1,115 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+/**
+ * Single-pass, mergeable statistics over a series of search result counts:
+ * count, sum, mean, variance (Welford's algorithm), minimum and maximum. Partial
+ * statistics, e.g. of different files, can be {@link #merge(RunningStatistics)
+ * merged} into one.
+ * 
+ * @author Steffen Jacobs
+ */
+public class RunningStatistics {
+
+	private long count;
+	private long sum;
+	private double mean;
+	private double m2;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+
+	public void add(long value) {
+		count++;
+		sum += value;
+		final double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/** Adds all values of the other statistics to this one. */
+	public void merge(RunningStatistics other) {
+		if (other.count == 0) {
+			return;
+		}
+		if (count == 0) {
+			count = other.count;
+			sum = other.sum;
+			mean = other.mean;
+			m2 = other.m2;
+			min = other.min;
+			max = other.max;
+			return;
+		}
+		final long total = count + other.count;
+		final double delta = other.mean - mean;
+		mean += delta * other.count / total;
+		m2 += other.m2 + delta * delta * count * other.count / total;
+		count = total;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	/** @return the running mean, 0 if there are no values. */
+	double getMean() {
+		return mean;
+	}
+
+	/** @return the sum of squared differences from the mean. */
+	double getM2() {
+		return m2;
+	}
+
+	/** @return the average or -1 if there are no values. */
+	public double getAverage() {
+		return count > 0 ? (double) sum / count : -1;
+	}
+
+	/** @return the bias corrected variance or 0 for less than two values. */
+	public double getVariance() {
+		return count > 1 ? m2 / (count - 1) : 0;
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * @return the standard deviation of the values after normalizing them to a sum
+	 *         of 1, or 0 if the sum is not greater than 1.
+	 */
+	public double getNormalizedStandardDeviation() {
+		return sum > 1 ? getStandardDeviation() / sum : 0;
+	}
+
+	/** @return the minimum or {@link Long#MAX_VALUE} if there are no values. */
+	public long getMin() {
+		return min;
+	}
+
+	/** @return the maximum or {@link Long#MIN_VALUE} if there are no values. */
+	public long getMax() {
+		return max;
+	}
+
+	/** Restores previously persisted statistics. */
+	static RunningStatistics of(long count, long sum, double mean, double m2, long min, long max) {
+		final RunningStatistics statistics = new RunningStatistics();
+		statistics.count = count;
+		statistics.sum = sum;
+		statistics.mean = mean;
+		statistics.m2 = m2;
+		statistics.min = min;
+		statistics.max = max;
+		return statistics;
+	}
+}
@@ -0,0 +1,200 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * Single-pass parser for the csv files created by the
+ * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever}. The file
+ * is memory-mapped and tokenized in place: apart from the term, no objects are
+ * created per row. Supports all csv layouts ever written:
+ * <ol>
+ * <li>term, google-search-api</li>
+ * <li>term, reddit, google-search-api</li>
+ * <li>term, reddit, google-search-api, google-websearch</li>
+ * <li>term, reddit, google-search-api, google-websearch,
+ * google-websearch-exact</li>
+ * <li>term, reddit, google-search-api, google-websearch,
+ * google-websearch-exact, reddit-years</li>
+ * <li>term, reddit, google-search-api, google-websearch,
+ * google-websearch-exact, reddit-years, cached</li>
+ * </ol>
+ * Missing values are reported as -1. So are the values of the parts listed in
+ * the cached column, because they have been answered from the cache and are no
+ * observations of the run.
+ * 
+ * @author Steffen Jacobs
+ */
+public final class SearchResultsCsvParser {
+
+	private static final int MAX_FIELDS = 7;
+
+	private SearchResultsCsvParser() {
+	}
+
+	/** Receives the values of each row. */
+	@FunctionalInterface
+	public interface RowHandler {
+		void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact);
+
+		/**
+		 * Receives the values of a row including the number of Reddit comments per
+		 * year, which is null if not available. By default, they are ignored.
+		 */
+		default void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact, YearHistogram redditYears) {
+			onRow(term, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact);
+		}
+	}
+
+	/**
+	 * Parses the file at the given {@link Path path} and passes each row to the
+	 * {@link RowHandler handler}.
+	 * 
+	 * @return the number of parsed rows.
+	 */
+	public static int parse(Path path, RowHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() == 0) {
+				return 0;
+			}
+			return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), handler);
+		}
+	}
+
+	/** Parses all rows between the position and the limit of the buffer. */
+	public static int parse(ByteBuffer buffer, RowHandler handler) {
+		final int[] fieldStarts = new int[MAX_FIELDS];
+		final int[] fieldEnds = new int[MAX_FIELDS];
+		byte[] termBytes = new byte[256];
+		int rows = 0;
+
+		final int limit = buffer.limit();
+		int lineStart = buffer.position();
+		while (lineStart < limit) {
+			int lineEnd = lineStart;
+			while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			final int nextLine = lineEnd + 1;
+			if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+
+			// split the line at the commas, surplus fields are ignored
+			int fields = 0;
+			int fieldStart = lineStart;
+			for (int i = lineStart; i <= lineEnd && fields < MAX_FIELDS; i++) {
+				if (i == lineEnd || buffer.get(i) == ',') {
+					fieldStarts[fields] = fieldStart;
+					fieldEnds[fields++] = i;
+					fieldStart = i + 1;
+				}
+			}
+			// like String.split(), ignore trailing empty fields
+			while (fields > 0 && fieldStarts[fields - 1] == fieldEnds[fields - 1]) {
+				fields--;
+			}
+
+			if (fields >= 2) {
+				final int termLength = fieldEnds[0] - fieldStarts[0];
+				if (termLength > termBytes.length) {
+					termBytes = new byte[Math.max(termLength, 2 * termBytes.length)];
+				}
+				for (int j = 0; j < termLength; j++) {
+					termBytes[j] = buffer.get(fieldStarts[0] + j);
+				}
+				final String term = new String(termBytes, 0, termLength, StandardCharsets.UTF_8);
+
+				if (fields == 2) {
+					// compatibility for initial google api-only csv files
+					handler.onRow(term, -1, parseLong(buffer, fieldStarts[1], fieldEnds[1]), -1, -1, null);
+				} else {
+					// compatibility for 2nd gen google api + reddit csv files, reddit + google api
+					// + google web search csv files and the current version of csv files with
+					// reddit, google api and google web search (with and without exact terms and
+					// reddit comments per year)
+					final Set<ResultPart> cached = fields > 6 ? parseParts(buffer, fieldStarts[6], fieldEnds[6]) : Collections.emptySet();
+					handler.onRow(term, observed(cached, ResultPart.REDDIT, buffer, fieldStarts[1], fieldEnds[1]),
+							observed(cached, ResultPart.GOOGLE_SEARCH_API, buffer, fieldStarts[2], fieldEnds[2]),
+							fields > 3 ? observed(cached, ResultPart.GOOGLE_WEB_SEARCH, buffer, fieldStarts[3], fieldEnds[3]) : -1,
+							fields > 4 ? observed(cached, ResultPart.GOOGLE_WEB_SEARCH_EXACT, buffer, fieldStarts[4], fieldEnds[4]) : -1,
+							fields > 5 ? parseHistogram(buffer, fieldStarts[5], fieldEnds[5]) : null);
+				}
+				rows++;
+			}
+			lineStart = nextLine;
+		}
+		return rows;
+	}
+
+	/**
+	 * Parses a {@link YearHistogram} in the format "2015:12;2016:40".
+	 * 
+	 * @return null, if the field is empty.
+	 */
+	static YearHistogram parseHistogram(ByteBuffer buffer, int start, int end) {
+		final String histogram = toString(buffer, start, end).trim();
+		return histogram.isEmpty() ? null : YearHistogram.parse(histogram);
+	}
+
+	/** Parses the keys of {@link ResultPart parts} in the format "google-api;reddit". */
+	static Set<ResultPart> parseParts(ByteBuffer buffer, int start, int end) {
+		final Set<ResultPart> parts = EnumSet.noneOf(ResultPart.class);
+		for (String key : toString(buffer, start, end).split(";")) {
+			final ResultPart part = ResultPart.forKey(key.trim());
+			if (part != null) {
+				parts.add(part);
+			}
+		}
+		return parts;
+	}
+
+	/** @return the value of the field, or -1 if the part has been cached. */
+	private static long observed(Set<ResultPart> cached, ResultPart part, ByteBuffer buffer, int start, int end) {
+		return cached.contains(part) ? -1 : parseLong(buffer, start, end);
+	}
+
+	private static String toString(ByteBuffer buffer, int start, int end) {
+		final byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	/** Parses a decimal number surrounded by optional whitespaces. */
+	static long parseLong(ByteBuffer buffer, int start, int end) {
+		while (start < end && Character.isWhitespace(buffer.get(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(buffer.get(end - 1))) {
+			end--;
+		}
+		if (start == end) {
+			throw new NumberFormatException("Empty value at offset " + start);
+		}
+		final boolean negative = buffer.get(start) == '-';
+		if (negative) {
+			start++;
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			final int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("Invalid digit at offset " + i);
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+}
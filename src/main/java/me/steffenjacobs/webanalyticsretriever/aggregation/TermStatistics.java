@@ -0,0 +1,95 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * {@link RunningStatistics} over all runs of a single search term for each
+ * {@link ResultPart search engine}. Missing search results (equal to -1) are
+ * ignored. Additionally holds the statistics of the Reddit comments per year of
+ * creation. Memory usage does not depend on the number of runs.
+ * 
+ * @author Steffen Jacobs
+ */
+public class TermStatistics {
+
+	private final RunningStatistics[] statistics = new RunningStatistics[ResultPart.values().length];
+	private final Map<Integer, RunningStatistics> redditYears = new TreeMap<>();
+
+	public TermStatistics() {
+		for (int i = 0; i < statistics.length; i++) {
+			statistics[i] = new RunningStatistics();
+		}
+	}
+
+	/** Adds the search results of a single run. */
+	public void add(long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact) {
+		add(ResultPart.REDDIT, reddit);
+		add(ResultPart.GOOGLE_SEARCH_API, googleSearchApi);
+		add(ResultPart.GOOGLE_WEB_SEARCH, googleWebSearch);
+		add(ResultPart.GOOGLE_WEB_SEARCH_EXACT, googleWebSearchExact);
+	}
+
+	/** Adds the number of Reddit comments per year of a single run. */
+	public void addRedditYears(YearHistogram years) {
+		for (int i = 0; i < years.size(); i++) {
+			getRedditYear(years.getYear(i)).add(years.getCount(i));
+		}
+	}
+
+	/** Adds all runs of the other statistics to this one. */
+	public void merge(TermStatistics other) {
+		for (int i = 0; i < statistics.length; i++) {
+			statistics[i].merge(other.statistics[i]);
+		}
+		for (Map.Entry<Integer, RunningStatistics> e : other.redditYears.entrySet()) {
+			getRedditYear(e.getKey()).merge(e.getValue());
+		}
+	}
+
+	public RunningStatistics get(ResultPart part) {
+		return statistics[part.ordinal()];
+	}
+
+	/** @return the number of runs with a search result. */
+	public long getCount(ResultPart part) {
+		return get(part).getCount();
+	}
+
+	/** @return the average search result or -1 if there is none. */
+	public double getAverage(ResultPart part) {
+		return get(part).getAverage();
+	}
+
+	/**
+	 * @return the (bias corrected) standard deviation of the search results after
+	 *         normalizing them to a sum of 1, or 0 if the sum is not greater than
+	 *         1.
+	 */
+	public double getNormalizedStandardDeviation(ResultPart part) {
+		return get(part).getNormalizedStandardDeviation();
+	}
+
+	/**
+	 * @return the statistics of the Reddit comments per year of creation over all
+	 *         runs, sorted by year.
+	 */
+	public Map<Integer, RunningStatistics> getRedditYears() {
+		return Collections.unmodifiableMap(redditYears);
+	}
+
+	/** @return the statistics of the Reddit comments of the year. */
+	RunningStatistics getRedditYear(int year) {
+		return redditYears.computeIfAbsent(year, y -> new RunningStatistics());
+	}
+
+	private void add(ResultPart part, long value) {
+		if (value != -1) {
+			statistics[part.ordinal()].add(value);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package me.steffenjacobs.webanalyticsretriever.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.steffenjacobs.webanalyticsretriever.AsyncSearchService;
+import me.steffenjacobs.webanalyticsretriever.SearchCount;
+import me.steffenjacobs.webanalyticsretriever.SearchService;
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+
+/**
+ * Answers searches from the {@link PersistentResultCache} as long as the cached
+ * count has not expired and delegates all other searches to the wrapped
+ * {@link SearchService}. Failed searches are not cached. Only the counts are
+ * cached, not the number of results per year. Cached counts are
+ * {@link SearchCount#isCached() marked}, so that they are not stored as new
+ * observations.
+ * 
+ * @author Steffen Jacobs
+ */
+public class CachingSearchService implements AsyncSearchService {
+
+	private final SearchService delegate;
+	private final SearchSource source;
+	private final PersistentResultCache cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public CachingSearchService(SearchService delegate, SearchSource source, PersistentResultCache cache) {
+		this.delegate = delegate;
+		this.source = source;
+		this.cache = cache;
+	}
+
+	@Override
+	public CompletableFuture<SearchCount> searchAsync(String term, Executor executor) {
+		final PersistentResultCache.CachedCount cached = cache.get(source, term);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return CompletableFuture.completedFuture(SearchCount.cached(cached.getCount()));
+		}
+		misses.incrementAndGet();
+		return retrieve(term, executor);
+	}
+
+	/**
+	 * @return a view of this service that always retrieves the count again and
+	 *         replaces the cached count, e.g. for requests that must not be
+	 *         answered from the cache.
+	 */
+	public AsyncSearchService refreshing() {
+		return new AsyncSearchService() {
+			@Override
+			public CompletableFuture<SearchCount> searchAsync(String term, Executor executor) {
+				return retrieve(term, executor);
+			}
+
+			@Override
+			public void dispose() {
+				CachingSearchService.this.dispose();
+			}
+		};
+	}
+
+	private CompletableFuture<SearchCount> retrieve(String term, Executor executor) {
+		return AsyncSearchService.searchAsync(delegate, term, executor).thenApply(count -> {
+			if (count.getCount() != -1) {
+				cache.put(source, term, count.getCount());
+			}
+			return count;
+		});
+	}
+
+	@Override
+	public void dispose() {
+		delegate.dispose();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+}
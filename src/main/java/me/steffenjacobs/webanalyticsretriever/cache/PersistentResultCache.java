@@ -0,0 +1,182 @@
+package me.steffenjacobs.webanalyticsretriever.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+
+/**
+ * Disk-backed cache of search result counts keyed by {@link SearchSource} and
+ * query. Entries expire after a time-to-live configured per source. The cache
+ * holds at most a fixed number of entries and evicts the least recently used
+ * ones. It is persisted as an append-only log, which is replayed on startup and
+ * compacted once it contains too many outdated records.
+ * 
+ * @author Steffen Jacobs
+ */
+public class PersistentResultCache implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(PersistentResultCache.class);
+
+	private final File file;
+	private final int maxEntries;
+	private final Map<SearchSource, Long> ttlMillis;
+	private final LinkedHashMap<String, CachedCount> entries;
+	private Writer writer;
+	private int records;
+
+	/**
+	 * @param file
+	 *            the log file the cache is persisted to.
+	 * @param maxEntries
+	 *            the maximum number of cached entries.
+	 * @param ttlMillis
+	 *            the time-to-live for each {@link SearchSource} in milliseconds.
+	 */
+	public PersistentResultCache(File file, int maxEntries, Map<SearchSource, Long> ttlMillis) throws IOException {
+		this.file = file;
+		this.maxEntries = maxEntries;
+		this.ttlMillis = new EnumMap<>(ttlMillis);
+		this.entries = new LinkedHashMap<String, CachedCount>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+				return size() > PersistentResultCache.this.maxEntries;
+			}
+		};
+		load();
+		writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @return the cached count for the {@link String query} to the
+	 *         {@link SearchSource source} if it has not expired yet, else null.
+	 */
+	public synchronized CachedCount get(SearchSource source, String query) {
+		final CachedCount cached = entries.get(key(source, query));
+		return cached != null && isFresh(source, cached) ? cached : null;
+	}
+
+	/** @return true, if there is a cached count that has not expired yet. */
+	public boolean isFresh(SearchSource source, String query) {
+		return get(source, query) != null;
+	}
+
+	/** Caches and persists the count for the {@link String query}. */
+	public synchronized void put(SearchSource source, String query, long count) {
+		final CachedCount cached = new CachedCount(count, System.currentTimeMillis());
+		entries.put(key(source, query), cached);
+		try {
+			append(writer, source.getKey(), query, cached);
+			writer.flush();
+			if (++records > 2 * maxEntries) {
+				compact();
+			}
+		} catch (IOException e) {
+			LOG.error("Could not persist cache entry: {}", e.getMessage(), e);
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** Compacts the log file and closes it. */
+	@Override
+	public synchronized void close() throws IOException {
+		compact();
+		writer.close();
+	}
+
+	private boolean isFresh(SearchSource source, CachedCount cached) {
+		return System.currentTimeMillis() - cached.getTimestamp() < ttlMillis.getOrDefault(source, TimeUnit.DAYS.toMillis(1));
+	}
+
+	/** Replays the log file, later records override earlier ones. */
+	private void load() throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// format: source, count, timestamp, query
+				final String[] split = line.split("\t", 4);
+				if (split.length != 4) {
+					// the last line may be incomplete after a crash
+					continue;
+				}
+				try {
+					entries.put(split[0] + "\t" + split[3], new CachedCount(Long.parseLong(split[1]), Long.parseLong(split[2])));
+					records++;
+				} catch (NumberFormatException e) {
+					LOG.warn("Skipping invalid cache entry: {}", line);
+				}
+			}
+		}
+		LOG.info("Loaded {} cached search results from {}.", entries.size(), file);
+	}
+
+	/** Rewrites the log file with the current entries only. */
+	private void compact() throws IOException {
+		writer.close();
+		final File tmp = new File(file.getPath() + ".tmp");
+		try (Writer out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, CachedCount> e : entries.entrySet()) {
+				final int separator = e.getKey().indexOf('\t');
+				append(out, e.getKey().substring(0, separator), e.getKey().substring(separator + 1), e.getValue());
+			}
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		records = entries.size();
+		writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	private static void append(Writer out, String source, String query, CachedCount cached) throws IOException {
+		out.write(source);
+		out.write('\t');
+		out.write(Long.toString(cached.getCount()));
+		out.write('\t');
+		out.write(Long.toString(cached.getTimestamp()));
+		out.write('\t');
+		out.write(query);
+		out.write('\n');
+	}
+
+	private static String key(SearchSource source, String query) {
+		return source.getKey() + "\t" + query;
+	}
+
+	/** A cached search result count and the time it has been retrieved. */
+	public static class CachedCount {
+		private final long count;
+		private final long timestamp;
+
+		public CachedCount(long count, long timestamp) {
+			this.count = count;
+			this.timestamp = timestamp;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+	}
+}
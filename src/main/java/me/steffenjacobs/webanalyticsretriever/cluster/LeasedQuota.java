@@ -0,0 +1,66 @@
+package me.steffenjacobs.webanalyticsretriever.cluster;
+
+import me.steffenjacobs.webanalyticsretriever.ratelimit.RequestQuota;
+
+/**
+ * The share of a daily request limit granted to a {@link ShardWorker} by its
+ * {@link ShardCoordinator}. The coordinator grants requests with each lease
+ * and counts them against its own
+ * {@link me.steffenjacobs.webanalyticsretriever.ratelimit.DailyQuota
+ * DailyQuota}, so that the workers together never exceed the limit of the API
+ * key they share. If the search engine reports the quota as exhausted, the
+ * coordinator is told to stop granting requests for today.
+ *
+ * @author Steffen Jacobs
+ */
+public class LeasedQuota implements RequestQuota {
+
+	private int remaining;
+	private boolean exhausted;
+	private volatile Runnable exhaustListener = () -> {
+	};
+
+	@Override
+	public synchronized boolean tryAcquire() {
+		if (remaining <= 0) {
+			return false;
+		}
+		remaining--;
+		return true;
+	}
+
+	/**
+	 * Keeps the returned request for the next search of this worker instead of
+	 * handing it back to the coordinator.
+	 */
+	@Override
+	public synchronized void release() {
+		if (!exhausted) {
+			remaining++;
+		}
+	}
+
+	@Override
+	public void exhaust() {
+		synchronized (this) {
+			remaining = 0;
+			exhausted = true;
+		}
+		exhaustListener.run();
+	}
+
+	@Override
+	public synchronized int getRemaining() {
+		return remaining;
+	}
+
+	/** Adds the requests granted with a lease. */
+	synchronized void grant(int requests) {
+		remaining += requests;
+	}
+
+	/** Sets the listener called when the search engine reports the quota as exhausted. */
+	void setExhaustListener(Runnable exhaustListener) {
+		this.exhaustListener = exhaustListener;
+	}
+}
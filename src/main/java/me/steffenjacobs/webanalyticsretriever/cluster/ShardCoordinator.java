@@ -0,0 +1,412 @@
+package me.steffenjacobs.webanalyticsretriever.cluster;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.DailyQuota;
+
+/**
+ * Distributes the terms of a run among {@link ShardWorker workers} connected
+ * over TCP. The terms are leased in batches: a worker requests a lease, retrieves
+ * the results of its terms with its own search services and streams them back.
+ * Every message of a worker renews its leases. A lease that has not been renewed
+ * in time or whose worker disconnected is handed out again with the terms not
+ * retrieved yet, so that a crashed or stuck worker delays the run but does not
+ * lose terms. Each term is delivered to the consumer exactly once, even if a
+ * worker whose lease expired sends its results late.
+ * <p>
+ * The coordinator owns the {@link DailyQuota} of the Google Search API and
+ * grants one request per leased term, so that the workers sharing the API key
+ * never exceed its daily limit together. Requests granted to a worker that
+ * crashes are lost for the day.
+ *
+ * @author Steffen Jacobs
+ */
+public class ShardCoordinator implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(ShardCoordinator.class);
+
+	private static final long WAIT_MILLIS = 500;
+	private static final long QUIT_TIMEOUT_SECONDS = 5;
+
+	private final List<String> terms;
+	private final Predicate<String> skipped;
+	private final int batchSize;
+	private final long leaseMillis;
+	private final DailyQuota quota;
+	private final BitSet delivered;
+	private final Deque<int[]> requeued = new ArrayDeque<>();
+	private final Map<Integer, Lease> leases = new HashMap<>();
+	private final Map<Integer, Lease> leaseByPosition = new HashMap<>();
+	private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "lease-expiry");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private ServerSocket serverSocket;
+	private Consumer<SearchResults> consumer;
+	private int nextPosition;
+	private int nextLeaseId;
+	private int leasedTerms;
+
+	/**
+	 * @param terms
+	 *            the terms of the run.
+	 * @param skipped
+	 *            true for the terms that do not need to be retrieved, e.g.
+	 *            because they have been retrieved by a previous run.
+	 * @param batchSize
+	 *            the maximum number of terms per lease.
+	 * @param leaseMillis
+	 *            the time after which a lease expires unless its worker renews
+	 *            it.
+	 * @param quota
+	 *            the daily quota of the Google Search API shared by the workers.
+	 */
+	public ShardCoordinator(List<String> terms, Predicate<String> skipped, int batchSize, long leaseMillis, DailyQuota quota) {
+		this.terms = terms;
+		this.skipped = skipped;
+		this.batchSize = batchSize;
+		this.leaseMillis = leaseMillis;
+		this.quota = quota;
+		this.delivered = new BitSet(terms.size());
+	}
+
+	/**
+	 * Accepts workers on the given address and blocks until the results of all
+	 * terms have been delivered to the consumer.
+	 *
+	 * @return true, if the results of all terms have been retrieved.
+	 */
+	public boolean run(InetSocketAddress address, Consumer<SearchResults> consumer) throws IOException, InterruptedException {
+		this.consumer = consumer;
+		serverSocket = new ServerSocket();
+		serverSocket.bind(address);
+		LOG.info("Waiting for workers on {} to retrieve {} terms in leases of {} terms.", serverSocket.getLocalSocketAddress(), terms.size(), batchSize);
+
+		final Thread acceptor = new Thread(this::accept, "shard-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		expiry.scheduleWithFixedDelay(this::expireLeases, leaseMillis / 4, leaseMillis / 4, TimeUnit.MILLISECONDS);
+
+		synchronized (this) {
+			while (!isFinished()) {
+				wait();
+			}
+		}
+		LOG.info("Retrieved all terms.");
+		return true;
+	}
+
+	/** @return the number of connected workers. */
+	public int getWorkers() {
+		return connections.size();
+	}
+
+	/** @return the number of terms leased to the workers. */
+	public synchronized int getLeasedTerms() {
+		return leasedTerms;
+	}
+
+	/**
+	 * Stops accepting new workers and tells the connected ones to quit. Workers
+	 * that did not disconnect after a few seconds are disconnected.
+	 */
+	@Override
+	public void close() throws IOException {
+		expiry.shutdownNow();
+		if (serverSocket != null) {
+			serverSocket.close();
+		}
+		for (Connection connection : connections) {
+			connection.quit();
+		}
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(QUIT_TIMEOUT_SECONDS);
+		try {
+			while (!connections.isEmpty() && System.nanoTime() - deadline < 0) {
+				Thread.sleep(50);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Connection connection = new Connection(serverSocket.accept());
+				connections.add(connection);
+				final Thread thread = new Thread(connection::run, "shard-" + connection.name);
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					LOG.error("Could not accept worker: {}", e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	/** @return true, if no term is left to lease and no lease is pending. */
+	private boolean isFinished() {
+		return nextPosition >= terms.size() && requeued.isEmpty() && leases.isEmpty();
+	}
+
+	/**
+	 * @return the next lease for the given worker or null, if all remaining terms
+	 *         are leased.
+	 */
+	private synchronized Lease lease(Connection worker) {
+		int[] positions;
+		// a worker whose lease expired may have delivered requeued terms meanwhile
+		while ((positions = requeued.poll()) != null) {
+			positions = Arrays.stream(positions).filter(position -> !delivered.get(position)).toArray();
+			if (positions.length > 0) {
+				break;
+			}
+		}
+		if (positions == null) {
+			final int[] batch = new int[batchSize];
+			int size = 0;
+			while (size < batchSize && nextPosition < terms.size()) {
+				final int position = nextPosition++;
+				if (!skipped.test(terms.get(position))) {
+					batch[size++] = position;
+				}
+			}
+			if (size == 0) {
+				// all remaining terms have been skipped
+				notifyAll();
+				return null;
+			}
+			positions = size < batchSize ? Arrays.copyOf(batch, size) : batch;
+		}
+		final Lease lease = new Lease(nextLeaseId++, worker, positions, quota.grant(positions.length));
+		lease.renew();
+		leases.put(lease.id, lease);
+		for (int position : positions) {
+			leaseByPosition.put(position, lease);
+		}
+		leasedTerms += positions.length;
+		return lease;
+	}
+
+	/** Delivers the results of a leased term, unless they have been delivered before. */
+	private synchronized void deliver(int position, SearchResults results) {
+		if (position < 0 || position >= terms.size() || delivered.get(position)) {
+			return;
+		}
+		delivered.set(position);
+		consumer.accept(results);
+
+		final Lease lease = leaseByPosition.remove(position);
+		if (lease != null) {
+			leasedTerms--;
+			if (--lease.remaining == 0) {
+				leases.remove(lease.id);
+				if (isFinished()) {
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/** Renews all leases of the given worker. */
+	private synchronized void renew(Connection worker) {
+		for (Lease lease : leases.values()) {
+			if (lease.worker == worker) {
+				lease.renew();
+			}
+		}
+	}
+
+	/** Hands out the terms of the leases of the given worker again. */
+	private synchronized void release(Connection worker) {
+		for (Iterator<Lease> it = leases.values().iterator(); it.hasNext();) {
+			final Lease lease = it.next();
+			if (lease.worker == worker) {
+				it.remove();
+				requeue(lease);
+			}
+		}
+	}
+
+	private synchronized void expireLeases() {
+		final long now = System.nanoTime();
+		for (Iterator<Lease> it = leases.values().iterator(); it.hasNext();) {
+			final Lease lease = it.next();
+			if (now - lease.expiresAt > 0) {
+				LOG.warn("Lease {} of worker {} expired.", lease.id, lease.worker.name);
+				it.remove();
+				requeue(lease);
+			}
+		}
+	}
+
+	private void requeue(Lease lease) {
+		final int[] positions = new int[lease.remaining];
+		int size = 0;
+		for (int position : lease.positions) {
+			if (!delivered.get(position)) {
+				positions[size++] = position;
+				leaseByPosition.remove(position);
+			}
+		}
+		leasedTerms -= size;
+		if (size > 0) {
+			requeued.add(positions);
+			LOG.info("Requeued {} terms of lease {}.", size, lease.id);
+		}
+	}
+
+	/** A batch of terms retrieved by a single worker. */
+	private class Lease {
+		private final int id;
+		private final Connection worker;
+		private final int[] positions;
+		private final int quota;
+		private int remaining;
+		private long expiresAt;
+
+		Lease(int id, Connection worker, int[] positions, int quota) {
+			this.id = id;
+			this.worker = worker;
+			this.positions = positions;
+			this.quota = quota;
+			this.remaining = positions.length;
+		}
+
+		void renew() {
+			expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+		}
+	}
+
+	/** Answers the messages of a single worker. */
+	private class Connection {
+		private final Socket socket;
+		private final String name;
+		private final BufferedReader reader;
+		private final Writer writer;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.name = socket.getRemoteSocketAddress().toString();
+			socket.setTcpNoDelay(true);
+			reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+		}
+
+		void run() {
+			LOG.info("Worker {} connected.", name);
+			try {
+				String[] message;
+				while ((message = ShardProtocol.read(reader, ShardProtocol.RESULT_FIELDS)) != null) {
+					renew(this);
+					switch (message[0]) {
+					case ShardProtocol.LEASE:
+						sendLease();
+						break;
+					case ShardProtocol.RESULT:
+						final int position = Integer.parseInt(message[1]);
+						deliver(position, ShardProtocol.decodeResult(message, terms.get(position)));
+						break;
+					case ShardProtocol.HEARTBEAT:
+						break;
+					case ShardProtocol.EXHAUSTED:
+						LOG.warn("Worker {} reported the Google Search API quota as exhausted.", name);
+						quota.exhaust();
+						break;
+					default:
+						throw new IOException("Unknown message: " + String.join("\t", message));
+					}
+				}
+				LOG.info("Worker {} disconnected.", name);
+			} catch (SocketException e) {
+				LOG.info("Worker {} disconnected: {}", name, e.getMessage());
+			} catch (IOException | RuntimeException e) {
+				LOG.error("Disconnecting worker {}: {}", name, e.getMessage(), e);
+			} finally {
+				connections.remove(this);
+				release(this);
+				close();
+			}
+		}
+
+		private void sendLease() throws IOException {
+			final Lease lease = lease(this);
+			if (lease == null) {
+				final boolean finished;
+				synchronized (ShardCoordinator.this) {
+					finished = isFinished();
+				}
+				synchronized (writer) {
+					ShardProtocol.write(writer, finished ? new String[] { ShardProtocol.QUIT } : new String[] { ShardProtocol.WAIT, Long.toString(WAIT_MILLIS) });
+				}
+				return;
+			}
+			final List<String> lines = new ArrayList<>(lease.positions.length + 1);
+			lines.add(String.join("\t", ShardProtocol.BATCH, Integer.toString(lease.id), Integer.toString(lease.positions.length), Integer.toString(lease.quota)));
+			for (int position : lease.positions) {
+				lines.add(String.join("\t", ShardProtocol.TERM, Integer.toString(position), terms.get(position)));
+			}
+			synchronized (writer) {
+				writer.write(String.join("\n", lines));
+				writer.write('\n');
+				writer.flush();
+			}
+			LOG.debug("Leased {} terms to worker {} with lease {}.", lease.positions.length, name, lease.id);
+		}
+
+		/** Tells the worker to quit once it requests the next lease. */
+		void quit() {
+			try {
+				synchronized (writer) {
+					ShardProtocol.write(writer, ShardProtocol.QUIT);
+				}
+			} catch (IOException e) {
+				LOG.debug("Could not send quit to worker {}: {}", name, e.getMessage());
+			}
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				LOG.debug("Could not close connection to worker {}: {}", name, e.getMessage());
+			}
+		}
+	}
+}
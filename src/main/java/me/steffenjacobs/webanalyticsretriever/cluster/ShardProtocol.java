@@ -0,0 +1,101 @@
+package me.steffenjacobs.webanalyticsretriever.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * The line based messages exchanged between the {@link ShardCoordinator} and
+ * its {@link ShardWorker workers}. Each message is a single line of fields
+ * separated by tabs, starting with its type. A term is always the last field,
+ * so it may contain tabs itself.
+ * <ul>
+ * <li>worker: "L" requests the next lease</li>
+ * <li>coordinator: "B &lt;lease&gt; &lt;n&gt; &lt;quota&gt;" leases a batch of n
+ * terms together with the given number of Google Search API requests, followed
+ * by n lines "T &lt;position&gt; &lt;term&gt;"</li>
+ * <li>coordinator: "W &lt;millis&gt;" asks to request a lease again after the
+ * given time, because all remaining terms are leased to other workers</li>
+ * <li>coordinator: "Q" all terms have been retrieved</li>
+ * <li>worker: "H" keeps the leases of the worker alive</li>
+ * <li>worker: "X" the Google Search API reported its daily quota as
+ * exhausted</li>
+ * <li>worker: "R &lt;position&gt; &lt;reddit&gt; &lt;google-api&gt;
+ * &lt;google-web&gt; &lt;google-web-exact&gt; &lt;cached&gt;
+ * &lt;reddit-years&gt;" the results of a leased term, the keys of the parts
+ * answered from the cache separated by ";" and the years are "-" if not
+ * available</li>
+ * </ul>
+ *
+ * @author Steffen Jacobs
+ */
+final class ShardProtocol {
+
+	static final String LEASE = "L";
+	static final String BATCH = "B";
+	static final String TERM = "T";
+	static final String WAIT = "W";
+	static final String QUIT = "Q";
+	static final String HEARTBEAT = "H";
+	static final String EXHAUSTED = "X";
+	static final String RESULT = "R";
+
+	/** The number of fields of a result message. */
+	static final int RESULT_FIELDS = 8;
+
+	private static final String NONE = "-";
+
+	private ShardProtocol() {
+	}
+
+	/** Writes a single message and flushes it. */
+	static void write(Writer writer, String... fields) throws IOException {
+		writer.write(String.join("\t", fields));
+		writer.write('\n');
+		writer.flush();
+	}
+
+	/**
+	 * @param fields
+	 *            the number of fields, the last one may contain tabs.
+	 * @return the fields of the next message or null, if the connection has been
+	 *         closed.
+	 */
+	static String[] read(BufferedReader reader, int fields) throws IOException {
+		final String line = reader.readLine();
+		return line == null ? null : line.split("\t", fields);
+	}
+
+	static String[] encodeResult(int position, SearchResults v) {
+		return new String[] { RESULT, Integer.toString(position), Long.toString(v.getRedditSearchResultCount()), Long.toString(v.getGoogleSearchResultCount()),
+				Long.toString(v.getGoogleBrowserSearchResultCount()), Long.toString(v.getGoogleBrowserExactSearchResultCount()),
+				v.getCachedParts().isEmpty() ? NONE : v.getCachedParts().stream().map(ResultPart::getKey).collect(Collectors.joining(";")),
+				v.getRedditYears() != null ? v.getRedditYears().encode() : NONE };
+	}
+
+	/** @return the results of the term encoded in the fields of a result message. */
+	static SearchResults decodeResult(String[] fields, String term) {
+		if (fields.length != RESULT_FIELDS) {
+			throw new IllegalArgumentException("Invalid result message: " + String.join("\t", fields));
+		}
+		final Set<ResultPart> cached = EnumSet.noneOf(ResultPart.class);
+		if (!NONE.equals(fields[6])) {
+			for (String key : fields[6].split(";")) {
+				final ResultPart part = ResultPart.forKey(key);
+				if (part == null) {
+					throw new IllegalArgumentException("Invalid result message: " + String.join("\t", fields));
+				}
+				cached.add(part);
+			}
+		}
+		return new SearchResults(term, Long.parseLong(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]),
+				NONE.equals(fields[7]) ? null : YearHistogram.parse(fields[7]), cached);
+	}
+}
@@ -0,0 +1,206 @@
+package me.steffenjacobs.webanalyticsretriever.cluster;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+
+/**
+ * Retrieves the terms leased by a {@link ShardCoordinator} with the search
+ * services of an {@link WebAnalyticsRetriever#init initialized} retriever and
+ * streams the results back. All leases are retrieved in a single pipeline: the
+ * next lease is requested as soon as all terms of the current one have been
+ * submitted, so that the search engines stay busy between leases. The leases
+ * are kept alive with heartbeats while the worker is running. The Google Search
+ * API requests granted with the leases are added to the {@link LeasedQuota} of
+ * the retriever.
+ *
+ * @author Steffen Jacobs
+ */
+public class ShardWorker {
+	private static final Logger LOG = LoggerFactory.getLogger(ShardWorker.class);
+
+	private final WebAnalyticsRetriever retriever;
+	private final InetSocketAddress coordinator;
+	private final long heartbeatMillis;
+	private final long connectTimeoutMillis;
+	private final LeasedQuota quota;
+	private final Map<String, Deque<Integer>> positions = new HashMap<>();
+	private BufferedReader reader;
+	private Writer writer;
+	private volatile boolean failed;
+	private volatile boolean finished;
+
+	/**
+	 * @param heartbeatMillis
+	 *            the interval of the heartbeats, has to be shorter than the
+	 *            lease time of the coordinator.
+	 * @param connectTimeoutMillis
+	 *            the time to wait for the coordinator to accept connections.
+	 * @param quota
+	 *            the quota of the Google Search API used by the retriever.
+	 */
+	public ShardWorker(WebAnalyticsRetriever retriever, InetSocketAddress coordinator, long heartbeatMillis, long connectTimeoutMillis, LeasedQuota quota) {
+		this.retriever = retriever;
+		this.coordinator = coordinator;
+		this.heartbeatMillis = heartbeatMillis;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.quota = quota;
+	}
+
+	/**
+	 * Retrieves leases until the coordinator signals that all terms have been
+	 * retrieved or closes the connection.
+	 *
+	 * @return true, if the results of all leased terms have been sent to the
+	 *         coordinator.
+	 */
+	public boolean run() throws IOException, InterruptedException {
+		final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+		try (Socket socket = connect()) {
+			socket.setTcpNoDelay(true);
+			reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			LOG.info("Connected to coordinator {}.", coordinator);
+
+			quota.setExhaustListener(() -> send(ShardProtocol.EXHAUSTED));
+			heartbeat.scheduleAtFixedRate(() -> send(ShardProtocol.HEARTBEAT), heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+			final boolean completed = retriever.retrieve(new LeasedTerms(), this::send);
+			return completed && !failed;
+		} finally {
+			heartbeat.shutdownNow();
+		}
+	}
+
+	private Socket connect() throws IOException, InterruptedException {
+		final long deadline = System.currentTimeMillis() + connectTimeoutMillis;
+		while (true) {
+			try {
+				return new Socket(coordinator.getAddress(), coordinator.getPort());
+			} catch (ConnectException e) {
+				if (System.currentTimeMillis() > deadline) {
+					throw e;
+				}
+				LOG.info("Waiting for coordinator {}...", coordinator);
+				Thread.sleep(1000);
+			}
+		}
+	}
+
+	/** Sends the results of a leased term to the coordinator. */
+	private void send(SearchResults v) {
+		final Integer position;
+		synchronized (positions) {
+			final Deque<Integer> termPositions = positions.get(v.getTerm());
+			position = termPositions.poll();
+			if (termPositions.isEmpty()) {
+				positions.remove(v.getTerm());
+			}
+		}
+		send(ShardProtocol.encodeResult(position, v));
+	}
+
+	private void send(String... fields) {
+		try {
+			synchronized (writer) {
+				ShardProtocol.write(writer, fields);
+			}
+		} catch (IOException e) {
+			// after all terms have been retrieved, the coordinator may exit before the
+			// last heartbeat. Before that, it hands out the terms of this worker again.
+			if (!finished && !failed) {
+				LOG.error("Lost connection to coordinator {}: {}", coordinator, e.getMessage());
+				failed = true;
+			}
+		}
+	}
+
+	/**
+	 * The terms of all leases, requested from the coordinator while they are
+	 * iterated. The number of terms this worker retrieves is not known in
+	 * advance, so they are no collection.
+	 */
+	private class LeasedTerms implements Iterable<String> {
+		private final Deque<String> batch = new ArrayDeque<>();
+		private boolean done;
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+				@Override
+				public boolean hasNext() {
+					while (batch.isEmpty() && !done) {
+						try {
+							requestLease();
+						} catch (IOException | RuntimeException e) {
+							LOG.error("Could not request a lease from coordinator {}: {}", coordinator, e.getMessage());
+							failed = true;
+							done = true;
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							done = true;
+						}
+					}
+					return !batch.isEmpty();
+				}
+
+				@Override
+				public String next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return batch.poll();
+				}
+			};
+		}
+
+		private void requestLease() throws IOException, InterruptedException {
+			send(ShardProtocol.LEASE);
+			final String[] message = ShardProtocol.read(reader, 4);
+			if (message == null || ShardProtocol.QUIT.equals(message[0])) {
+				LOG.info("All terms have been retrieved.");
+				finished = true;
+				done = true;
+			} else if (ShardProtocol.WAIT.equals(message[0])) {
+				Thread.sleep(Long.parseLong(message[1]));
+			} else if (ShardProtocol.BATCH.equals(message[0])) {
+				final int count = Integer.parseInt(message[2]);
+				for (int i = 0; i < count; i++) {
+					final String[] term = ShardProtocol.read(reader, 3);
+					if (term == null || !ShardProtocol.TERM.equals(term[0])) {
+						throw new IOException("Incomplete lease " + message[1]);
+					}
+					synchronized (positions) {
+						positions.computeIfAbsent(term[2], t -> new ArrayDeque<>()).add(Integer.parseInt(term[1]));
+					}
+					batch.add(term[2]);
+				}
+				quota.grant(Integer.parseInt(message[3]));
+				LOG.info("Got lease {} with {} terms and {} Google Search API requests.", message[1], count, message[3]);
+			} else {
+				throw new IOException("Unknown message: " + String.join("\t", message));
+			}
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package me.steffenjacobs.webanalyticsretriever.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.pipeline.PipelinedTermScheduler;
+import me.steffenjacobs.webanalyticsretriever.sink.JsonLinesResultSink;
+
+/**
+ * Keeps an {@link WebAnalyticsRetriever#init initialized} retriever with its
+ * HTTP connections, chrome sessions and rate limits alive between collections.
+ * The terms file is {@link WebAnalyticsRetriever#collect collected} at a fixed
+ * interval, one collection at a time. A local HTTP API answers requests for the
+ * results of single terms from a {@link TermResultCache} or retrieves them on
+ * demand while a collection may be running:
+ * <ul>
+ * <li>GET /count?term=&lt;term&gt;[&amp;refresh=true]: the results of the term
+ * as JSON object, retrieved again from the search engines if refresh is true,
+ * bypassing both caches</li>
+ * <li>POST /collect: starts a collection unless one is running</li>
+ * <li>GET /status: the state of the collections and the cache as JSON
+ * object</li>
+ * </ul>
+ *
+ * @author Steffen Jacobs
+ */
+public class RetrieverDaemon implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(RetrieverDaemon.class);
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	private static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
+
+	private final WebAnalyticsRetriever retriever;
+	private final File termsFile;
+	private final TermResultCache cache;
+	private final long lookupTimeoutMillis;
+	private final PipelinedTermScheduler lookups;
+	private final PipelinedTermScheduler refreshes;
+	private final Map<String, CompletableFuture<SearchResults>> pendingLookups = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<SearchResults>> pendingRefreshes = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService collector = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "collector"));
+	private final ExecutorService httpExecutor;
+	private final HttpServer server;
+	private final AtomicBoolean collecting = new AtomicBoolean();
+	private volatile ScheduledFuture<?> scheduledCollection;
+	private volatile long lastCollectionStart = -1;
+	private volatile long lastCollectionEnd = -1;
+	private volatile boolean lastCollectionCompleted;
+
+	/**
+	 * Starts the HTTP API and schedules the collections.
+	 *
+	 * @param retriever
+	 *            the initialized retriever, closed by the caller after the
+	 *            daemon.
+	 * @param termsFile
+	 *            the file with the platform names to collect, read again for
+	 *            every collection.
+	 * @param cache
+	 *            the cache for the results of the collections and of the
+	 *            on-demand requests.
+	 * @param httpPort
+	 *            the port of the HTTP API on the loopback interface, 0 for any
+	 *            free port.
+	 * @param httpThreads
+	 *            the number of on-demand requests answered at the same time.
+	 * @param collectionIntervalMillis
+	 *            the time between the start of a collection and the start of the
+	 *            next one or -1 to collect on request only.
+	 * @param collectOnStart
+	 *            true to start the first collection right away, else after the
+	 *            interval.
+	 * @param lookupTimeoutMillis
+	 *            the maximum time to wait for the results of an on-demand
+	 *            request.
+	 */
+	public RetrieverDaemon(WebAnalyticsRetriever retriever, File termsFile, TermResultCache cache, int httpPort, int httpThreads, long collectionIntervalMillis,
+			boolean collectOnStart, long lookupTimeoutMillis) throws IOException {
+		this.retriever = retriever;
+		this.termsFile = termsFile;
+		this.cache = cache;
+		this.lookupTimeoutMillis = lookupTimeoutMillis;
+		lookups = retriever.createScheduler(results -> onLookupCompleted(results, pendingLookups), false);
+		refreshes = retriever.createScheduler(results -> onLookupCompleted(results, pendingRefreshes), true);
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+		httpExecutor = Executors.newFixedThreadPool(httpThreads);
+		server.setExecutor(httpExecutor);
+		server.createContext("/count", exchange -> handle(exchange, "GET", this::handleCount));
+		server.createContext("/collect", exchange -> handle(exchange, "POST", this::handleCollect));
+		server.createContext("/status", exchange -> handle(exchange, "GET", this::handleStatus));
+		server.start();
+		LOG.info("Serving search result counts at http://{}:{}/count?term=...", server.getAddress().getHostString(), server.getAddress().getPort());
+
+		if (collectionIntervalMillis > 0) {
+			scheduledCollection = collector.scheduleAtFixedRate(this::collect, collectOnStart ? 0 : collectionIntervalMillis, collectionIntervalMillis,
+					TimeUnit.MILLISECONDS);
+			LOG.info("Collecting {} every {} minutes.", termsFile, TimeUnit.MILLISECONDS.toMinutes(collectionIntervalMillis));
+		} else if (collectOnStart) {
+			collector.execute(this::collect);
+		}
+	}
+
+	/** @return the port of the HTTP API. */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the HTTP API and interrupts a running collection. The next
+	 * collection with the same terms only continues it with
+	 * "checkpoint.enabled=true", otherwise it starts over.
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		httpExecutor.shutdownNow();
+		collector.shutdownNow();
+		try {
+			if (!collector.awaitTermination(30, TimeUnit.SECONDS)) {
+				LOG.warn("The collection did not stop in time.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		lookups.close();
+		refreshes.close();
+	}
+
+	private void collect() {
+		if (!collecting.compareAndSet(false, true)) {
+			return;
+		}
+		lastCollectionStart = System.currentTimeMillis();
+		try {
+			lastCollectionCompleted = retriever.collect(termsFile, cache::put);
+			LOG.info("Collection {} after {} s.", lastCollectionCompleted ? "completed" : "interrupted",
+					(System.currentTimeMillis() - lastCollectionStart) / 1000);
+		} catch (IOException | RuntimeException e) {
+			// the next scheduled collection continues where this one stopped
+			LOG.error("Collection failed: {}", e.getMessage(), e);
+			lastCollectionCompleted = false;
+		} finally {
+			lastCollectionEnd = System.currentTimeMillis();
+			collecting.set(false);
+		}
+	}
+
+	/**
+	 * @param refresh
+	 *            true to retrieve the term again instead of answering it from
+	 *            the cache of the search services.
+	 * @param knownParts
+	 *            the counts that are still cached and not retrieved again.
+	 * @return the results of the term, retrieved with the search services of the
+	 *         daemon. Concurrent requests for the same term wait for the same
+	 *         retrieval.
+	 */
+	private SearchResults lookup(String term, boolean refresh, Map<ResultPart, Long> knownParts) throws InterruptedException, TimeoutException {
+		final Map<String, CompletableFuture<SearchResults>> pendingTerms = refresh ? pendingRefreshes : pendingLookups;
+		final CompletableFuture<SearchResults> future = new CompletableFuture<>();
+		CompletableFuture<SearchResults> pending = pendingTerms.putIfAbsent(term, future);
+		if (pending == null) {
+			pending = future;
+			try {
+				(refresh ? refreshes : lookups).submit(term, knownParts);
+			} catch (InterruptedException e) {
+				pendingTerms.remove(term, future);
+				throw e;
+			}
+		}
+		try {
+			return pending.get(lookupTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private void onLookupCompleted(SearchResults results, Map<String, CompletableFuture<SearchResults>> pendingTerms) {
+		final SearchResults cached = cache.put(results);
+		final CompletableFuture<SearchResults> future = pendingTerms.remove(results.getTerm());
+		if (future != null) {
+			future.complete(cached);
+		}
+	}
+
+	private void handleCount(HttpExchange exchange) throws IOException {
+		final String term = getParameter(exchange, "term");
+		if (term == null || term.trim().isEmpty()) {
+			sendError(exchange, 400, "Missing parameter: term");
+			return;
+		}
+		final boolean refresh = "true".equals(getParameter(exchange, "refresh"));
+		final TermResultCache.CachedResults entry = refresh ? null : cache.get(term.trim());
+		// only the failed searches of cached results are retrieved again
+		final TermResultCache.CachedResults cached = entry != null && entry.isComplete() ? entry : null;
+		final SearchResults results;
+		final long retrievedAt;
+		if (cached != null) {
+			results = cached.getResults();
+			retrievedAt = cached.getRetrievedAt();
+		} else {
+			try {
+				results = lookup(term.trim(), refresh, entry != null ? entry.getKnownParts() : Collections.<ResultPart, Long> emptyMap());
+				retrievedAt = System.currentTimeMillis();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				sendError(exchange, 503, "The daemon is shutting down.");
+				return;
+			} catch (TimeoutException e) {
+				sendError(exchange, 504, "The search engines did not answer within " + lookupTimeoutMillis + " ms.");
+				return;
+			}
+		}
+		sendJson(exchange, 200, generator -> {
+			generator.writeStartObject();
+			JsonLinesResultSink.writeFields(generator, results);
+			generator.writeBooleanField("cached", cached != null);
+			generator.writeStringField("retrievedAt", Instant.ofEpochMilli(retrievedAt).toString());
+			generator.writeEndObject();
+		});
+	}
+
+	private void handleCollect(HttpExchange exchange) throws IOException {
+		if (collecting.get()) {
+			sendError(exchange, 409, "A collection is already running.");
+			return;
+		}
+		collector.execute(this::collect);
+		sendJson(exchange, 202, generator -> {
+			generator.writeStartObject();
+			generator.writeStringField("status", "collection started");
+			generator.writeEndObject();
+		});
+	}
+
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		final ScheduledFuture<?> next = scheduledCollection;
+		sendJson(exchange, 200, generator -> {
+			generator.writeStartObject();
+			generator.writeBooleanField("collecting", collecting.get());
+			writeTime(generator, "lastCollectionStart", lastCollectionStart);
+			writeTime(generator, "lastCollectionEnd", lastCollectionEnd);
+			generator.writeBooleanField("lastCollectionCompleted", lastCollectionCompleted);
+			writeTime(generator, "nextCollection", next != null ? System.currentTimeMillis() + Math.max(0, next.getDelay(TimeUnit.MILLISECONDS)) : -1);
+			generator.writeNumberField("completedTerms", retriever.getMetrics().getCompletedTerms());
+			generator.writeNumberField("pendingLookups", pendingLookups.size() + pendingRefreshes.size());
+			generator.writeNumberField("cachedTerms", cache.size());
+			generator.writeNumberField("cacheHits", cache.getHits());
+			generator.writeNumberField("cacheMisses", cache.getMisses());
+			generator.writeEndObject();
+		});
+	}
+
+	private static void writeTime(JsonGenerator generator, String field, long millis) throws IOException {
+		if (millis >= 0) {
+			generator.writeStringField(field, Instant.ofEpochMilli(millis).toString());
+		} else {
+			generator.writeNullField(field);
+		}
+	}
+
+	/** Answers requests with the given method with the handler, others with 405. */
+	private static void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+		try {
+			if (!method.equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			handler.handle(exchange);
+		} catch (IOException | RuntimeException e) {
+			LOG.error("Could not answer {}: {}", exchange.getRequestURI(), e.getMessage(), e);
+			throw e;
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		sendJson(exchange, status, generator -> {
+			generator.writeStartObject();
+			generator.writeStringField("error", message);
+			generator.writeEndObject();
+		});
+	}
+
+	private static void sendJson(HttpExchange exchange, int status, JsonWriter writer) throws IOException {
+		final ByteArrayOutputStream json = new ByteArrayOutputStream();
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+			writer.write(generator);
+		}
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE_JSON);
+		exchange.sendResponseHeaders(status, json.size());
+		try (OutputStream out = exchange.getResponseBody()) {
+			json.writeTo(out);
+		}
+	}
+
+	/** @return the decoded value of the query parameter or null, if missing. */
+	private static String getParameter(HttpExchange exchange, String name) {
+		final String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				if (parameter.startsWith(name + "=")) {
+					try {
+						return URLDecoder.decode(parameter.substring(name.length() + 1), "UTF-8");
+					} catch (UnsupportedEncodingException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	@FunctionalInterface
+	private interface Handler {
+		void handle(HttpExchange exchange) throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface JsonWriter {
+		void write(JsonGenerator generator) throws IOException;
+	}
+}
@@ -0,0 +1,159 @@
+package me.steffenjacobs.webanalyticsretriever.daemon;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+
+/**
+ * In-memory cache of the latest {@link SearchResults} of each term, filled by
+ * the collections and the on-demand requests of the {@link RetrieverDaemon}.
+ * Results expire after a fixed time and the least recently used results are
+ * evicted first. Results with a failed search are cached as well, so that the
+ * next request only retrieves the failed {@link ResultPart parts} again.
+ *
+ * @author Steffen Jacobs
+ */
+public class TermResultCache {
+
+	private final long ttlMillis;
+	private final Map<String, CachedResults> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of cached terms.
+	 * @param ttlMillis
+	 *            the time after which cached results expire.
+	 */
+	public TermResultCache(int maxEntries, long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, CachedResults>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResults> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the unexpired results of the term or null, if there are none. Only
+	 *         {@link CachedResults#isComplete() complete} results count as a hit.
+	 */
+	public CachedResults get(String term) {
+		synchronized (entries) {
+			final CachedResults entry = entries.get(term);
+			if (entry != null && System.currentTimeMillis() - entry.retrievedAt < ttlMillis) {
+				(entry.isComplete() ? hits : misses).incrementAndGet();
+				return entry;
+			}
+			if (entry != null) {
+				entries.remove(term);
+			}
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Caches the results, including failed searches. If the Reddit count was
+	 * known before and not retrieved again, the cached number of comments per
+	 * year is kept.
+	 * 
+	 * @return the cached results.
+	 */
+	public SearchResults put(SearchResults results) {
+		synchronized (entries) {
+			final CachedResults previous = entries.get(results.getTerm());
+			SearchResults merged = results;
+			if (results.getRedditYears() == null && previous != null && previous.results.getRedditYears() != null
+					&& previous.results.getRedditSearchResultCount() == results.getRedditSearchResultCount()) {
+				merged = new SearchResults(results.getTerm(), results.getRedditSearchResultCount(), results.getGoogleSearchResultCount(),
+						results.getGoogleBrowserSearchResultCount(), results.getGoogleBrowserExactSearchResultCount(), previous.results.getRedditYears(),
+						results.getCachedParts());
+			}
+			entries.put(results.getTerm(), new CachedResults(merged, System.currentTimeMillis()));
+			return merged;
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** The cached results of a term and the time they have been retrieved at. */
+	public static final class CachedResults {
+		private final SearchResults results;
+		private final long retrievedAt;
+
+		CachedResults(SearchResults results, long retrievedAt) {
+			this.results = results;
+			this.retrievedAt = retrievedAt;
+		}
+
+		public SearchResults getResults() {
+			return results;
+		}
+
+		/** @return true, if no search for the term failed. */
+		public boolean isComplete() {
+			return getKnownParts().size() == requiredParts();
+		}
+
+		/** @return the counts of the parts whose search did not fail. */
+		public Map<ResultPart, Long> getKnownParts() {
+			final Map<ResultPart, Long> known = new EnumMap<>(ResultPart.class);
+			for (ResultPart part : ResultPart.values()) {
+				final long count = getCount(part);
+				if (part.isRequiredFor(results.getTerm()) && count != -1) {
+					known.put(part, count);
+				}
+			}
+			return known;
+		}
+
+		private int requiredParts() {
+			int required = 0;
+			for (ResultPart part : ResultPart.values()) {
+				if (part.isRequiredFor(results.getTerm())) {
+					required++;
+				}
+			}
+			return required;
+		}
+
+		private long getCount(ResultPart part) {
+			switch (part) {
+			case REDDIT:
+				return results.getRedditSearchResultCount();
+			case GOOGLE_SEARCH_API:
+				return results.getGoogleSearchResultCount();
+			case GOOGLE_WEB_SEARCH:
+				return results.getGoogleBrowserSearchResultCount();
+			default:
+				return results.getGoogleBrowserExactSearchResultCount();
+			}
+		}
+
+		/** @return the time of the retrieval in milliseconds since the epoch. */
+		public long getRetrievedAt() {
+			return retrievedAt;
+		}
+	}
+}
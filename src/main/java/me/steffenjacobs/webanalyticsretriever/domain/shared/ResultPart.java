@@ -0,0 +1,58 @@
+package me.steffenjacobs.webanalyticsretriever.domain.shared;
+
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+
+/**
+ * The single search result counts a
+ * {@link me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults
+ * SearchResults} is assembled from. Each part is retrieved from one
+ * {@link SearchSource}.
+ * 
+ * @author Steffen Jacobs
+ */
+public enum ResultPart {
+	GOOGLE_SEARCH_API(SearchSource.GOOGLE_SEARCH_API, "google-api"), REDDIT(SearchSource.REDDIT, "reddit"), GOOGLE_WEB_SEARCH(SearchSource.GOOGLE_WEB_SEARCH,
+			"google-web"), GOOGLE_WEB_SEARCH_EXACT(SearchSource.GOOGLE_WEB_SEARCH, "google-web-exact");
+
+	private final SearchSource source;
+	private final String key;
+
+	private ResultPart(SearchSource source, String key) {
+		this.source = source;
+		this.key = key;
+	}
+
+	public SearchSource getSource() {
+		return source;
+	}
+
+	/**
+	 * @return true, if this part needs its own search request for the given
+	 *         {@link String term}. The exact search is only issued for search
+	 *         terms with whitespaces, for all other terms it equals the regular
+	 *         web search.
+	 */
+	public boolean isRequiredFor(String term) {
+		return this != GOOGLE_WEB_SEARCH_EXACT || term.contains(" ");
+	}
+
+	/** @return the name of the part in the output files. */
+	public String getKey() {
+		return key;
+	}
+
+	/** @return the part with the given {@link #getKey() key} or null, if there is none. */
+	public static ResultPart forKey(String key) {
+		for (ResultPart part : values()) {
+			if (part.key.equals(key)) {
+				return part;
+			}
+		}
+		return null;
+	}
+
+	/** @return the query sent to the {@link #getSource() source} for the term. */
+	public String toQuery(String term) {
+		return this == GOOGLE_WEB_SEARCH_EXACT ? term.replace(" ", " AND ") : term;
+	}
+}
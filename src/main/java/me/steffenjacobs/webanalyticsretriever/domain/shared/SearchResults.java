@@ -1,10 +1,16 @@
 package me.steffenjacobs.webanalyticsretriever.domain.shared;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents a single run of the
  * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever}. Can be
  * identified by the {@link term}. Contains search result counts for Reddit,
- * Google Search API, the Google WebSearch and the exact Google Web Search.
+ * Google Search API, the Google WebSearch and the exact Google Web Search and
+ * optionally the number of Reddit comments per year. The counts of the
+ * {@link #getCachedParts() cached parts} have been retrieved by a previous run.
  * 
  * @author Steffen Jacobs
  */
@@ -15,14 +21,29 @@ public class SearchResults {
 	private final long googleSearchResultCount;
 	private final long googleBrowserSearchResultCount;
 	private long googleBrowserExactSearchResultCount;
+	private final YearHistogram redditYears;
+	private final Set<ResultPart> cachedParts;
 
 	public SearchResults(String term, long redditSearchResultCount, long googleSearchResultCount, long googleBrowserSearchResultCount, long googleBrowserExactSearchResultCount) {
+		this(term, redditSearchResultCount, googleSearchResultCount, googleBrowserSearchResultCount, googleBrowserExactSearchResultCount, null);
+	}
+
+	public SearchResults(String term, long redditSearchResultCount, long googleSearchResultCount, long googleBrowserSearchResultCount, long googleBrowserExactSearchResultCount,
+			YearHistogram redditYears) {
+		this(term, redditSearchResultCount, googleSearchResultCount, googleBrowserSearchResultCount, googleBrowserExactSearchResultCount, redditYears,
+				Collections.emptySet());
+	}
+
+	public SearchResults(String term, long redditSearchResultCount, long googleSearchResultCount, long googleBrowserSearchResultCount, long googleBrowserExactSearchResultCount,
+			YearHistogram redditYears, Set<ResultPart> cachedParts) {
 		super();
 		this.term = term;
 		this.redditSearchResultCount = redditSearchResultCount;
 		this.googleSearchResultCount = googleSearchResultCount;
 		this.googleBrowserSearchResultCount = googleBrowserSearchResultCount;
 		this.googleBrowserExactSearchResultCount = googleBrowserExactSearchResultCount;
+		this.redditYears = redditYears;
+		this.cachedParts = cachedParts.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(cachedParts));
 	}
 
 	public String getTerm() {
@@ -45,4 +66,20 @@ public class SearchResults {
 		return googleBrowserExactSearchResultCount;
 	}
 
+	/**
+	 * @return the number of Reddit comments per year of creation or null, if not
+	 *         available.
+	 */
+	public YearHistogram getRedditYears() {
+		return redditYears;
+	}
+
+	/**
+	 * @return the parts whose counts have been answered from the cache instead of
+	 *         being retrieved by this run.
+	 */
+	public Set<ResultPart> getCachedParts() {
+		return cachedParts;
+	}
+
 }
@@ -0,0 +1,108 @@
+package me.steffenjacobs.webanalyticsretriever.domain.shared;
+
+import java.util.Arrays;
+
+/**
+ * Number of search results per year, e.g. the Reddit comments per year of
+ * creation. The years are sorted in ascending order.
+ * 
+ * @author Steffen Jacobs
+ */
+public class YearHistogram {
+
+	private final int[] years;
+	private final long[] counts;
+
+	/**
+	 * @param years
+	 *            the years in ascending order.
+	 * @param counts
+	 *            the number of search results for each year.
+	 */
+	public YearHistogram(int[] years, long[] counts) {
+		if (years.length != counts.length) {
+			throw new IllegalArgumentException("Got " + years.length + " years but " + counts.length + " counts.");
+		}
+		this.years = years;
+		this.counts = counts;
+	}
+
+	/**
+	 * Parses a histogram in the format created by {@link #encode()}, e.g.
+	 * "2015:12;2016:40".
+	 */
+	public static YearHistogram parse(String encoded) {
+		final String trimmed = encoded.trim();
+		if (trimmed.isEmpty()) {
+			return new YearHistogram(new int[0], new long[0]);
+		}
+		final String[] entries = trimmed.split(";");
+		final int[] years = new int[entries.length];
+		final long[] counts = new long[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			final int separator = entries[i].indexOf(':');
+			if (separator < 0) {
+				throw new IllegalArgumentException("Invalid histogram entry: " + entries[i]);
+			}
+			years[i] = Integer.parseInt(entries[i].substring(0, separator).trim());
+			counts[i] = Long.parseLong(entries[i].substring(separator + 1).trim());
+		}
+		return new YearHistogram(years, counts);
+	}
+
+	public int size() {
+		return years.length;
+	}
+
+	public int getYear(int index) {
+		return years[index];
+	}
+
+	public long getCount(int index) {
+		return counts[index];
+	}
+
+	/** @return the sum of the counts of all years. */
+	public long getTotal() {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * @return the histogram as "&lt;year&gt;:&lt;count&gt;" pairs separated by
+	 *         semicolons, e.g. "2015:12;2016:40". Contains no commas, so it can be
+	 *         stored in a single csv field.
+	 */
+	public String encode() {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < years.length; i++) {
+			if (i > 0) {
+				sb.append(';');
+			}
+			sb.append(years[i]).append(':').append(counts[i]);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof YearHistogram)) {
+			return false;
+		}
+		final YearHistogram other = (YearHistogram) obj;
+		return Arrays.equals(years, other.years) && Arrays.equals(counts, other.counts);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(years) * 31 + Arrays.hashCode(counts);
+	}
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+}
@@ -0,0 +1,98 @@
+package me.steffenjacobs.webanalyticsretriever.loadtest;
+
+import java.util.Random;
+
+/**
+ * The distribution of the response times of a {@link StubSearchServer}
+ * endpoint. Distributions are specified as text:
+ * <ul>
+ * <li>fixed:&lt;millis&gt;</li>
+ * <li>uniform:&lt;min-millis&gt;:&lt;max-millis&gt;</li>
+ * <li>exponential:&lt;mean-millis&gt;</li>
+ * <li>lognormal:&lt;median-millis&gt;:&lt;sigma&gt;, which resembles the long
+ * tail of real search engines best</li>
+ * </ul>
+ *
+ * @author Steffen Jacobs
+ */
+public final class LatencyDistribution {
+
+	private enum Type {
+		FIXED, UNIFORM, EXPONENTIAL, LOGNORMAL
+	}
+
+	private final Type type;
+	private final double first;
+	private final double second;
+
+	private LatencyDistribution(Type type, double first, double second) {
+		this.type = type;
+		this.first = first;
+		this.second = second;
+	}
+
+	public static LatencyDistribution fixed(long millis) {
+		return new LatencyDistribution(Type.FIXED, millis, 0);
+	}
+
+	public static LatencyDistribution uniform(long minMillis, long maxMillis) {
+		return new LatencyDistribution(Type.UNIFORM, minMillis, maxMillis);
+	}
+
+	public static LatencyDistribution exponential(double meanMillis) {
+		return new LatencyDistribution(Type.EXPONENTIAL, meanMillis, 0);
+	}
+
+	public static LatencyDistribution logNormal(double medianMillis, double sigma) {
+		return new LatencyDistribution(Type.LOGNORMAL, medianMillis, sigma);
+	}
+
+	/** Parses a distribution in the format described above. */
+	public static LatencyDistribution parse(String text) {
+		final String[] parts = text.trim().split(":");
+		try {
+			switch (parts[0].toLowerCase()) {
+			case "fixed":
+				return fixed(Long.parseLong(parts[1]));
+			case "uniform":
+				return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+			case "exponential":
+				return exponential(Double.parseDouble(parts[1]));
+			case "lognormal":
+				return logNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			default:
+				throw new IllegalArgumentException("Unknown latency distribution: " + text);
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Missing parameter of latency distribution: " + text, e);
+		}
+	}
+
+	/** @return a random response time in milliseconds. */
+	public long sample(Random random) {
+		switch (type) {
+		case UNIFORM:
+			return (long) (first + random.nextDouble() * (second - first));
+		case EXPONENTIAL:
+			return (long) (-first * Math.log(1 - random.nextDouble()));
+		case LOGNORMAL:
+			return (long) (first * Math.exp(second * random.nextGaussian()));
+		default:
+			return (long) first;
+		}
+	}
+
+	@Override
+	public String toString() {
+		switch (type) {
+		case UNIFORM:
+			return String.format("uniform:%d:%d", (long) first, (long) second);
+		case EXPONENTIAL:
+			return "exponential:" + first;
+		case LOGNORMAL:
+			return "lognormal:" + first + ":" + second;
+		default:
+			return "fixed:" + (long) first;
+		}
+	}
+}
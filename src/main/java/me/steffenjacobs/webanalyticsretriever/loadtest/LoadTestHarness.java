@@ -0,0 +1,229 @@
+package me.steffenjacobs.webanalyticsretriever.loadtest;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.PropertyResourceBundle;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+import me.steffenjacobs.webanalyticsretriever.Settings;
+import me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever;
+import me.steffenjacobs.webanalyticsretriever.metrics.ErrorType;
+import me.steffenjacobs.webanalyticsretriever.metrics.SourceMetrics;
+import me.steffenjacobs.webanalyticsretriever.terms.TermSource;
+
+/**
+ * Main entry point for a load test of the
+ * {@link WebAnalyticsRetriever#retrieve(java.util.Collection, java.util.function.Consumer)
+ * retrieval pipeline} against a local {@link StubSearchServer}. Reports the
+ * retrieved terms per second, the median and 99th percentile latency per
+ * search engine and the heap usage. Configured with system properties:
+ * <ul>
+ * <li>"loadtest.terms": the number of search terms, default: 10000</li>
+ * <li>"loadtest.seed": the seed of the order of the terms, default: 0</li>
+ * <li>"loadtest.&lt;search-engine&gt;.latency": the
+ * {@link LatencyDistribution} of the stub responses, default:
+ * lognormal:&lt;median&gt;:0.5 with a median of 80 ms for google-api, 120 ms
+ * for reddit and 200 ms for google-web</li>
+ * <li>"loadtest.&lt;search-engine&gt;.error-rate" and
+ * "loadtest.&lt;search-engine&gt;.throttle-rate": the fraction of failed and
+ * throttled requests, default: 0.01 and 0</li>
+ * <li>"loadtest.&lt;search-engine&gt;.quota": the number of requests answered
+ * before the quota is exhausted, default: unlimited</li>
+ * <li>"loadtest.server-threads": the threads of the stub server, default:
+ * 8</li>
+ * </ul>
+ * The retriever is configured for the stub server with generous rate limits.
+ * These settings can be overridden with a properties file given as first
+ * argument, which uses the same keys as the settings.properties.
+ *
+ * @author Steffen Jacobs
+ */
+public class LoadTestHarness {
+
+	static {
+		// the retriever logs every single search and every injected error, only the
+		// report is of interest
+		if (System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+			System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "off");
+			System.setProperty("org.slf4j.simpleLogger.log.me.steffenjacobs.webanalyticsretriever.loadtest", "info");
+		}
+	}
+
+	private static final Logger LOG = LoggerFactory.getLogger(LoadTestHarness.class);
+
+	/*** Main entry point */
+	public static void main(String[] args) throws IOException {
+		final int termCount = Integer.getInteger("loadtest.terms", 10000);
+		final Map<SearchSource, StubSearchServer.Behavior> behaviors = StubSearchServer.createBehaviors();
+
+		final Path quotaFile = Files.createTempFile("loadtest-quota", ".properties");
+		final Path termsFile = Files.createTempFile("loadtest-terms", ".txt");
+		try (StubSearchServer server = new StubSearchServer(0, Integer.getInteger("loadtest.server-threads", 8), behaviors)) {
+			server.start();
+
+			// one platform name for each term and its extensions with the key words,
+			// loaded and ordered like the terms file of a real run
+			final List<String> platformNames = new ArrayList<>();
+			for (int i = 0; i < Math.max(1, termCount / (1 + WebAnalyticsRetriever.KEY_WORDS.length)); i++) {
+				platformNames.add("Platform" + i);
+			}
+			Files.write(termsFile, platformNames, StandardCharsets.UTF_8);
+			final List<String> terms = TermSource.load(termsFile, Arrays.asList(WebAnalyticsRetriever.KEY_WORDS)).permuted(Long.getLong("loadtest.seed", 0));
+
+			final Map<SearchSource, TimedSearchService> timedServices = new EnumMap<>(SearchSource.class);
+			final WebAnalyticsRetriever retriever = new WebAnalyticsRetriever();
+			retriever.setServiceDecorator((source, service) -> {
+				final TimedSearchService timed = new TimedSearchService(service);
+				timedServices.put(source, timed);
+				return timed;
+			});
+			retriever.init(createSettings(server, quotaFile, args));
+
+			final HeapSampler heap = new HeapSampler();
+			final AtomicInteger complete = new AtomicInteger();
+			LOG.info("Retrieving {} terms from {}...", terms.size(), behaviors);
+			final long start = System.nanoTime();
+			try {
+				retriever.retrieve(terms, v -> {
+					if (v.getRedditSearchResultCount() >= 0 && v.getGoogleSearchResultCount() >= 0 && v.getGoogleBrowserSearchResultCount() >= 0
+							&& v.getGoogleBrowserExactSearchResultCount() >= 0) {
+						complete.incrementAndGet();
+					}
+				});
+			} finally {
+				retriever.close();
+				heap.close();
+			}
+			final double seconds = (System.nanoTime() - start) / 1e9;
+
+			LOG.info("Retrieved {} terms in {} s: {} terms/s, {} terms with all results.", terms.size(), String.format("%.1f", seconds),
+					String.format("%.1f", terms.size() / seconds), complete.get());
+			for (Map.Entry<SearchSource, TimedSearchService> e : timedServices.entrySet()) {
+				final TimedSearchService timed = e.getValue();
+				final SourceMetrics metrics = retriever.getMetrics().get(e.getKey());
+				final StringBuilder errors = new StringBuilder();
+				for (ErrorType type : ErrorType.values()) {
+					errors.append(errors.length() > 0 ? ", " : "").append(type.getKey()).append('=').append(metrics.getErrors(type));
+				}
+				LOG.info("{}: {} requests, {} failed ({}), {} retries, p50={} ms, p99={} ms", e.getKey().getKey(), timed.getRequests(), timed.getFailures(), errors,
+						metrics.getRetries(), String.format("%.1f", timed.getPercentile(0.5)), String.format("%.1f", timed.getPercentile(0.99)));
+			}
+			for (SearchSource source : behaviors.keySet()) {
+				LOG.info("Stub {}", server.getStatistics(source));
+			}
+			LOG.info("Heap: peak {} MB, {} MB after the run, {} garbage collections in {} ms.", heap.getPeakUsed() >> 20, heap.getUsed() >> 20,
+					heap.getCollections(), heap.getCollectionMillis());
+		} finally {
+			Files.deleteIfExists(quotaFile);
+			Files.deleteIfExists(termsFile);
+		}
+	}
+
+	/**
+	 * Creates the settings pointing all search engines to the stub server,
+	 * overridden by the properties file given as first argument.
+	 */
+	private static Settings createSettings(StubSearchServer server, Path quotaFile, String[] args) throws IOException {
+		final Properties properties = new Properties();
+		properties.setProperty("google-api-key", "loadtest");
+		properties.setProperty("google-api.base-url", server.getBaseUrl(SearchSource.GOOGLE_SEARCH_API));
+		properties.setProperty("reddit.base-url", server.getBaseUrl(SearchSource.REDDIT));
+		properties.setProperty("google-web-search.base-url", server.getBaseUrl(SearchSource.GOOGLE_WEB_SEARCH));
+		properties.setProperty("google-web-search.backend", "http");
+		properties.setProperty("scheduler.max-in-flight-terms", "64");
+		properties.setProperty("http.max-connections-per-host", "128");
+		properties.setProperty("http.max-connections", "128");
+		properties.setProperty("quota.google-api.file", quotaFile.toString());
+		properties.setProperty("quota.google-api.daily-limit", Integer.toString(Integer.MAX_VALUE));
+		for (SearchSource source : SearchSource.values()) {
+			properties.setProperty("executor." + source.getKey() + ".threads", "16");
+			properties.setProperty("rate-limit." + source.getKey() + ".max-per-second", "100000");
+			properties.setProperty("rate-limit." + source.getKey() + ".burst", "1000");
+			properties.setProperty("rate-limit." + source.getKey() + ".backoff-ms", "100");
+		}
+		if (args.length > 0) {
+			try (InputStream in = new FileInputStream(args[0])) {
+				properties.load(in);
+			}
+		}
+
+		final StringWriter writer = new StringWriter();
+		properties.store(writer, null);
+		return new Settings(new PropertyResourceBundle(new StringReader(writer.toString())));
+	}
+
+	/** Samples the used heap in the background to find its peak. */
+	private static class HeapSampler implements AutoCloseable {
+		private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		private final AtomicLong peakUsed = new AtomicLong();
+		private final long collections;
+		private final long collectionMillis;
+
+		HeapSampler() {
+			collections = countCollections();
+			collectionMillis = sumCollectionMillis();
+			executor.scheduleAtFixedRate(() -> peakUsed.accumulateAndGet(getUsed(), Math::max), 0, 50, TimeUnit.MILLISECONDS);
+		}
+
+		long getUsed() {
+			return memory.getHeapMemoryUsage().getUsed();
+		}
+
+		long getPeakUsed() {
+			return peakUsed.get();
+		}
+
+		long getCollections() {
+			return countCollections() - collections;
+		}
+
+		long getCollectionMillis() {
+			return sumCollectionMillis() - collectionMillis;
+		}
+
+		@Override
+		public void close() {
+			executor.shutdownNow();
+		}
+
+		private static long countCollections() {
+			long count = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				count += Math.max(0, gc.getCollectionCount());
+			}
+			return count;
+		}
+
+		private static long sumCollectionMillis() {
+			long millis = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				millis += Math.max(0, gc.getCollectionTime());
+			}
+			return millis;
+		}
+	}
+}
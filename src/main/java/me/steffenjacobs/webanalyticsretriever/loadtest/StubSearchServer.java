@@ -0,0 +1,331 @@
+package me.steffenjacobs.webanalyticsretriever.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+
+/**
+ * Local HTTP server emulating the search engines queried by the
+ * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever}: the
+ * pushshift comment search with yearly aggregations, the Google Custom Search
+ * JSON API and the Google WebSearch result page. The search result counts are
+ * derived from the search term, so that repeated searches return the same
+ * counts.
+ * <p>
+ * The response time, the rate of failed (HTTP 500) and throttled requests and
+ * the quota of each endpoint are configured with a {@link Behavior}. Throttled
+ * requests and requests beyond the quota are answered like the real search
+ * engines do: the Google Search API with HTTP 429 and 403 respectively, Reddit
+ * with HTTP 429 and the Google WebSearch with a captcha page. Responses are
+ * delayed without blocking a thread, so that thousands of requests can be
+ * pending at the same time. Like the real search engines, the server
+ * compresses the responses if the client accepts gzip.
+ * <p>
+ * The main entry point runs the server on its own, e.g. for several retriever
+ * processes. It is configured with the same system properties as the
+ * {@link LoadTestHarness} and listens on "loadtest.port", default: 8089.
+ *
+ * @author Steffen Jacobs
+ */
+public class StubSearchServer implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(StubSearchServer.class);
+
+	private static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
+	private static final String CONTENT_TYPE_HTML = "text/html; charset=UTF-8";
+	private static final int FIRST_YEAR = 2010;
+	private static final int YEARS = 10;
+	private static final long[] YEAR_KEYS = new long[YEARS];
+
+	// a real result page is about 100 KB with the search result count in the first
+	// quarter
+	private static final String PAGE_HEAD = "<!doctype html><html><head><title>Google</title><script>" + filler(24 * 1024) + "</script></head><body>";
+	private static final String PAGE_TAIL = "<div id=\"search\">" + filler(72 * 1024) + "</div></body></html>";
+	private static final byte[] CAPTCHA_PAGE = ("<!doctype html><html><head><title>Sorry...</title></head><body><div id=\"captcha-form\">"
+			+ "Our systems have detected unusual traffic from your computer network.</div></body></html>").getBytes(StandardCharsets.UTF_8);
+
+	static {
+		for (int i = 0; i < YEARS; i++) {
+			YEAR_KEYS[i] = LocalDate.of(FIRST_YEAR + i, 1, 1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+		}
+	}
+
+	private final HttpServer server;
+	private final ScheduledExecutorService scheduler;
+	private final Map<SearchSource, Endpoint> endpoints = new EnumMap<>(SearchSource.class);
+
+	/**
+	 * The response time, the rates of failed and throttled requests and the
+	 * number of requests answered before the quota is exhausted (-1 for no quota)
+	 * of a single endpoint.
+	 */
+	public static final class Behavior {
+		private final LatencyDistribution latency;
+		private final double errorRate;
+		private final double throttleRate;
+		private final long quota;
+
+		public Behavior(LatencyDistribution latency, double errorRate, double throttleRate, long quota) {
+			this.latency = latency;
+			this.errorRate = errorRate;
+			this.throttleRate = throttleRate;
+			this.quota = quota;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "latency=%s, error-rate=%.4f, throttle-rate=%.4f, quota=%d", latency, errorRate, throttleRate, quota);
+		}
+	}
+
+	/** Main entry point; runs the server until the process is terminated. */
+	public static void main(String[] args) throws IOException {
+		final StubSearchServer server = new StubSearchServer(Integer.getInteger("loadtest.port", 8089), Integer.getInteger("loadtest.server-threads", 8),
+				createBehaviors());
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			for (SearchSource source : server.endpoints.keySet()) {
+				LOG.info("Stub {}", server.getStatistics(source));
+			}
+			server.close();
+		}));
+		server.start();
+		for (SearchSource source : server.endpoints.keySet()) {
+			LOG.info("Base URL for {}: {}", source.getKey(), server.getBaseUrl(source));
+		}
+	}
+
+	/**
+	 * Creates the server on the loopback interface.
+	 *
+	 * @param port
+	 *            the port to listen on, 0 for any free port
+	 * @param threads
+	 *            the number of threads accepting and answering the requests
+	 * @param behaviors
+	 *            the behavior of the endpoint of each {@link SearchSource}
+	 */
+	public StubSearchServer(int port, int threads, Map<SearchSource, Behavior> behaviors) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		scheduler = Executors.newScheduledThreadPool(threads);
+		server.setExecutor(scheduler);
+		for (Map.Entry<SearchSource, Behavior> entry : behaviors.entrySet()) {
+			final Endpoint endpoint = new Endpoint(entry.getKey(), entry.getValue());
+			endpoints.put(entry.getKey(), endpoint);
+			server.createContext(getPath(entry.getKey()), endpoint::handle);
+		}
+	}
+
+	public void start() {
+		server.start();
+		LOG.info("Stub search server listening on port {}.", getPort());
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		scheduler.shutdownNow();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return the URL to configure as base URL of the search service of the given
+	 *         {@link SearchSource}.
+	 */
+	public String getBaseUrl(SearchSource source) {
+		return "http://" + server.getAddress().getHostString() + ":" + getPort() + getPath(source);
+	}
+
+	/**
+	 * @return the number of requests answered successfully, with an error, as
+	 *         throttled and after the quota has been exhausted.
+	 */
+	public String getStatistics(SearchSource source) {
+		return endpoints.get(source).toString();
+	}
+
+	/**
+	 * @return the behavior of each endpoint as configured with the system
+	 *         properties "loadtest.&lt;search-engine&gt;.latency", "error-rate",
+	 *         "throttle-rate" and "quota".
+	 */
+	static Map<SearchSource, Behavior> createBehaviors() {
+		final Map<SearchSource, Behavior> behaviors = new EnumMap<>(SearchSource.class);
+		behaviors.put(SearchSource.GOOGLE_SEARCH_API, createBehavior(SearchSource.GOOGLE_SEARCH_API, 80));
+		behaviors.put(SearchSource.REDDIT, createBehavior(SearchSource.REDDIT, 120));
+		behaviors.put(SearchSource.GOOGLE_WEB_SEARCH, createBehavior(SearchSource.GOOGLE_WEB_SEARCH, 200));
+		return behaviors;
+	}
+
+	private static Behavior createBehavior(SearchSource source, long defaultMedianMillis) {
+		final String prefix = "loadtest." + source.getKey() + ".";
+		return new Behavior(LatencyDistribution.parse(System.getProperty(prefix + "latency", "lognormal:" + defaultMedianMillis + ":0.5")),
+				Double.parseDouble(System.getProperty(prefix + "error-rate", "0.01")), Double.parseDouble(System.getProperty(prefix + "throttle-rate", "0")),
+				Long.getLong(prefix + "quota", -1));
+	}
+
+	private static String getPath(SearchSource source) {
+		switch (source) {
+		case GOOGLE_SEARCH_API:
+			return "/customsearch/v1";
+		case REDDIT:
+			return "/reddit/search/comment/";
+		default:
+			return "/search";
+		}
+	}
+
+	/** Answers the requests of a single search engine. */
+	private class Endpoint {
+		private final SearchSource source;
+		private final Behavior behavior;
+		private final AtomicLong granted = new AtomicLong();
+		private final AtomicLong succeeded = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong throttled = new AtomicLong();
+		private final AtomicLong exhausted = new AtomicLong();
+
+		Endpoint(SearchSource source, Behavior behavior) {
+			this.source = source;
+			this.behavior = behavior;
+		}
+
+		void handle(HttpExchange exchange) {
+			final ThreadLocalRandom random = ThreadLocalRandom.current();
+			final long delay = Math.max(0, behavior.latency.sample(random));
+			final double outcome = random.nextDouble();
+
+			final int status;
+			final byte[] body;
+			if (outcome < behavior.errorRate) {
+				failed.incrementAndGet();
+				status = 500;
+				body = source == SearchSource.GOOGLE_WEB_SEARCH ? "<html><body>Server Error</body></html>".getBytes(StandardCharsets.UTF_8)
+						: json("{\"error\":{\"code\":500,\"message\":\"Backend Error\"}}");
+			} else if (outcome < behavior.errorRate + behavior.throttleRate) {
+				throttled.incrementAndGet();
+				status = 429;
+				body = source == SearchSource.GOOGLE_WEB_SEARCH ? CAPTCHA_PAGE : json("{\"error\":{\"code\":429,\"message\":\"Too Many Requests\"}}");
+			} else if (behavior.quota >= 0 && granted.getAndIncrement() >= behavior.quota) {
+				exhausted.incrementAndGet();
+				status = source == SearchSource.GOOGLE_SEARCH_API ? 403 : 429;
+				body = source == SearchSource.GOOGLE_WEB_SEARCH ? CAPTCHA_PAGE : json("{\"error\":{\"code\":" + status + ",\"message\":\"Daily Limit Exceeded\"}}");
+			} else {
+				succeeded.incrementAndGet();
+				status = 200;
+				body = createResponse(getTerm(exchange));
+			}
+			scheduler.schedule(() -> send(exchange, status, body), delay, TimeUnit.MILLISECONDS);
+		}
+
+		private byte[] createResponse(String term) {
+			switch (source) {
+			case GOOGLE_SEARCH_API:
+				return json("{\"queries\":{\"request\":[{\"totalResults\":\"" + count(term, 0, 10_000_000) + "\"}]}}");
+			case REDDIT:
+				final StringBuilder sb = new StringBuilder("{\"aggs\":{\"created_utc\":[");
+				for (int i = 0; i < YEARS; i++) {
+					sb.append(i > 0 ? "," : "").append("{\"doc_count\":").append(count(term, i + 1, 50_000)).append(",\"key\":").append(YEAR_KEYS[i]).append('}');
+				}
+				return json(sb.append("]},\"data\":[]}").toString());
+			default:
+				return (PAGE_HEAD + "<div id=\"resultStats\">Ungefähr " + String.format(Locale.GERMANY, "%,d", count(term, 0, 100_000_000))
+						+ " Ergebnisse (0,42 Sekunden) </div><div id=\"topstuff\"></div>" + PAGE_TAIL).getBytes(StandardCharsets.UTF_8);
+			}
+		}
+
+		private void send(HttpExchange exchange, int status, byte[] body) {
+			try {
+				exchange.getResponseHeaders().set("Content-Type", source == SearchSource.GOOGLE_WEB_SEARCH ? CONTENT_TYPE_HTML : CONTENT_TYPE_JSON);
+				final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				final byte[] content = acceptEncoding != null && acceptEncoding.contains("gzip") ? gzip(body) : body;
+				if (content != body) {
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				}
+				exchange.sendResponseHeaders(status, content.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(content);
+				}
+			} catch (IOException e) {
+				// the Google WebSearch client aborts as soon as it found the count
+				LOG.debug("Could not send the response: {}", e.getMessage());
+			} finally {
+				exchange.close();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s[%s, succeeded=%d, failed=%d, throttled=%d, quota-exceeded=%d]", source.getKey(), behavior, succeeded.get(), failed.get(),
+					throttled.get(), exhausted.get());
+		}
+	}
+
+	private static byte[] gzip(byte[] body) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 2);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(body);
+		}
+		return bytes.toByteArray();
+	}
+
+	/** @return the value of the parameter "q" of the request. */
+	private static String getTerm(HttpExchange exchange) {
+		final String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				if (parameter.startsWith("q=")) {
+					try {
+						return URLDecoder.decode(parameter.substring(2), "UTF-8");
+					} catch (UnsupportedEncodingException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}
+		}
+		return "";
+	}
+
+	/** @return a search result count derived from the term and a salt. */
+	private static long count(String term, int salt, long bound) {
+		long hash = (term.hashCode() + 31L * salt) * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 29;
+		return (hash >>> 1) % bound;
+	}
+
+	private static byte[] json(String json) {
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String filler(int length) {
+		final char[] chars = new char[length];
+		Arrays.fill(chars, 'x');
+		return new String(chars);
+	}
+}
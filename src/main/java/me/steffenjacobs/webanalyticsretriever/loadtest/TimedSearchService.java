@@ -0,0 +1,69 @@
+package me.steffenjacobs.webanalyticsretriever.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import me.steffenjacobs.webanalyticsretriever.AsyncSearchService;
+import me.steffenjacobs.webanalyticsretriever.SearchCount;
+import me.steffenjacobs.webanalyticsretriever.SearchService;
+
+/**
+ * Records the latency of every search of the wrapped {@link SearchService} and
+ * the number of failed searches.
+ *
+ * @author Steffen Jacobs
+ */
+class TimedSearchService implements AsyncSearchService {
+
+	private final SearchService delegate;
+	private long[] latencies = new long[1024];
+	private int size;
+	private int failures;
+
+	TimedSearchService(SearchService delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public CompletableFuture<SearchCount> searchAsync(String term, Executor executor) {
+		final long start = System.nanoTime();
+		return AsyncSearchService.searchAsync(delegate, term, executor).whenComplete((count, e) -> record(System.nanoTime() - start, e != null || count.getCount() == -1));
+	}
+
+	@Override
+	public void dispose() {
+		delegate.dispose();
+	}
+
+	private synchronized void record(long nanos, boolean failed) {
+		if (size == latencies.length) {
+			latencies = Arrays.copyOf(latencies, size * 2);
+		}
+		latencies[size++] = nanos;
+		if (failed) {
+			failures++;
+		}
+	}
+
+	synchronized int getRequests() {
+		return size;
+	}
+
+	synchronized int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return the latency in milliseconds below which the given fraction of all
+	 *         searches completed, e.g. 0.99 for the 99th percentile.
+	 */
+	synchronized double getPercentile(double fraction) {
+		if (size == 0) {
+			return 0;
+		}
+		final long[] sorted = Arrays.copyOf(latencies, size);
+		Arrays.sort(sorted);
+		return sorted[Math.max(0, Math.min(size - 1, (int) Math.ceil(fraction * size) - 1))] / 1e6;
+	}
+}
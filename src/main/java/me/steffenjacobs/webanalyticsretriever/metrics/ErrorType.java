@@ -0,0 +1,43 @@
+package me.steffenjacobs.webanalyticsretriever.metrics;
+
+/**
+ * The reasons a search request fails for.
+ * 
+ * @author Steffen Jacobs
+ */
+public enum ErrorType {
+	/** HTTP 403, e.g. because the daily limit has been exceeded. */
+	FORBIDDEN("forbidden"),
+	/** HTTP 429 */
+	THROTTLED("throttled"),
+	/** A captcha instead of the result page. */
+	CAPTCHA("captcha"),
+	/** Any other unexpected HTTP status. */
+	HTTP("http"),
+	/** The connection failed or was interrupted. */
+	IO("io"),
+	/** The response did not contain the expected search result count. */
+	PARSE("parse");
+
+	private final String key;
+
+	private ErrorType(String key) {
+		this.key = key;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/** @return the error type of an unexpected HTTP status. */
+	public static ErrorType ofStatus(int status) {
+		switch (status) {
+		case 403:
+			return FORBIDDEN;
+		case 429:
+			return THROTTLED;
+		default:
+			return HTTP;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package me.steffenjacobs.webanalyticsretriever.metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import me.steffenjacobs.webanalyticsretriever.AsyncSearchService;
+import me.steffenjacobs.webanalyticsretriever.SearchCount;
+import me.steffenjacobs.webanalyticsretriever.SearchService;
+
+/**
+ * Records the number, the latency and the outcome of the searches of the
+ * wrapped {@link SearchService} in its {@link SourceMetrics}.
+ * 
+ * @author Steffen Jacobs
+ */
+public class InstrumentedSearchService implements AsyncSearchService {
+
+	private final SearchService delegate;
+	private final SourceMetrics metrics;
+
+	public InstrumentedSearchService(SearchService delegate, SourceMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public CompletableFuture<SearchCount> searchAsync(String term, Executor executor) {
+		final long start = metrics.onRequestStarted();
+		return AsyncSearchService.searchAsync(delegate, term, executor)
+				.whenComplete((count, e) -> metrics.onRequestCompleted(start, e == null && count.getCount() != -1));
+	}
+
+	@Override
+	public void dispose() {
+		delegate.dispose();
+	}
+}
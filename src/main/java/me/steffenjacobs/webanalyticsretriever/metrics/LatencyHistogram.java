@@ -0,0 +1,89 @@
+package me.steffenjacobs.webanalyticsretriever.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Lock-free histogram of latencies with fixed buckets from 1 ms to 60 s.
+ * Percentiles are estimated with the upper bound of the bucket they fall into.
+ * 
+ * @author Steffen Jacobs
+ */
+public class LatencyHistogram {
+
+	private static final long[] BUCKET_BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000 };
+
+	// the last bucket counts all latencies above the highest bound
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) {
+			bucket++;
+		}
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		sumNanos.addAndGet(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public double getMeanMillis() {
+		final long n = count.get();
+		return n > 0 ? sumNanos.get() / 1e6 / n : 0;
+	}
+
+	public double getMaxMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	/**
+	 * @return the upper bound of the bucket containing the given percentile, e.g.
+	 *         0.99 for the 99th percentile. Latencies above the highest bucket
+	 *         are estimated with the maximum.
+	 */
+	public double getPercentileMillis(double fraction) {
+		final long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return BUCKET_BOUNDS_MILLIS[i];
+			}
+		}
+		return getMaxMillis();
+	}
+
+	/** Writes the summary and the buckets as JSON object. */
+	void writeJson(JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("count", getCount());
+		generator.writeNumberField("meanMs", getMeanMillis());
+		generator.writeNumberField("p50Ms", getPercentileMillis(0.5));
+		generator.writeNumberField("p90Ms", getPercentileMillis(0.9));
+		generator.writeNumberField("p99Ms", getPercentileMillis(0.99));
+		generator.writeNumberField("maxMs", getMaxMillis());
+		generator.writeObjectFieldStart("buckets");
+		for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+			generator.writeNumberField("<" + BUCKET_BOUNDS_MILLIS[i] + "ms", buckets.get(i));
+		}
+		generator.writeNumberField(">=" + BUCKET_BOUNDS_MILLIS[BUCKET_BOUNDS_MILLIS.length - 1] + "ms", buckets.get(BUCKET_BOUNDS_MILLIS.length));
+		generator.writeEndObject();
+		generator.writeEndObject();
+	}
+}
@@ -0,0 +1,142 @@
+package me.steffenjacobs.webanalyticsretriever.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+
+/**
+ * The metrics of a run of the
+ * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever}: the
+ * {@link SourceMetrics} of each search engine, the progress of the pipeline
+ * and the write latency of the result sinks. All values can be updated and
+ * read concurrently while the run is in progress.
+ * 
+ * @author Steffen Jacobs
+ */
+public class MetricsRegistry {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final Map<SearchSource, SourceMetrics> sources = new EnumMap<>(SearchSource.class);
+	private final Map<String, LongSupplier> pipelineGauges = new ConcurrentSkipListMap<>();
+	private final Map<String, LongSupplier> sinkGauges = new ConcurrentSkipListMap<>();
+	private final LatencyHistogram sinkWriteLatency = new LatencyHistogram();
+	private final AtomicLong completedTerms = new AtomicLong();
+	private final AtomicLong totalTerms = new AtomicLong();
+	private volatile long runStart = System.nanoTime();
+
+	public MetricsRegistry() {
+		for (SearchSource source : SearchSource.values()) {
+			sources.put(source, new SourceMetrics());
+		}
+	}
+
+	public SourceMetrics get(SearchSource source) {
+		return sources.get(source);
+	}
+
+	/**
+	 * Starts measuring the progress of a run with the given number of terms or -1
+	 * if the number is unknown.
+	 */
+	public void startRun(long totalTerms) {
+		this.totalTerms.set(totalTerms);
+		completedTerms.set(0);
+		runStart = System.nanoTime();
+	}
+
+	public void onTermCompleted() {
+		completedTerms.incrementAndGet();
+	}
+
+	/**
+	 * Removes a term from the run that does not need to be retrieved, e.g.
+	 * because it has been retrieved by a previous run already.
+	 */
+	public void onTermSkipped() {
+		totalTerms.decrementAndGet();
+	}
+
+	public long getCompletedTerms() {
+		return completedTerms.get();
+	}
+
+	public double getTermsPerSecond() {
+		final double seconds = (System.nanoTime() - runStart) / 1e9;
+		return seconds > 0 ? completedTerms.get() / seconds : 0;
+	}
+
+	/**
+	 * @return the estimated seconds until all terms of the run are completed or
+	 *         -1 if the number of terms is unknown or no term has been completed
+	 *         yet.
+	 */
+	public long getEtaSeconds() {
+		final double rate = getTermsPerSecond();
+		return rate > 0 && totalTerms.get() >= 0 ? (long) Math.ceil(Math.max(0, totalTerms.get() - completedTerms.get()) / rate) : -1;
+	}
+
+	/** Registers a value of the pipeline read whenever the metrics are reported. */
+	public void setPipelineGauge(String name, LongSupplier gauge) {
+		pipelineGauges.put(name, gauge);
+	}
+
+	/** Registers a value of the sinks read whenever the metrics are reported. */
+	public void setSinkGauge(String name, LongSupplier gauge) {
+		sinkGauges.put(name, gauge);
+	}
+
+	/** @return the time needed to write and flush a batch of results. */
+	public LatencyHistogram getSinkWriteLatency() {
+		return sinkWriteLatency;
+	}
+
+	/** Writes a snapshot of all metrics as JSON object. */
+	public void writeJson(OutputStream out) throws IOException {
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.useDefaultPrettyPrinter();
+			generator.writeStartObject();
+			generator.writeNumberField("timestamp", System.currentTimeMillis());
+
+			generator.writeObjectFieldStart("pipeline");
+			generator.writeNumberField("totalTerms", totalTerms.get());
+			generator.writeNumberField("completedTerms", getCompletedTerms());
+			generator.writeNumberField("termsPerSecond", getTermsPerSecond());
+			generator.writeNumberField("etaSeconds", getEtaSeconds());
+			writeGauges(generator, pipelineGauges);
+			generator.writeEndObject();
+
+			generator.writeObjectFieldStart("sources");
+			for (Map.Entry<SearchSource, SourceMetrics> e : sources.entrySet()) {
+				generator.writeFieldName(e.getKey().getKey());
+				e.getValue().writeJson(generator);
+			}
+			generator.writeEndObject();
+
+			generator.writeObjectFieldStart("sink");
+			writeGauges(generator, sinkGauges);
+			generator.writeFieldName("writeLatency");
+			sinkWriteLatency.writeJson(generator);
+			generator.writeEndObject();
+
+			generator.writeEndObject();
+		}
+	}
+
+	private static void writeGauges(JsonGenerator generator, Map<String, LongSupplier> gauges) throws IOException {
+		for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+			generator.writeNumberField(e.getKey(), e.getValue().getAsLong());
+		}
+	}
+}
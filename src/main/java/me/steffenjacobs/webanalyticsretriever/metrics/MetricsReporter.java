@@ -0,0 +1,125 @@
+package me.steffenjacobs.webanalyticsretriever.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Makes the {@link MetricsRegistry} available while a run is in progress:
+ * served as JSON by a local HTTP endpoint at /metrics and/or dumped
+ * periodically to a JSON file. The file is replaced atomically, so that it can
+ * be read at any time.
+ * 
+ * @author Steffen Jacobs
+ */
+public class MetricsReporter implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(MetricsReporter.class);
+
+	private final MetricsRegistry registry;
+	private final HttpServer server;
+	private final ScheduledExecutorService dumper;
+	private final File dumpFile;
+
+	/**
+	 * @param registry
+	 *            the metrics to report.
+	 * @param httpPort
+	 *            the port of the HTTP endpoint on the loopback interface, 0 for
+	 *            any free port or -1 for no HTTP endpoint.
+	 * @param dumpFile
+	 *            the JSON file to dump the metrics to or null for no dump.
+	 * @param dumpIntervalMillis
+	 *            the interval between two dumps.
+	 */
+	public MetricsReporter(MetricsRegistry registry, int httpPort, File dumpFile, long dumpIntervalMillis) throws IOException {
+		this.registry = registry;
+		this.dumpFile = dumpFile;
+		if (httpPort >= 0) {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+			server.createContext("/metrics", this::handle);
+			server.start();
+			LOG.info("Serving metrics at http://{}:{}/metrics", server.getAddress().getHostString(), server.getAddress().getPort());
+		} else {
+			server = null;
+		}
+		if (dumpFile != null) {
+			dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+				final Thread thread = new Thread(r, "metrics-dump");
+				thread.setDaemon(true);
+				return thread;
+			});
+			dumper.scheduleWithFixedDelay(this::dump, dumpIntervalMillis, dumpIntervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			dumper = null;
+		}
+	}
+
+	/** @return the port of the HTTP endpoint or -1 if there is none. */
+	public int getPort() {
+		return server != null ? server.getAddress().getPort() : -1;
+	}
+
+	/** Stops the HTTP endpoint and dumps the final metrics. */
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+		}
+		if (dumper != null) {
+			dumper.shutdownNow();
+			try {
+				dumper.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			dump();
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			final ByteArrayOutputStream json = new ByteArrayOutputStream();
+			registry.writeJson(json);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(200, json.size());
+			try (OutputStream out = exchange.getResponseBody()) {
+				json.writeTo(out);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void dump() {
+		final Path target = dumpFile.toPath();
+		final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				registry.writeJson(out);
+			}
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOG.error("Could not dump the metrics to {}: {}", dumpFile, e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package me.steffenjacobs.webanalyticsretriever.metrics;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * The metrics of the requests to a single search engine: the number of
+ * requests, their latencies, the errors by {@link ErrorType}, the retries and
+ * the requests currently in flight. Further values, e.g. the queue depth or the
+ * cache hits, are registered as gauges that are read on demand.
+ * 
+ * @author Steffen Jacobs
+ */
+public class SourceMetrics {
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong succeeded = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final Map<ErrorType, AtomicLong> errors = new EnumMap<>(ErrorType.class);
+	private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+	public SourceMetrics() {
+		// all counters exist from the start, so the map is never modified
+		for (ErrorType type : ErrorType.values()) {
+			errors.put(type, new AtomicLong());
+		}
+	}
+
+	/** @return the start time to pass to {@link #onRequestCompleted}. */
+	public long onRequestStarted() {
+		requests.incrementAndGet();
+		inFlight.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	public void onRequestCompleted(long startNanos, boolean success) {
+		latency.record(System.nanoTime() - startNanos);
+		inFlight.decrementAndGet();
+		(success ? succeeded : failed).incrementAndGet();
+	}
+
+	public void onError(ErrorType type) {
+		errors.get(type).incrementAndGet();
+	}
+
+	public void onRetry() {
+		retries.incrementAndGet();
+	}
+
+	/** Registers a value that is read whenever the metrics are reported. */
+	public void setGauge(String name, LongSupplier gauge) {
+		gauges.put(name, gauge);
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getSucceeded() {
+		return succeeded.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	public long getErrors(ErrorType type) {
+		return errors.get(type).get();
+	}
+
+	public long getRetries() {
+		return retries.get();
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	void writeJson(JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("requests", getRequests());
+		generator.writeNumberField("succeeded", getSucceeded());
+		generator.writeNumberField("failed", getFailed());
+		generator.writeNumberField("inFlight", getInFlight());
+		generator.writeNumberField("retries", getRetries());
+		generator.writeObjectFieldStart("errors");
+		for (Map.Entry<ErrorType, AtomicLong> e : errors.entrySet()) {
+			generator.writeNumberField(e.getKey().getKey(), e.getValue().get());
+		}
+		generator.writeEndObject();
+		for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+			generator.writeNumberField(e.getKey(), e.getValue().getAsLong());
+		}
+		generator.writeFieldName("latency");
+		latency.writeJson(generator);
+		generator.writeEndObject();
+	}
+}
@@ -0,0 +1,192 @@
+package me.steffenjacobs.webanalyticsretriever.pipeline;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+
+/**
+ * Append-only journal of the progress of a single run of the
+ * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever}. It
+ * records every retrieved {@link ResultPart} and every term that has been
+ * written to the output file. Records are synced to disk in batches. If the
+ * process dies, the next run with the same terms continues with the same term
+ * order and output file and skips everything that has already been retrieved.
+ * 
+ * @author Steffen Jacobs
+ */
+public class CheckpointJournal implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(CheckpointJournal.class);
+
+	private static final String HEADER = "H";
+	private static final String PART = "P";
+	private static final String DONE = "D";
+
+	private final File file;
+	private final int syncBatchSize;
+	private final long seed;
+	private final String outputFilename;
+	private final Map<String, Map<ResultPart, Long>> completedParts = new HashMap<>();
+	private final Set<String> doneTerms = new HashSet<>();
+	private final boolean resumed;
+	private final FileOutputStream out;
+	private final Writer writer;
+	private int unsynced;
+
+	/**
+	 * Opens the journal and resumes the recorded run if it has been started with
+	 * the same terms, else starts a new run.
+	 * 
+	 * @param file
+	 *            the journal file.
+	 * @param fingerprint
+	 *            identifies the terms of the run.
+	 * @param outputFilename
+	 *            the output file of a new run.
+	 * @param seed
+	 *            the seed of the term order of a new run. A resumed run uses
+	 *            the recorded seed.
+	 * @param syncBatchSize
+	 *            the number of records after which the journal is synced to disk.
+	 */
+	public CheckpointJournal(File file, String fingerprint, String outputFilename, long seed, int syncBatchSize) throws IOException {
+		this.file = file;
+		this.syncBatchSize = syncBatchSize;
+
+		final String[] header = file.exists() ? readHeader(file) : null;
+		resumed = header != null && header[2].equals(fingerprint);
+		if (resumed) {
+			this.seed = Long.parseLong(header[1]);
+			this.outputFilename = header[3];
+			load();
+			LOG.warn("Resuming the interrupted run recorded in {} with {} completed terms, appending to {}. Delete {} to start a new run instead.", file,
+					doneTerms.size(), this.outputFilename, file);
+		} else {
+			if (header != null) {
+				LOG.info("Discarding checkpoint journal {} of a run with other terms.", file);
+			}
+			this.seed = seed;
+			this.outputFilename = outputFilename;
+		}
+
+		out = new FileOutputStream(file, resumed);
+		writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		if (!resumed) {
+			write(HEADER, Long.toString(seed), fingerprint, outputFilename);
+			sync();
+		}
+	}
+
+	/** @return true, if a previous run has been resumed. */
+	public boolean isResumed() {
+		return resumed;
+	}
+
+	/** @return the seed to shuffle the terms with. */
+	public long getSeed() {
+		return seed;
+	}
+
+	public String getOutputFilename() {
+		return outputFilename;
+	}
+
+	/** @return true, if the term has already been written to the output. */
+	public boolean isDone(String term) {
+		return doneTerms.contains(term);
+	}
+
+	/** @return the parts of the term that have already been retrieved. */
+	public Map<ResultPart, Long> getCompletedParts(String term) {
+		return completedParts.getOrDefault(term, Collections.emptyMap());
+	}
+
+	/** Records a successfully retrieved part of a term. */
+	public synchronized void recordPart(String term, ResultPart part, long count) {
+		if (count != -1) {
+			write(PART, part.name(), Long.toString(count), term);
+		}
+	}
+
+	/** Records that the results of the term have been written to the output. */
+	public synchronized void recordDone(String term) {
+		write(DONE, term);
+	}
+
+	/** Deletes the journal after the run has been completed. */
+	public synchronized void complete() throws IOException {
+		close();
+		Files.deleteIfExists(file.toPath());
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		sync();
+		writer.close();
+	}
+
+	private void write(String... fields) {
+		try {
+			writer.write(String.join("\t", fields));
+			writer.write('\n');
+			if (++unsynced >= syncBatchSize) {
+				sync();
+			}
+		} catch (IOException e) {
+			LOG.error("Could not write checkpoint journal: {}", e.getMessage(), e);
+		}
+	}
+
+	private void sync() throws IOException {
+		if (out.getChannel().isOpen()) {
+			writer.flush();
+			out.getFD().sync();
+			unsynced = 0;
+		}
+	}
+
+	/** @return the fields of the header record or null, if there is none. */
+	private static String[] readHeader(File file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			final String line = reader.readLine();
+			final String[] split = line == null ? null : line.split("\t", 4);
+			return split != null && split.length == 4 && HEADER.equals(split[0]) ? split : null;
+		}
+	}
+
+	private void load() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] split = line.split("\t", 4);
+				try {
+					if (PART.equals(split[0]) && split.length == 4) {
+						completedParts.computeIfAbsent(split[3], t -> new EnumMap<>(ResultPart.class)).put(ResultPart.valueOf(split[1]), Long.parseLong(split[2]));
+					} else if (DONE.equals(split[0]) && split.length == 2) {
+						doneTerms.add(split[1]);
+						completedParts.remove(split[1]);
+					}
+				} catch (IllegalArgumentException e) {
+					// the last record may be incomplete after a crash
+					LOG.warn("Skipping invalid checkpoint record: {}", line);
+				}
+			}
+		}
+	}
+}
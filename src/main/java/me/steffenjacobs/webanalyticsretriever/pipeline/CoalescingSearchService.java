@@ -0,0 +1,142 @@
+package me.steffenjacobs.webanalyticsretriever.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.steffenjacobs.webanalyticsretriever.AsyncSearchService;
+import me.steffenjacobs.webanalyticsretriever.SearchCount;
+import me.steffenjacobs.webanalyticsretriever.SearchService;
+
+/**
+ * Sends each distinct query only once to the wrapped {@link SearchService}.
+ * Concurrent searches for the same query wait for the search already in flight
+ * (single flight), without blocking a thread, and repeated searches are answered with the earlier result.
+ * Queries are compared after normalizing whitespaces and case, except for the
+ * operators of the exact search. Failed searches are not remembered, so that
+ * they are retried with the next request.
+ *
+ * @author Steffen Jacobs
+ */
+public class CoalescingSearchService implements AsyncSearchService {
+
+	private final SearchService delegate;
+	private final Map<String, CompletableFuture<SearchCount>> inFlight = new ConcurrentHashMap<>();
+	private final Map<String, SearchCount> completed;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong joined = new AtomicLong();
+	private final AtomicLong repeated = new AtomicLong();
+
+	/**
+	 * @param delegate
+	 *            the service to send the distinct queries to.
+	 * @param maxCompleted
+	 *            the number of results remembered for repeated searches. The
+	 *            least recently used results are forgotten first.
+	 */
+	public CoalescingSearchService(SearchService delegate, int maxCompleted) {
+		this.delegate = delegate;
+		this.completed = new LinkedHashMap<String, SearchCount>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SearchCount> eldest) {
+				return size() > maxCompleted;
+			}
+		};
+	}
+
+	@Override
+	public CompletableFuture<SearchCount> searchAsync(String query, Executor executor) {
+		requests.incrementAndGet();
+		final String key = normalize(query);
+		final SearchCount count = getCompleted(key);
+		if (count != null) {
+			repeated.incrementAndGet();
+			return CompletableFuture.completedFuture(count);
+		}
+
+		final CompletableFuture<SearchCount> future = new CompletableFuture<>();
+		final CompletableFuture<SearchCount> running = inFlight.putIfAbsent(key, future);
+		if (running != null) {
+			joined.incrementAndGet();
+			return running;
+		}
+		// the previous search may have completed in the meantime
+		final SearchCount previous = getCompleted(key);
+		if (previous != null) {
+			repeated.incrementAndGet();
+			inFlight.remove(key, future);
+			future.complete(previous);
+			return future;
+		}
+		AsyncSearchService.searchAsync(delegate, query, executor).whenComplete((result, e) -> {
+			if (e == null && result.getCount() != -1) {
+				synchronized (completed) {
+					completed.put(key, result);
+				}
+			}
+			inFlight.remove(key, future);
+			if (e != null) {
+				future.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+			} else {
+				future.complete(result);
+			}
+		});
+		return future;
+	}
+
+	@Override
+	public void dispose() {
+		delegate.dispose();
+	}
+
+	/** @return the number of all searches. */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/** @return the number of searches that waited for an identical search. */
+	public long getJoined() {
+		return joined.get();
+	}
+
+	/** @return the number of searches answered with an earlier result. */
+	public long getRepeated() {
+		return repeated.get();
+	}
+
+	@Override
+	public String toString() {
+		final long n = getRequests();
+		return String.format("%d requests, %d joined in flight, %d repeated (%.1f%% de-duplicated)", n, getJoined(), getRepeated(),
+				n > 0 ? 100.0 * (getJoined() + getRepeated()) / n : 0);
+	}
+
+	/**
+	 * @return the query in lower case with single spaces between the words. The
+	 *         operators AND and OR stay upper case, because they are only
+	 *         recognized as such in upper case.
+	 */
+	static String normalize(String query) {
+		final StringBuilder sb = new StringBuilder(query.length());
+		for (String word : query.trim().split("\\s+")) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append("AND".equals(word) || "OR".equals(word) ? word : word.toLowerCase(Locale.ROOT));
+		}
+		return sb.toString();
+	}
+
+	private SearchCount getCompleted(String key) {
+		synchronized (completed) {
+			return completed.get(key);
+		}
+	}
+}
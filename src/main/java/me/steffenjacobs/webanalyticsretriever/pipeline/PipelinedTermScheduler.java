@@ -0,0 +1,217 @@
+package me.steffenjacobs.webanalyticsretriever.pipeline;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.AsyncSearchService;
+import me.steffenjacobs.webanalyticsretriever.SearchCount;
+import me.steffenjacobs.webanalyticsretriever.SearchService;
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * Schedules the search requests of many terms over one dedicated
+ * {@link SourceExecutor} per {@link SearchSource}. Fast sources are not held back by
+ * slow ones: each source works through its own queue and the
+ * {@link SearchResults} of a term are assembled as soon as all its
+ * {@link ResultPart parts} have arrived. The number of terms in flight is
+ * limited, so {@link #submit(String)} blocks as long as the slowest source
+ * lags behind by that many terms. The searches of an {@link AsyncSearchService}
+ * only occupy an executor thread until the request is sent; the parts are
+ * completed on the executor again once the response has been parsed, so that
+ * the cache, the journal and the consumer never block the I/O threads.
+ * 
+ * @author Steffen Jacobs
+ */
+public class PipelinedTermScheduler implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(PipelinedTermScheduler.class);
+
+	private final Map<SearchSource, SearchService> services;
+	private final Map<SearchSource, SourceExecutor> executors;
+	private final Consumer<SearchResults> consumer;
+	private final Semaphore inFlightTerms;
+	private final int maxInFlightTerms;
+	private volatile PartListener partListener = (term, part, count) -> {
+	};
+
+	/**
+	 * @param services
+	 *            the {@link SearchService} to use for each {@link SearchSource}.
+	 * @param executors
+	 *            the dedicated {@link SourceExecutor} for each
+	 *            {@link SearchSource}. They are closed together with this
+	 *            scheduler.
+	 * @param maxInFlightTerms
+	 *            the maximum number of terms that are submitted but not yet
+	 *            delivered to the consumer.
+	 * @param consumer
+	 *            receives the assembled {@link SearchResults}. It is never called
+	 *            concurrently.
+	 */
+	public PipelinedTermScheduler(Map<SearchSource, SearchService> services, Map<SearchSource, SourceExecutor> executors, int maxInFlightTerms,
+			Consumer<SearchResults> consumer) {
+		this.services = new EnumMap<>(services);
+		this.consumer = consumer;
+		this.maxInFlightTerms = maxInFlightTerms;
+		this.inFlightTerms = new Semaphore(maxInFlightTerms);
+		this.executors = new EnumMap<>(executors);
+	}
+
+	/**
+	 * Enqueues the search requests for the given {@link String term}. Blocks
+	 * while the maximum number of terms is in flight.
+	 */
+	public void submit(String term) throws InterruptedException {
+		submit(term, Collections.emptyMap());
+	}
+
+	/**
+	 * Enqueues the search requests for the given {@link String term}, except for
+	 * the {@link ResultPart parts} that are already known. Blocks while the
+	 * maximum number of terms is in flight.
+	 */
+	public void submit(String term, Map<ResultPart, Long> knownParts) throws InterruptedException {
+		inFlightTerms.acquire();
+		final PendingTerm pending = new PendingTerm(term, knownParts);
+		if (pending.remaining.get() == 0) {
+			pending.deliver();
+			return;
+		}
+		for (ResultPart part : ResultPart.values()) {
+			if (part.isRequiredFor(term) && !knownParts.containsKey(part)) {
+				final SourceExecutor executor = executors.get(part.getSource());
+				executor.execute(() -> search(part, term, executor).thenAccept(count -> {
+					// cached counts are answered by the cache again after a restart
+					if (!count.isCached()) {
+						partListener.onPart(term, part, count.getCount());
+					}
+					if (part == ResultPart.REDDIT) {
+						pending.redditYears = count.getYears();
+					}
+					pending.complete(part, count);
+				}));
+			}
+		}
+	}
+
+	/** Sets the {@link PartListener} notified about every retrieved part. */
+	public void setPartListener(PartListener partListener) {
+		this.partListener = partListener;
+	}
+
+	/** Blocks until the results of all submitted terms have been delivered. */
+	public void awaitCompletion() throws InterruptedException {
+		inFlightTerms.acquire(maxInFlightTerms);
+		inFlightTerms.release(maxInFlightTerms);
+	}
+
+	/** Stops the worker threads of all sources. */
+	@Override
+	public void close() {
+		executors.values().forEach(SourceExecutor::close);
+	}
+
+	/** @return the number of submitted terms whose results are not delivered yet. */
+	public int getInFlightTerms() {
+		return maxInFlightTerms - inFlightTerms.availablePermits();
+	}
+
+	public Map<SearchSource, SourceExecutor> getExecutors() {
+		return Collections.unmodifiableMap(executors);
+	}
+
+	/**
+	 * Starts the search on the calling executor thread. The thread is released
+	 * as soon as the request is sent, if the service is an
+	 * {@link AsyncSearchService}, and the response is handed back to the
+	 * executor.
+	 */
+	private CompletableFuture<SearchCount> search(ResultPart part, String term, SourceExecutor executor) {
+		return AsyncSearchService.searchAsync(services.get(part.getSource()), part.toQuery(term), executor).exceptionally(e -> {
+			final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+			LOG.error("Could not retrieve {} for search term {}: {}", part, term, cause.getMessage(), cause);
+			return SearchCount.FAILED;
+		});
+	}
+
+	private void deliver(SearchResults results) {
+		try {
+			synchronized (consumer) {
+				consumer.accept(results);
+			}
+		} catch (RuntimeException e) {
+			LOG.error(e.getMessage(), e);
+		} finally {
+			inFlightTerms.release();
+		}
+	}
+
+	/** Is notified about each retrieved {@link ResultPart} of a term. */
+	@FunctionalInterface
+	public interface PartListener {
+		void onPart(String term, ResultPart part, long count);
+	}
+
+	/** Collects the result counts of a single term until all parts arrived. */
+	private class PendingTerm {
+		private final String term;
+		private final AtomicLongArray counts = new AtomicLongArray(ResultPart.values().length);
+		private final AtomicInteger remaining = new AtomicInteger();
+		private final Set<ResultPart> cachedParts = ConcurrentHashMap.newKeySet();
+		private volatile YearHistogram redditYears;
+
+		PendingTerm(String term, Map<ResultPart, Long> knownParts) {
+			this.term = term;
+			for (ResultPart part : ResultPart.values()) {
+				if (!part.isRequiredFor(term)) {
+					continue;
+				}
+				if (knownParts.containsKey(part)) {
+					set(part, knownParts.get(part));
+				} else {
+					remaining.incrementAndGet();
+				}
+			}
+		}
+
+		void complete(ResultPart part, SearchCount count) {
+			set(part, count.getCount());
+			if (count.isCached()) {
+				cachedParts.add(part);
+				if (part == ResultPart.GOOGLE_WEB_SEARCH && !ResultPart.GOOGLE_WEB_SEARCH_EXACT.isRequiredFor(term)) {
+					cachedParts.add(ResultPart.GOOGLE_WEB_SEARCH_EXACT);
+				}
+			}
+			if (remaining.decrementAndGet() == 0) {
+				deliver();
+			}
+		}
+
+		void deliver() {
+			PipelinedTermScheduler.this.deliver(new SearchResults(term, counts.get(ResultPart.REDDIT.ordinal()), counts.get(ResultPart.GOOGLE_SEARCH_API.ordinal()),
+					counts.get(ResultPart.GOOGLE_WEB_SEARCH.ordinal()), counts.get(ResultPart.GOOGLE_WEB_SEARCH_EXACT.ordinal()), redditYears, cachedParts));
+		}
+
+		private void set(ResultPart part, long count) {
+			counts.set(part.ordinal(), count);
+			if (part == ResultPart.GOOGLE_WEB_SEARCH && !ResultPart.GOOGLE_WEB_SEARCH_EXACT.isRequiredFor(term)) {
+				// the exact search equals the regular search for terms without whitespaces
+				counts.set(ResultPart.GOOGLE_WEB_SEARCH_EXACT.ordinal(), count);
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package me.steffenjacobs.webanalyticsretriever.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A named, fixed-size worker pool with a bounded queue dedicated to a single
+ * search source. Tasks submitted to a full queue are counted as rejections and
+ * block the submitter until there is room again. On Java 21 and newer, the
+ * workers can be virtual threads, which is cheap for sources that mostly wait
+ * for HTTP responses.
+ * 
+ * @author Steffen Jacobs
+ */
+public class SourceExecutor implements Executor, AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(SourceExecutor.class);
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong rejections = new AtomicLong();
+	private final boolean virtualThreads;
+
+	/**
+	 * @param name
+	 *            the name of the pool, used as prefix for the thread names.
+	 * @param threads
+	 *            the number of worker threads.
+	 * @param queueCapacity
+	 *            the maximum number of queued tasks.
+	 * @param virtualThreads
+	 *            true, if virtual threads should be used if the JVM supports them.
+	 */
+	public SourceExecutor(String name, int threads, int queueCapacity, boolean virtualThreads) {
+		this.name = name;
+		ThreadFactory threadFactory = virtualThreads ? createVirtualThreadFactory(name) : null;
+		this.virtualThreads = threadFactory != null;
+		if (threadFactory == null) {
+			threadFactory = createPlatformThreadFactory(name);
+		}
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), threadFactory, new BlockingPolicy());
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		executor.execute(command);
+	}
+
+	/** Stops all worker threads and discards the queued tasks. */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public int getPoolSize() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/** @return the number of tasks waiting for a worker thread. */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/** @return the number of worker threads currently executing a task. */
+	public int getActiveThreads() {
+		return executor.getActiveCount();
+	}
+
+	public long getCompletedTasks() {
+		return executor.getCompletedTaskCount();
+	}
+
+	/** @return how often a task could not be queued immediately. */
+	public long getRejections() {
+		return rejections.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[threads=%d%s, active=%d, queued=%d, completed=%d, rejected=%d]", name, getPoolSize(), virtualThreads ? " (virtual)" : "",
+				getActiveThreads(), getQueueDepth(), getCompletedTasks(), getRejections());
+	}
+
+	private static ThreadFactory createPlatformThreadFactory(String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			final Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * @return a factory for virtual threads or null, if the JVM does not support
+	 *         them. Reflection is used so that the application still runs on Java
+	 *         8.
+	 */
+	private static ThreadFactory createVirtualThreadFactory(String name) {
+		try {
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.info("Virtual threads are not supported by this JVM, using platform threads for {}.", name);
+			return null;
+		}
+	}
+
+	/** Counts the rejection and blocks until the task fits into the queue. */
+	private class BlockingPolicy implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+			if (e.isShutdown()) {
+				throw new RejectedExecutionException(name + " has been shut down.");
+			}
+			rejections.incrementAndGet();
+			try {
+				final BlockingQueue<Runnable> queue = e.getQueue();
+				queue.put(r);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException("Interrupted while waiting for " + name, ex);
+			}
+		}
+	}
+}
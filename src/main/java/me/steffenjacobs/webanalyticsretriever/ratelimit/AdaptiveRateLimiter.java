@@ -0,0 +1,176 @@
+package me.steffenjacobs.webanalyticsretriever.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token bucket rate limiter for a single search engine that adapts its rate to
+ * the signals of the search engine (additive increase, multiplicative
+ * decrease): every successful request raises the rate slightly up to the
+ * maximum rate, every throttling signal (HTTP 403/429, captcha) cuts the rate
+ * and blocks all requests for a back-off time that doubles with every further
+ * signal. Optionally, a {@link RequestQuota} such as a {@link DailyQuota} limits
+ * the total number of requests.
+ * 
+ * @author Steffen Jacobs
+ */
+public class AdaptiveRateLimiter {
+	private static final Logger LOG = LoggerFactory.getLogger(AdaptiveRateLimiter.class);
+	private static final double DECREASE_FACTOR = 0.5;
+	private static final int MAX_BACKOFF_DOUBLINGS = 5;
+
+	private final String name;
+	private final double minRate;
+	private final double maxRate;
+	private final double burst;
+	private final long backoffNanos;
+	private final RequestQuota quota;
+	private final long created = System.nanoTime();
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong throttledNanos = new AtomicLong();
+	private final AtomicLong throttleSignals = new AtomicLong();
+
+	private double rate;
+	private double tokens;
+	private long lastRefill = System.nanoTime();
+	private long blockedUntil = System.nanoTime();
+	private int consecutiveSignals;
+
+	/**
+	 * @param name
+	 *            the name of the search engine.
+	 * @param minRate
+	 *            the minimum number of requests per second.
+	 * @param maxRate
+	 *            the maximum number of requests per second or 0, if only the
+	 *            backoff after throttling signals applies.
+	 * @param burst
+	 *            the number of requests that may be issued at once.
+	 * @param backoffMillis
+	 *            the time to block requests after a throttling signal.
+	 * @param quota
+	 *            the {@link RequestQuota} or null, if there is no limit.
+	 */
+	public AdaptiveRateLimiter(String name, double minRate, double maxRate, int burst, long backoffMillis, RequestQuota quota) {
+		this.name = name;
+		this.minRate = minRate;
+		this.maxRate = maxRate;
+		this.burst = burst;
+		this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+		this.quota = quota;
+		this.rate = maxRate;
+		this.tokens = burst;
+	}
+
+	/**
+	 * Blocks until the next request may be issued.
+	 * 
+	 * @return false, if the daily quota is exhausted and the request must not be
+	 *         issued at all.
+	 */
+	public boolean acquire() throws InterruptedException {
+		if (quota != null && !quota.tryAcquire()) {
+			return false;
+		}
+		final long waitNanos = reserve();
+		if (waitNanos > 0) {
+			throttledNanos.addAndGet(waitNanos);
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+		acquired.incrementAndGet();
+		return true;
+	}
+
+	/** Raises the rate after a successful request. */
+	public synchronized void onSuccess() {
+		consecutiveSignals = 0;
+		rate = Math.min(maxRate, rate + maxRate / 10);
+	}
+
+	/**
+	 * Cuts the rate and blocks further requests after the search engine signaled
+	 * too many requests.
+	 */
+	public synchronized void onThrottled() {
+		throttleSignals.incrementAndGet();
+		if (maxRate > 0) {
+			rate = Math.max(minRate, rate * DECREASE_FACTOR);
+		}
+		final long backoff = backoffNanos << Math.min(consecutiveSignals++, MAX_BACKOFF_DOUBLINGS);
+		blockedUntil = Math.max(blockedUntil, System.nanoTime() + backoff);
+		tokens = Math.min(tokens, 0);
+		LOG.info("{} signaled too many requests, backing off for {} ms with {} requests per second.", name, TimeUnit.NANOSECONDS.toMillis(backoff),
+				maxRate > 0 ? String.format("%.3f", rate) : "unlimited");
+	}
+
+	/**
+	 * Returns the quota used by a request that has not reached the search
+	 * engine, so that it can be used by another request.
+	 */
+	public void release() {
+		if (quota != null) {
+			quota.release();
+		}
+	}
+
+	/** Marks the daily quota as exhausted after the search engine reported so. */
+	public void onQuotaExceeded() {
+		if (quota != null) {
+			quota.exhaust();
+		} else {
+			onThrottled();
+		}
+	}
+
+	/** @return the currently allowed requests per second or 0, if unlimited. */
+	public synchronized double getRate() {
+		return rate;
+	}
+
+	/** @return the requests per second actually issued since the start. */
+	public double getEffectiveRate() {
+		final double seconds = (System.nanoTime() - created) / 1e9;
+		return seconds > 0 ? acquired.get() / seconds : 0;
+	}
+
+	/** @return the total time requests have been waiting for the rate limit. */
+	public long getThrottledMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+	}
+
+	public long getThrottleSignals() {
+		return throttleSignals.get();
+	}
+
+	/** @return the remaining requests of today's quota or -1 if unlimited. */
+	public int getRemainingQuota() {
+		return quota != null ? quota.getRemaining() : -1;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[rate=%.3f/s, effective=%.3f/s, throttled=%ds, signals=%d%s]", name, getRate(), getEffectiveRate(),
+				TimeUnit.MILLISECONDS.toSeconds(getThrottledMillis()), getThrottleSignals(), quota != null ? ", quota=" + quota.getRemaining() : "");
+	}
+
+	/** Takes a token and returns the time to wait until it is available. */
+	private synchronized long reserve() {
+		final long now = System.nanoTime();
+		final long blockedWait = Math.max(0, blockedUntil - now);
+		if (maxRate <= 0) {
+			return blockedWait;
+		}
+		tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * rate);
+		lastRefill = now;
+		tokens -= 1;
+		final long tokenWait = tokens < 0 ? (long) (-tokens / rate * 1e9) : 0;
+		return blockedWait + tokenWait;
+	}
+}
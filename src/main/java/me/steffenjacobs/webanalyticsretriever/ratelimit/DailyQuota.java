@@ -0,0 +1,148 @@
+package me.steffenjacobs.webanalyticsretriever.ratelimit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the requests to a search engine with a daily request limit and
+ * persists the count, so that it survives restarts. The count is reset at
+ * midnight in the time zone of the search engine. The file must not be shared
+ * with other processes, since each process keeps its own count.
+ * 
+ * @author Steffen Jacobs
+ */
+public class DailyQuota implements RequestQuota {
+	private static final Logger LOG = LoggerFactory.getLogger(DailyQuota.class);
+
+	private final File file;
+	private final int dailyLimit;
+	private final ZoneId zone;
+	private LocalDate day;
+	private int used;
+	private boolean exhausted;
+
+	/**
+	 * @param file
+	 *            the file the count is persisted to.
+	 * @param dailyLimit
+	 *            the maximum number of requests per day.
+	 * @param zone
+	 *            the time zone in which the days start.
+	 */
+	public DailyQuota(File file, int dailyLimit, ZoneId zone) {
+		this.file = file;
+		this.dailyLimit = dailyLimit;
+		this.zone = zone;
+		this.day = LocalDate.now(zone);
+		load();
+	}
+
+	/** Uses one request of today's quota. */
+	@Override
+	public synchronized boolean tryAcquire() {
+		rollOver();
+		if (used >= dailyLimit) {
+			return false;
+		}
+		used++;
+		store();
+		return true;
+	}
+
+	/**
+	 * Uses up to the given number of requests of today's quota at once, e.g. to
+	 * hand them to another process.
+	 * 
+	 * @return the number of requests granted.
+	 */
+	public synchronized int grant(int requests) {
+		rollOver();
+		final int granted = Math.max(0, Math.min(requests, dailyLimit - used));
+		if (granted > 0) {
+			used += granted;
+			store();
+		}
+		return granted;
+	}
+
+	/**
+	 * Returns a request used today. Requests acquired on a previous day are not
+	 * returned, since the count was reset in between.
+	 */
+	@Override
+	public synchronized void release() {
+		if (!exhausted && used > 0 && LocalDate.now(zone).equals(day)) {
+			used--;
+			store();
+		}
+	}
+
+	/** Marks the quota as exhausted for today. */
+	@Override
+	public synchronized void exhaust() {
+		rollOver();
+		exhausted = true;
+		if (used < dailyLimit) {
+			used = dailyLimit;
+			store();
+		}
+	}
+
+	@Override
+	public synchronized int getRemaining() {
+		rollOver();
+		return dailyLimit - used;
+	}
+
+	private void rollOver() {
+		final LocalDate today = LocalDate.now(zone);
+		if (!today.equals(day)) {
+			day = today;
+			used = 0;
+			exhausted = false;
+		}
+	}
+
+	private void load() {
+		if (!file.exists()) {
+			return;
+		}
+		final Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			properties.load(in);
+			if (day.toString().equals(properties.getProperty("day"))) {
+				used = Integer.parseInt(properties.getProperty("used", "0"));
+			}
+		} catch (IOException | NumberFormatException e) {
+			LOG.warn("Could not load quota from {}: {}", file, e.getMessage());
+		}
+	}
+
+	private void store() {
+		final Properties properties = new Properties();
+		properties.setProperty("day", day.toString());
+		properties.setProperty("used", Integer.toString(used));
+		final File tmp = new File(file.getPath() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+			properties.store(out, null);
+		} catch (IOException e) {
+			LOG.error("Could not store quota to {}: {}", file, e.getMessage());
+			return;
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOG.error("Could not store quota to {}: {}", file, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package me.steffenjacobs.webanalyticsretriever.ratelimit;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.AsyncSearchService;
+import me.steffenjacobs.webanalyticsretriever.SearchCount;
+import me.steffenjacobs.webanalyticsretriever.SearchService;
+
+/**
+ * Issues the searches of the wrapped {@link SearchService} only as fast as the
+ * {@link AdaptiveRateLimiter} allows. Searches are skipped once the daily quota
+ * is exhausted. Failed searches whose request has not reached the search
+ * engine do not count against the quota. Other failed searches, e.g. with
+ * HTTP status 429 or 5xx, may have been counted by the search engine and are
+ * not returned to the quota.
+ * 
+ * @author Steffen Jacobs
+ */
+public class RateLimitedSearchService implements AsyncSearchService {
+	private static final Logger LOG = LoggerFactory.getLogger(RateLimitedSearchService.class);
+
+	private final SearchService delegate;
+	private final AdaptiveRateLimiter rateLimiter;
+
+	public RateLimitedSearchService(SearchService delegate, AdaptiveRateLimiter rateLimiter) {
+		this.delegate = delegate;
+		this.rateLimiter = rateLimiter;
+	}
+
+	/**
+	 * Waits on the calling thread until the {@link AdaptiveRateLimiter} allows
+	 * the search, then starts it.
+	 */
+	@Override
+	public CompletableFuture<SearchCount> searchAsync(String term, Executor executor) {
+		try {
+			if (!rateLimiter.acquire()) {
+				LOG.debug("Daily quota of {} exhausted, skipping '{}'.", rateLimiter.getName(), term);
+				return CompletableFuture.completedFuture(SearchCount.FAILED);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return CompletableFuture.completedFuture(SearchCount.FAILED);
+		}
+		return AsyncSearchService.searchAsync(delegate, term, executor).whenComplete((count, e) -> {
+			if (e == null && count.getCount() != -1) {
+				rateLimiter.onSuccess();
+			} else if (e == null && !count.isSent()) {
+				rateLimiter.release();
+			}
+		});
+	}
+
+	@Override
+	public void dispose() {
+		delegate.dispose();
+	}
+}
@@ -0,0 +1,31 @@
+package me.steffenjacobs.webanalyticsretriever.ratelimit;
+
+/**
+ * Limits the total number of requests to a search engine, e.g. to the daily
+ * limit of an API key.
+ *
+ * @author Steffen Jacobs
+ */
+public interface RequestQuota {
+
+	/**
+	 * Uses one request of the quota.
+	 *
+	 * @return false, if the quota is already exhausted.
+	 */
+	boolean tryAcquire();
+
+	/**
+	 * Returns a request acquired for a search whose request has not been sent.
+	 * Has no effect once the quota was {@link #exhaust() exhausted}.
+	 */
+	void release();
+
+	/**
+	 * Marks the quota as exhausted, e.g. because the search engine reported so.
+	 */
+	void exhaust();
+
+	/** @return the number of requests left. */
+	int getRemaining();
+}
@@ -0,0 +1,170 @@
+package me.steffenjacobs.webanalyticsretriever.sink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.metrics.LatencyHistogram;
+
+/**
+ * Decouples the threads producing {@link SearchResults} from the
+ * {@link ResultSink sinks} writing them. Results are put into a lock-free
+ * queue and written by a single background thread, which flushes the sinks
+ * when a batch is complete or the flush interval has passed. Closing this sink
+ * writes all remaining results and closes the wrapped sinks. If a sink fails,
+ * no further batches are reported as flushed and closing this sink throws the
+ * failure.
+ * 
+ * @author Steffen Jacobs
+ */
+public class AsyncResultSink implements ResultSink {
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncResultSink.class);
+
+	private final List<ResultSink> sinks;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	private final Consumer<List<SearchResults>> flushListener;
+	private final LatencyHistogram writeLatency;
+	private final Queue<SearchResults> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final Thread writerThread;
+	private volatile boolean closed;
+	private volatile IOException failure;
+
+	/**
+	 * @param sinks
+	 *            the sinks to write to.
+	 * @param batchSize
+	 *            the number of queued results that triggers a flush.
+	 * @param flushIntervalMillis
+	 *            the maximum time results stay queued.
+	 * @param flushListener
+	 *            is called with each batch of results after all sinks have
+	 *            written and flushed it. It is not called anymore after a sink
+	 *            failed, since the output of that sink is incomplete.
+	 */
+	public AsyncResultSink(List<ResultSink> sinks, int batchSize, long flushIntervalMillis, Consumer<List<SearchResults>> flushListener) {
+		this(sinks, batchSize, flushIntervalMillis, flushListener, new LatencyHistogram());
+	}
+
+	/**
+	 * Same as above, additionally records the time needed to write and flush each
+	 * batch in the given {@link LatencyHistogram}.
+	 */
+	public AsyncResultSink(List<ResultSink> sinks, int batchSize, long flushIntervalMillis, Consumer<List<SearchResults>> flushListener,
+			LatencyHistogram writeLatency) {
+		this.writeLatency = writeLatency;
+		this.sinks = new ArrayList<>(sinks);
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+		this.flushListener = flushListener;
+		writerThread = new Thread(this::run, "result-sink");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	@Override
+	public void write(SearchResults results) {
+		if (closed) {
+			throw new IllegalStateException("The result sink has been closed.");
+		}
+		queue.add(results);
+		if (queued.incrementAndGet() >= batchSize) {
+			LockSupport.unpark(writerThread);
+		}
+	}
+
+	/** @return the number of results waiting to be written. */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/** Triggers the writer thread to flush without waiting for it. */
+	@Override
+	public void flush() {
+		LockSupport.unpark(writerThread);
+	}
+
+	/**
+	 * Writes all queued results and closes the wrapped sinks.
+	 * 
+	 * @throws IOException
+	 *             if a sink could not write or flush the results.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		LockSupport.unpark(writerThread);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// in case the writer thread has been interrupted
+		drain();
+		IOException exception = failure;
+		for (ResultSink sink : sinks) {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				if (exception == null) {
+					exception = e;
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	private void run() {
+		while (!closed) {
+			LockSupport.parkNanos(this, flushIntervalNanos);
+			drain();
+		}
+		drain();
+	}
+
+	/** Writes and flushes all queued results. */
+	private synchronized void drain() {
+		final List<SearchResults> batch = new ArrayList<>();
+		SearchResults results;
+		while ((results = queue.poll()) != null) {
+			queued.decrementAndGet();
+			batch.add(results);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		final long start = System.nanoTime();
+		for (ResultSink sink : sinks) {
+			try {
+				for (SearchResults r : batch) {
+					sink.write(r);
+				}
+				sink.flush();
+			} catch (IOException e) {
+				LOG.error("Could not write results: {}", e.getMessage(), e);
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		writeLatency.record(System.nanoTime() - start);
+		if (failure == null) {
+			flushListener.accept(batch);
+		} else {
+			LOG.error("Not reporting {} results as flushed, because a sink failed.", batch.size());
+		}
+	}
+}
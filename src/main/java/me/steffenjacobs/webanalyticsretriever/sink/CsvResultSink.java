@@ -0,0 +1,70 @@
+package me.steffenjacobs.webanalyticsretriever.sink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Collectors;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+
+/**
+ * Appends {@link SearchResults} to a csv file in the format "&lt;term&gt;,
+ * &lt;reddit&gt;, &lt;google-search-api&gt;, &lt;google-websearch&gt;,
+ * &lt;google-websearch-exact&gt;[, &lt;reddit-years&gt;[, &lt;cached&gt;]]" as
+ * read by the
+ * {@link me.steffenjacobs.webanalyticsretriever.AnalyticsAggregator}. The
+ * optional column reddit-years holds the number of Reddit comments per year in
+ * the format "2015:12;2016:40" and is empty if there are none. The optional
+ * last column lists the {@link ResultPart parts} answered from the cache, e.g.
+ * "google-api;reddit", which are not observations of this run.
+ * 
+ * @author Steffen Jacobs
+ */
+public class CsvResultSink implements ResultSink {
+
+	private final Writer writer;
+
+	public CsvResultSink(File file) throws IOException {
+		writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	@Override
+	public void write(SearchResults v) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(v.getTerm());
+		sb.append(", ");
+		sb.append(v.getRedditSearchResultCount());
+		sb.append(", ");
+		sb.append(v.getGoogleSearchResultCount());
+		sb.append(", ");
+		sb.append(v.getGoogleBrowserSearchResultCount());
+		sb.append(", ");
+		sb.append(v.getGoogleBrowserExactSearchResultCount());
+		if (v.getRedditYears() != null || !v.getCachedParts().isEmpty()) {
+			sb.append(", ");
+			if (v.getRedditYears() != null) {
+				sb.append(v.getRedditYears().encode());
+			}
+		}
+		if (!v.getCachedParts().isEmpty()) {
+			sb.append(", ");
+			sb.append(v.getCachedParts().stream().map(ResultPart::getKey).collect(Collectors.joining(";")));
+		}
+		sb.append("\n");
+		writer.write(sb.toString());
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
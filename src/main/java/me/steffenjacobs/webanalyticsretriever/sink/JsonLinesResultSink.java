@@ -0,0 +1,83 @@
+package me.steffenjacobs.webanalyticsretriever.sink;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+
+/**
+ * Appends {@link SearchResults} to a file with one JSON object per line. The
+ * keys of the parts answered from the cache are listed in the field "cachedParts".
+ * 
+ * @author Steffen Jacobs
+ */
+public class JsonLinesResultSink implements ResultSink {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final Writer writer;
+	private final JsonGenerator generator;
+
+	public JsonLinesResultSink(File file) throws IOException {
+		writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		generator = JSON_FACTORY.createGenerator(writer);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+		// the objects are separated by line breaks instead
+		generator.setRootValueSeparator(null);
+	}
+
+	@Override
+	public void write(SearchResults v) throws IOException {
+		generator.writeStartObject();
+		writeFields(generator, v);
+		generator.writeEndObject();
+		generator.flush();
+		writer.write('\n');
+	}
+
+	/**
+	 * Writes the results as fields of the current JSON object, so that other
+	 * fields can be added to the object.
+	 */
+	public static void writeFields(JsonGenerator generator, SearchResults v) throws IOException {
+		generator.writeStringField("term", v.getTerm());
+		generator.writeNumberField("reddit", v.getRedditSearchResultCount());
+		generator.writeNumberField("googleSearchApi", v.getGoogleSearchResultCount());
+		generator.writeNumberField("googleWebSearch", v.getGoogleBrowserSearchResultCount());
+		generator.writeNumberField("googleWebSearchExact", v.getGoogleBrowserExactSearchResultCount());
+		if (v.getRedditYears() != null) {
+			generator.writeObjectFieldStart("redditYears");
+			for (int i = 0; i < v.getRedditYears().size(); i++) {
+				generator.writeNumberField(Integer.toString(v.getRedditYears().getYear(i)), v.getRedditYears().getCount(i));
+			}
+			generator.writeEndObject();
+		}
+		if (!v.getCachedParts().isEmpty()) {
+			generator.writeArrayFieldStart("cachedParts");
+			for (ResultPart part : v.getCachedParts()) {
+				generator.writeString(part.getKey());
+			}
+			generator.writeEndArray();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		generator.close();
+		writer.close();
+	}
+}
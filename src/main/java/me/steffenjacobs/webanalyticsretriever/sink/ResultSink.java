@@ -0,0 +1,25 @@
+package me.steffenjacobs.webanalyticsretriever.sink;
+
+import java.io.IOException;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+
+/**
+ * Destination for the {@link SearchResults} retrieved by the
+ * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever}, e.g. an
+ * output file in a certain format.
+ * 
+ * @author Steffen Jacobs
+ */
+public interface ResultSink extends AutoCloseable {
+
+	/** Writes a single {@link SearchResults}. Written results may be buffered. */
+	void write(SearchResults results) throws IOException;
+
+	/** Writes all buffered results to the underlying storage. */
+	void flush() throws IOException;
+
+	/** Flushes and releases the underlying storage. */
+	@Override
+	void close() throws IOException;
+}
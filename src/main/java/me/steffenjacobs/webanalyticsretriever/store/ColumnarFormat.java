@@ -0,0 +1,105 @@
+package me.steffenjacobs.webanalyticsretriever.store;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * Constants and variable-length integer coding of the columnar result files.
+ * <p>
+ * A file starts with a header (magic number, schema version, run timestamp),
+ * followed by blocks. Each block is written with a single flush and is framed
+ * by its length and a CRC32 checksum, so a block torn by a crash is detected
+ * and dropped. A block contains:
+ * <ol>
+ * <li>the timestamp of the flush</li>
+ * <li>the number of rows</li>
+ * <li>the terms first seen in this block, appended to the dictionary of the
+ * file</li>
+ * <li>the dictionary index of the term of each row</li>
+ * <li>the columns reddit, google-search-api, google-websearch and
+ * google-websearch-exact, each value as zigzag varint of the difference to the
+ * previous value of the column</li>
+ * <li>since schema version 2: the number of Reddit comments per year of each
+ * row as the number of years plus one (0 if not available), followed by the
+ * years as zigzag varint of the difference to the previous year and the counts
+ * as zigzag varint</li>
+ * </ol>
+ * 
+ * @author Steffen Jacobs
+ */
+final class ColumnarFormat {
+
+	static final int MAGIC = 0x57415243;
+	static final int SCHEMA_VERSION = 2;
+	/** The first schema version with the Reddit comments per year. */
+	static final int SCHEMA_VERSION_REDDIT_YEARS = 2;
+	static final int HEADER_LENGTH = 4 + 4 + 8;
+	static final int BLOCK_HEADER_LENGTH = 4 + 4;
+	static final int COLUMNS = 4;
+
+	/** The file extension of columnar result files. */
+	static final String EXTENSION = ".col";
+
+	private ColumnarFormat() {
+	}
+
+	static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint.");
+	}
+
+	static void writeHistogram(ByteArrayOutputStream out, YearHistogram histogram) {
+		if (histogram == null) {
+			writeVarLong(out, 0);
+			return;
+		}
+		writeVarLong(out, histogram.size() + 1L);
+		int previousYear = 0;
+		for (int i = 0; i < histogram.size(); i++) {
+			writeVarLong(out, zigzag(histogram.getYear(i) - previousYear));
+			writeVarLong(out, zigzag(histogram.getCount(i)));
+			previousYear = histogram.getYear(i);
+		}
+	}
+
+	static YearHistogram readHistogram(ByteBuffer buffer) {
+		final int size = (int) readVarLong(buffer) - 1;
+		if (size < 0) {
+			return null;
+		}
+		final int[] years = new int[size];
+		final long[] counts = new long[size];
+		int previousYear = 0;
+		for (int i = 0; i < size; i++) {
+			years[i] = previousYear + (int) unzigzag(readVarLong(buffer));
+			counts[i] = unzigzag(readVarLong(buffer));
+			previousYear = years[i];
+		}
+		return new YearHistogram(years, counts);
+	}
+
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
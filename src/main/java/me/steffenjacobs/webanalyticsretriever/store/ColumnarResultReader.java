@@ -0,0 +1,180 @@
+package me.steffenjacobs.webanalyticsretriever.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.aggregation.SearchResultsCsvParser.RowHandler;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * Reads a columnar result file written by the {@link ColumnarResultWriter}. The
+ * file is memory-mapped and the columns are decoded directly from the mapping.
+ * A torn block at the end of the file, e.g. after a crash, is ignored.
+ * 
+ * @author Steffen Jacobs
+ */
+public class ColumnarResultReader {
+	private static final Logger LOG = LoggerFactory.getLogger(ColumnarResultReader.class);
+
+	private final Path path;
+	private final ByteBuffer buffer;
+	private final int schemaVersion;
+	private final long runTimestamp;
+
+	private final List<String> dictionary = new ArrayList<>();
+	private final List<Long> blockTimestamps = new ArrayList<>();
+	private int validLength;
+	private boolean read;
+
+	private ColumnarResultReader(Path path, ByteBuffer buffer) throws IOException {
+		this.path = path;
+		this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+		if (buffer.limit() < ColumnarFormat.HEADER_LENGTH || buffer.getInt(0) != ColumnarFormat.MAGIC) {
+			throw new IOException(path + " is not a columnar result file.");
+		}
+		schemaVersion = buffer.getInt(4);
+		if (schemaVersion > ColumnarFormat.SCHEMA_VERSION) {
+			throw new IOException(path + " has the unsupported schema version " + schemaVersion + ".");
+		}
+		runTimestamp = buffer.getLong(8);
+		validLength = ColumnarFormat.HEADER_LENGTH;
+	}
+
+	/** Memory-maps the file at the given {@link Path path} and reads its header. */
+	public static ColumnarResultReader open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(path + " is too large.");
+			}
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new ColumnarResultReader(path, buffer);
+		}
+	}
+
+	/**
+	 * Reads the file at the given {@link Path path} into the heap instead of
+	 * mapping it, so that it can be truncated while being read.
+	 */
+	static ColumnarResultReader load(Path path) throws IOException {
+		return new ColumnarResultReader(path, ByteBuffer.wrap(Files.readAllBytes(path)));
+	}
+
+	public int getSchemaVersion() {
+		return schemaVersion;
+	}
+
+	/** @return the start of the run in milliseconds since the epoch. */
+	public long getRunTimestamp() {
+		return runTimestamp;
+	}
+
+	/**
+	 * @return the times the blocks have been written in milliseconds since the
+	 *         epoch. Available after {@link #read(RowHandler) reading} the file.
+	 */
+	public List<Long> getBlockTimestamps() {
+		return blockTimestamps;
+	}
+
+	/**
+	 * Passes each row of the file to the {@link RowHandler handler}.
+	 * 
+	 * @return the number of rows.
+	 */
+	public int read(RowHandler handler) {
+		if (read) {
+			throw new IllegalStateException("The file has already been read.");
+		}
+		read = true;
+
+		final CRC32 crc = new CRC32();
+		int rows = 0;
+		int position = ColumnarFormat.HEADER_LENGTH;
+		while (position < buffer.limit()) {
+			if (buffer.limit() - position < ColumnarFormat.BLOCK_HEADER_LENGTH) {
+				break;
+			}
+			final int length = buffer.getInt(position);
+			final int checksum = buffer.getInt(position + 4);
+			final int start = position + ColumnarFormat.BLOCK_HEADER_LENGTH;
+			if (length < 0 || buffer.limit() - start < length) {
+				break;
+			}
+
+			final ByteBuffer block = buffer.duplicate();
+			block.limit(start + length).position(start);
+			crc.reset();
+			crc.update(block.duplicate());
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			rows += readBlock(block, handler);
+			position = start + length;
+			validLength = position;
+		}
+		if (validLength < buffer.limit()) {
+			LOG.warn("Ignoring {} bytes of an incomplete block at the end of {}.", buffer.limit() - validLength, path);
+		}
+		return rows;
+	}
+
+	private int readBlock(ByteBuffer block, RowHandler handler) {
+		blockTimestamps.add(block.getLong());
+		final int rows = (int) ColumnarFormat.readVarLong(block);
+
+		final int newTerms = (int) ColumnarFormat.readVarLong(block);
+		for (int i = 0; i < newTerms; i++) {
+			final int length = (int) ColumnarFormat.readVarLong(block);
+			final byte[] bytes = new byte[length];
+			block.get(bytes);
+			dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+
+		final int[] termIds = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			termIds[i] = (int) ColumnarFormat.readVarLong(block);
+		}
+		final long[][] columns = new long[ColumnarFormat.COLUMNS][rows];
+		for (long[] column : columns) {
+			long previous = 0;
+			for (int i = 0; i < rows; i++) {
+				previous += ColumnarFormat.unzigzag(ColumnarFormat.readVarLong(block));
+				column[i] = previous;
+			}
+		}
+		final YearHistogram[] redditYears = new YearHistogram[rows];
+		if (schemaVersion >= ColumnarFormat.SCHEMA_VERSION_REDDIT_YEARS) {
+			for (int i = 0; i < rows; i++) {
+				redditYears[i] = ColumnarFormat.readHistogram(block);
+			}
+		}
+
+		for (int i = 0; i < rows; i++) {
+			handler.onRow(dictionary.get(termIds[i]), columns[0][i], columns[1][i], columns[2][i], columns[3][i], redditYears[i]);
+		}
+		return rows;
+	}
+
+	/** @return the terms of the file in order of their first occurrence. */
+	List<String> getDictionary() {
+		return dictionary;
+	}
+
+	/** @return the length of the file without an incomplete last block. */
+	int getValidLength() {
+		return validLength;
+	}
+}
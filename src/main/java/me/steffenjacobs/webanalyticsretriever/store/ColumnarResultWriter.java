@@ -0,0 +1,155 @@
+package me.steffenjacobs.webanalyticsretriever.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.sink.ResultSink;
+
+/**
+ * Appends {@link SearchResults} to a columnar result file (see
+ * {@link ColumnarFormat}). The rows are buffered and written as one block with
+ * each {@link #flush()}. If the file already exists, e.g. for a resumed run, an
+ * incomplete last block is truncated and the new blocks are appended. Counts
+ * answered from the cache are stored as missing (-1), because they have not
+ * been observed by this run.
+ * 
+ * @author Steffen Jacobs
+ */
+public class ColumnarResultWriter implements ResultSink {
+
+	private final FileChannel channel;
+	private final Map<String, Integer> dictionary = new HashMap<>();
+	private final ByteArrayOutputStream newTerms = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream termIds = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream redditYears = new ByteArrayOutputStream();
+	private final int schemaVersion;
+	private final long[][] columns = new long[ColumnarFormat.COLUMNS][];
+	private int newTermCount;
+	private int rows;
+
+	/**
+	 * @param file
+	 *            the columnar result file.
+	 * @param runTimestamp
+	 *            the start of the run, stored if the file is created.
+	 */
+	public ColumnarResultWriter(File file, long runTimestamp) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() == 0) {
+			final ByteBuffer header = ByteBuffer.allocate(ColumnarFormat.HEADER_LENGTH);
+			header.putInt(ColumnarFormat.MAGIC).putInt(ColumnarFormat.SCHEMA_VERSION).putLong(runTimestamp).flip();
+			writeFully(header);
+			schemaVersion = ColumnarFormat.SCHEMA_VERSION;
+		} else {
+			// continue with the schema version of the existing file
+			final ColumnarResultReader reader = ColumnarResultReader.load(file.toPath());
+			schemaVersion = reader.getSchemaVersion();
+			reader.read((term, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact) -> {
+			});
+			final List<String> terms = reader.getDictionary();
+			for (int i = 0; i < terms.size(); i++) {
+				dictionary.put(terms.get(i), i);
+			}
+			channel.truncate(reader.getValidLength());
+			channel.position(reader.getValidLength());
+		}
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new long[64];
+		}
+	}
+
+	@Override
+	public void write(SearchResults v) throws IOException {
+		Integer id = dictionary.get(v.getTerm());
+		if (id == null) {
+			id = dictionary.size();
+			dictionary.put(v.getTerm(), id);
+			final byte[] bytes = v.getTerm().getBytes(StandardCharsets.UTF_8);
+			ColumnarFormat.writeVarLong(newTerms, bytes.length);
+			newTerms.write(bytes, 0, bytes.length);
+			newTermCount++;
+		}
+		ColumnarFormat.writeVarLong(termIds, id);
+		if (schemaVersion >= ColumnarFormat.SCHEMA_VERSION_REDDIT_YEARS) {
+			ColumnarFormat.writeHistogram(redditYears, v.getRedditYears());
+		}
+
+		if (rows == columns[0].length) {
+			for (int i = 0; i < columns.length; i++) {
+				final long[] grown = new long[rows * 2];
+				System.arraycopy(columns[i], 0, grown, 0, rows);
+				columns[i] = grown;
+			}
+		}
+		columns[0][rows] = observed(v, ResultPart.REDDIT, v.getRedditSearchResultCount());
+		columns[1][rows] = observed(v, ResultPart.GOOGLE_SEARCH_API, v.getGoogleSearchResultCount());
+		columns[2][rows] = observed(v, ResultPart.GOOGLE_WEB_SEARCH, v.getGoogleBrowserSearchResultCount());
+		columns[3][rows] = observed(v, ResultPart.GOOGLE_WEB_SEARCH_EXACT, v.getGoogleBrowserExactSearchResultCount());
+		rows++;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (rows == 0) {
+			return;
+		}
+		final ByteArrayOutputStream block = new ByteArrayOutputStream(newTerms.size() + termIds.size() + redditYears.size() + rows * ColumnarFormat.COLUMNS * 4 + 32);
+		final ByteBuffer timestamp = ByteBuffer.allocate(8).putLong(System.currentTimeMillis());
+		block.write(timestamp.array(), 0, 8);
+		ColumnarFormat.writeVarLong(block, rows);
+		ColumnarFormat.writeVarLong(block, newTermCount);
+		newTerms.writeTo(block);
+		termIds.writeTo(block);
+		for (long[] column : columns) {
+			long previous = 0;
+			for (int i = 0; i < rows; i++) {
+				ColumnarFormat.writeVarLong(block, ColumnarFormat.zigzag(column[i] - previous));
+				previous = column[i];
+			}
+		}
+		redditYears.writeTo(block);
+
+		final byte[] payload = block.toByteArray();
+		final CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		final ByteBuffer buffer = ByteBuffer.allocate(ColumnarFormat.BLOCK_HEADER_LENGTH + payload.length);
+		buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+		writeFully(buffer);
+
+		newTerms.reset();
+		termIds.reset();
+		redditYears.reset();
+		newTermCount = 0;
+		rows = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static long observed(SearchResults v, ResultPart part, long count) {
+		return v.getCachedParts().contains(part) ? -1 : count;
+	}
+}
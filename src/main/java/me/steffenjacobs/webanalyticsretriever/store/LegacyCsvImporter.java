@@ -0,0 +1,78 @@
+package me.steffenjacobs.webanalyticsretriever.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.aggregation.SearchResultsCsvParser;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * Converts the csv files created by the
+ * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever} into
+ * columnar result files with the same name. The run timestamp is taken from the
+ * file name. Files that have already been converted are skipped, the csv files
+ * are kept.
+ * 
+ * @author Steffen Jacobs
+ */
+public class LegacyCsvImporter {
+	private static final Logger LOG = LoggerFactory.getLogger(LegacyCsvImporter.class);
+
+	private static final Pattern FILE_PATTERN = Pattern.compile("output-(\\d\\d\\d\\d-\\d\\d-\\d\\d-\\d\\d-\\d\\d)\\.csv");
+
+	/** Main entry point, optionally with the directory of the csv files. */
+	public static void main(String[] args) throws IOException, ParseException {
+		final File directory = new File(args.length > 0 ? args[0] : ".");
+		final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd-HH-mm");
+
+		final File[] files = directory.listFiles();
+		Arrays.sort(files);
+		for (File file : files) {
+			final Matcher m = FILE_PATTERN.matcher(file.getName());
+			if (!m.matches()) {
+				continue;
+			}
+			final File target = new File(directory, "output-" + m.group(1) + ColumnarFormat.EXTENSION);
+			if (target.exists()) {
+				LOG.info("Skipping {}, already converted.", file.getName());
+				continue;
+			}
+
+			final File tmp = new File(directory, target.getName() + ".tmp");
+			// the writer appends to existing files, so discard the rest of an interrupted conversion
+			Files.deleteIfExists(tmp.toPath());
+			final int rows;
+			try (ColumnarResultWriter writer = new ColumnarResultWriter(tmp, sdf.parse(m.group(1)).getTime())) {
+				rows = SearchResultsCsvParser.parse(file.toPath(), new SearchResultsCsvParser.RowHandler() {
+					@Override
+					public void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact) {
+						onRow(term, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact, null);
+					}
+
+					@Override
+					public void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact, YearHistogram redditYears) {
+						try {
+							writer.write(new SearchResults(term, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact, redditYears));
+						} catch (IOException e) {
+							throw new IllegalStateException(e);
+						}
+					}
+				});
+			}
+			if (!tmp.renameTo(target)) {
+				throw new IOException("Could not rename " + tmp + " to " + target + ".");
+			}
+			LOG.info("Converted {} rows from {} to {} ({} to {} bytes).", rows, file.getName(), target.getName(), file.length(), target.length());
+		}
+	}
+}
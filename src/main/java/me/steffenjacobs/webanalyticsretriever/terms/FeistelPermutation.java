@@ -0,0 +1,72 @@
+package me.steffenjacobs.webanalyticsretriever.terms;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded pseudo-random permutation of the numbers 0 to size - 1 that is
+ * computed on demand instead of being materialized. A balanced Feistel network
+ * permutes the smallest power of four that covers the size, values beyond the
+ * size are encrypted again (cycle walking) until they fall into the range.
+ *
+ * @author Steffen Jacobs
+ */
+final class FeistelPermutation {
+
+	private static final int ROUNDS = 4;
+
+	private final long size;
+	private final int halfBits;
+	private final long halfMask;
+	private final long[] keys = new long[ROUNDS];
+
+	FeistelPermutation(long size, long seed) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Negative size: " + size);
+		}
+		this.size = size;
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1));
+		halfBits = Math.max(1, (bits + 1) / 2);
+		halfMask = (1L << halfBits) - 1;
+		final SplittableRandom random = new SplittableRandom(seed);
+		for (int i = 0; i < ROUNDS; i++) {
+			keys[i] = random.nextLong();
+		}
+	}
+
+	long size() {
+		return size;
+	}
+
+	/** @return the value at the given position of the permutation. */
+	long apply(long position) {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+		}
+		long value = position;
+		do {
+			value = encrypt(value);
+		} while (value >= size);
+		return value;
+	}
+
+	private long encrypt(long value) {
+		long left = value >>> halfBits;
+		long right = value & halfMask;
+		for (long key : keys) {
+			final long next = left ^ (mix(right ^ key) & halfMask);
+			left = right;
+			right = next;
+		}
+		return (left << halfBits) | right;
+	}
+
+	/** The finalizer of MurmurHash3, a cheap function with good avalanche. */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}
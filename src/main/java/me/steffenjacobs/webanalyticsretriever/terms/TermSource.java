@@ -0,0 +1,228 @@
+package me.steffenjacobs.webanalyticsretriever.terms;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The search terms of a run: each platform name of the terms file on its own
+ * and extended with each marker, e.g. "openHAB" and "openHAB Smart Home".
+ * <p>
+ * The terms file is memory-mapped and scanned once. Only the position of each
+ * distinct platform name is kept, duplicate lines and blank lines are skipped.
+ * The terms are created lazily from the file when they are accessed, so the
+ * memory needed does not depend on the length of the names or the number of
+ * markers. {@link #permuted(long)} visits all terms in a seeded pseudo-random
+ * order without materializing it, so that a run can be repeated in the same
+ * order and continued at any position.
+ *
+ * @author Steffen Jacobs
+ */
+public class TermSource {
+	private static final Logger LOG = LoggerFactory.getLogger(TermSource.class);
+
+	private final MappedByteBuffer buffer;
+	private final List<String> markers;
+	private int[] offsets = new int[1024];
+	private int[] lengths = new int[1024];
+	private long[] hashes = new long[1024];
+	// open addressing table with the index of each name + 1, 0 marks a free slot
+	private int[] slots = new int[2048];
+	private int names;
+	private int duplicates;
+	private long fingerprint = 1;
+
+	private TermSource(MappedByteBuffer buffer, List<String> markers) {
+		this.buffer = buffer;
+		this.markers = new ArrayList<>(markers);
+	}
+
+	/**
+	 * Scans the terms file with one platform name per line.
+	 *
+	 * @param markers
+	 *            the key words each platform name is extended with.
+	 */
+	public static TermSource load(Path file, List<String> markers) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Terms file " + file + " is larger than 2 GB.");
+			}
+			final TermSource source = new TermSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), markers);
+			source.scan();
+			for (String marker : markers) {
+				source.fingerprint += marker.hashCode() * 0xC2B2AE3D27D4EB4FL;
+			}
+			LOG.info("Loaded {} platform names ({} duplicates skipped) with {} markers from {}.", source.names, source.duplicates, markers.size(), file);
+			return source;
+		}
+	}
+
+	/** @return the number of distinct platform names. */
+	public int getPlatformNames() {
+		return names;
+	}
+
+	/** @return the number of terms: each name on its own and with each marker. */
+	public int size() {
+		final long size = (long) names * (1 + markers.size());
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too many terms: " + size);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * @return identifies the platform names and markers independently of their
+	 *         order and of duplicates.
+	 */
+	public String getFingerprint() {
+		return Long.toHexString(fingerprint);
+	}
+
+	/**
+	 * @return the term with the given index. The terms of a platform name are
+	 *         adjacent, starting with the name on its own.
+	 */
+	public String get(int index) {
+		final int name = index / (1 + markers.size());
+		final int marker = index % (1 + markers.size());
+		final byte[] bytes = new byte[lengths[name]];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(offsets[name] + i);
+		}
+		final String platformName = new String(bytes, StandardCharsets.UTF_8);
+		return marker == 0 ? platformName : platformName + " " + markers.get(marker - 1);
+	}
+
+	/**
+	 * @return a read-only view of all terms in the pseudo-random order determined
+	 *         by the seed. The terms are created when they are accessed.
+	 */
+	public List<String> permuted(long seed) {
+		final FeistelPermutation permutation = new FeistelPermutation(size(), seed);
+		return new PermutedTerms(permutation);
+	}
+
+	private void scan() {
+		final int limit = buffer.limit();
+		int lineStart = 0;
+		while (lineStart < limit) {
+			int lineEnd = lineStart;
+			while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			final int nextLine = lineEnd + 1;
+			if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			}
+			if (!isBlank(lineStart, lineEnd)) {
+				add(lineStart, lineEnd - lineStart);
+			}
+			lineStart = nextLine;
+		}
+	}
+
+	/** Adds the name at the given position, unless it has been added before. */
+	private void add(int offset, int length) {
+		final long hash = hash(offset, length);
+		int slot = (int) (hash & (slots.length - 1));
+		while (slots[slot] != 0) {
+			final int other = slots[slot] - 1;
+			if (hashes[other] == hash && equals(other, offset, length)) {
+				duplicates++;
+				return;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+
+		if (names == offsets.length) {
+			offsets = Arrays.copyOf(offsets, names * 2);
+			lengths = Arrays.copyOf(lengths, names * 2);
+			hashes = Arrays.copyOf(hashes, names * 2);
+		}
+		offsets[names] = offset;
+		lengths[names] = length;
+		hashes[names] = hash;
+		slots[slot] = ++names;
+		// order independent, so that the same names in another order are the same run
+		fingerprint += hash * 0x9E3779B97F4A7C15L;
+
+		// keep the table at most half full
+		if (2 * names > slots.length) {
+			rehash();
+		}
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		for (int i = 0; i < names; i++) {
+			int slot = (int) (hashes[i] & (slots.length - 1));
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & (slots.length - 1);
+			}
+			slots[slot] = i + 1;
+		}
+	}
+
+	private boolean equals(int name, int offset, int length) {
+		if (lengths[name] != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(offsets[name] + i) != buffer.get(offset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** FNV-1a hash of the bytes, spread with a final mix. */
+	private long hash(int offset, int length) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < length; i++) {
+			hash ^= buffer.get(offset + i) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash ^ (hash >>> 32);
+	}
+
+	private boolean isBlank(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(buffer.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** The terms in the order of a {@link FeistelPermutation}. */
+	private class PermutedTerms extends AbstractList<String> implements RandomAccess {
+		private final FeistelPermutation permutation;
+
+		PermutedTerms(FeistelPermutation permutation) {
+			this.permutation = permutation;
+		}
+
+		@Override
+		public String get(int position) {
+			return TermSource.this.get((int) permutation.apply(position));
+		}
+
+		@Override
+		public int size() {
+			return (int) permutation.size();
+		}
+	}
+}
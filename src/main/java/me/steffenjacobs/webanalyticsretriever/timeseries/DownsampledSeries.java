@@ -0,0 +1,90 @@
+package me.steffenjacobs.webanalyticsretriever.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * A {@link TimeSeries} aggregated into buckets of a {@link Granularity}: for
+ * each bucket the start, the number of values, their average, minimum and
+ * maximum.
+ * 
+ * @author Steffen Jacobs
+ */
+public class DownsampledSeries {
+
+	private final long[] bucketStarts;
+	private final int[] counts;
+	private final long[] sums;
+	private final long[] mins;
+	private final long[] maxs;
+	private final int size;
+
+	private DownsampledSeries(long[] bucketStarts, int[] counts, long[] sums, long[] mins, long[] maxs, int size) {
+		this.bucketStarts = bucketStarts;
+		this.counts = counts;
+		this.sums = sums;
+		this.mins = mins;
+		this.maxs = maxs;
+		this.size = size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** @return the start of the bucket in milliseconds since the epoch. */
+	public long getBucketStart(int index) {
+		return bucketStarts[index];
+	}
+
+	/** @return the number of values in the bucket. */
+	public int getCount(int index) {
+		return counts[index];
+	}
+
+	public double getAverage(int index) {
+		return (double) sums[index] / counts[index];
+	}
+
+	public long getMin(int index) {
+		return mins[index];
+	}
+
+	public long getMax(int index) {
+		return maxs[index];
+	}
+
+	/** Collects values with ascending bucket starts. */
+	static class Builder {
+		private long[] bucketStarts = new long[8];
+		private int[] counts = new int[8];
+		private long[] sums = new long[8];
+		private long[] mins = new long[8];
+		private long[] maxs = new long[8];
+		private int size;
+
+		void add(long bucketStart, long value) {
+			if (size == 0 || bucketStarts[size - 1] != bucketStart) {
+				if (size == bucketStarts.length) {
+					bucketStarts = Arrays.copyOf(bucketStarts, size * 2);
+					counts = Arrays.copyOf(counts, size * 2);
+					sums = Arrays.copyOf(sums, size * 2);
+					mins = Arrays.copyOf(mins, size * 2);
+					maxs = Arrays.copyOf(maxs, size * 2);
+				}
+				bucketStarts[size] = bucketStart;
+				mins[size] = Long.MAX_VALUE;
+				maxs[size] = Long.MIN_VALUE;
+				size++;
+			}
+			final int i = size - 1;
+			counts[i]++;
+			sums[i] += value;
+			mins[i] = Math.min(mins[i], value);
+			maxs[i] = Math.max(maxs[i], value);
+		}
+
+		DownsampledSeries build() {
+			return new DownsampledSeries(bucketStarts, counts, sums, mins, maxs, size);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package me.steffenjacobs.webanalyticsretriever.timeseries;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * The size of the buckets a {@link TimeSeries} is downsampled to.
+ * 
+ * @author Steffen Jacobs
+ */
+public enum Granularity {
+	DAILY, WEEKLY;
+
+	/**
+	 * @return the start of the bucket containing the timestamp in milliseconds
+	 *         since the epoch. Weeks start on monday.
+	 */
+	public long getBucketStart(long timestamp, ZoneId zone) {
+		ZonedDateTime start = Instant.ofEpochMilli(timestamp).atZone(zone).truncatedTo(ChronoUnit.DAYS);
+		if (this == WEEKLY) {
+			start = start.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+		}
+		return start.toInstant().toEpochMilli();
+	}
+}
@@ -0,0 +1,90 @@
+package me.steffenjacobs.webanalyticsretriever.timeseries;
+
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * Search result counts of a single term and search engine, sorted by
+ * timestamp. The values are stored in primitive arrays, range scans use binary
+ * search. There is at most one value per timestamp.
+ * 
+ * @author Steffen Jacobs
+ */
+public class TimeSeries {
+
+	private long[] timestamps;
+	private long[] values;
+	private int size;
+
+	public TimeSeries() {
+		this(new long[8], new long[8], 0);
+	}
+
+	private TimeSeries(long[] timestamps, long[] values, int size) {
+		this.timestamps = timestamps;
+		this.values = values;
+		this.size = size;
+	}
+
+	/**
+	 * Adds the value at the timestamp or replaces the value already stored at
+	 * that timestamp. Adding values in chronological order is cheapest.
+	 */
+	public void put(long timestamp, long value) {
+		int index = size > 0 && timestamps[size - 1] < timestamp ? -size - 1 : Arrays.binarySearch(timestamps, 0, size, timestamp);
+		if (index >= 0) {
+			values[index] = value;
+			return;
+		}
+		index = -index - 1;
+		if (size == timestamps.length) {
+			timestamps = Arrays.copyOf(timestamps, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+		System.arraycopy(values, index, values, index + 1, size - index);
+		timestamps[index] = timestamp;
+		values[index] = value;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	public long getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @return a copy of the values with a timestamp in [from, to).
+	 */
+	public TimeSeries range(long from, long to) {
+		final int start = indexOf(from);
+		final int length = Math.max(0, indexOf(to) - start);
+		// keep a capacity of at least one, so that the copy can grow
+		final int capacity = Math.max(length, 1);
+		return new TimeSeries(Arrays.copyOfRange(timestamps, start, start + capacity), Arrays.copyOfRange(values, start, start + capacity), length);
+	}
+
+	/**
+	 * Aggregates the values into buckets of the given {@link Granularity}.
+	 */
+	public DownsampledSeries downsample(Granularity granularity, ZoneId zone) {
+		final DownsampledSeries.Builder builder = new DownsampledSeries.Builder();
+		for (int i = 0; i < size; i++) {
+			builder.add(granularity.getBucketStart(timestamps[i], zone), values[i]);
+		}
+		return builder.build();
+	}
+
+	/** @return the index of the first timestamp not before the given one. */
+	private int indexOf(long timestamp) {
+		final int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+		return index >= 0 ? index : -index - 1;
+	}
+}
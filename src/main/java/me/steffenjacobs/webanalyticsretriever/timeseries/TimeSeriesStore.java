@@ -0,0 +1,146 @@
+package me.steffenjacobs.webanalyticsretriever.timeseries;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import me.steffenjacobs.webanalyticsretriever.aggregation.OutputFiles;
+import me.steffenjacobs.webanalyticsretriever.aggregation.SearchResultsCsvParser;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+import me.steffenjacobs.webanalyticsretriever.store.ColumnarResultReader;
+
+/**
+ * Time-indexed search result counts keyed with term, {@link ResultPart search
+ * engine} and the start of the run. Additionally holds the number of Reddit
+ * comments per year of creation for each term, as returned by a single Reddit
+ * search.
+ * 
+ * @author Steffen Jacobs
+ */
+public class TimeSeriesStore {
+
+	private final Map<ResultPart, Map<String, TimeSeries>> runs = new EnumMap<>(ResultPart.class);
+	private final Map<String, TimeSeries> redditYears = new TreeMap<>();
+
+	public TimeSeriesStore() {
+		for (ResultPart part : ResultPart.values()) {
+			runs.put(part, new TreeMap<>());
+		}
+	}
+
+	/**
+	 * Loads all runs from the output files. The start of a run is taken from the
+	 * header of a columnar file or from the name of a csv file.
+	 */
+	public static TimeSeriesStore load(List<Path> files) throws IOException {
+		final TimeSeriesStore store = new TimeSeriesStore();
+		for (Path file : files) {
+			if (file.getFileName().toString().endsWith(".col")) {
+				final ColumnarResultReader reader = ColumnarResultReader.open(file);
+				reader.read(store.new RunHandler(reader.getRunTimestamp()));
+			} else {
+				SearchResultsCsvParser.parse(file, store.new RunHandler(OutputFiles.getRunTimestamp(file)));
+			}
+		}
+		return store;
+	}
+
+	/** Adds the search results of a single run. Values equal to -1 are ignored. */
+	public void addRun(String term, long timestamp, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact) {
+		add(term, ResultPart.REDDIT, timestamp, reddit);
+		add(term, ResultPart.GOOGLE_SEARCH_API, timestamp, googleSearchApi);
+		add(term, ResultPart.GOOGLE_WEB_SEARCH, timestamp, googleWebSearch);
+		add(term, ResultPart.GOOGLE_WEB_SEARCH_EXACT, timestamp, googleWebSearchExact);
+	}
+
+	/** Adds a single search result. Values equal to -1 are ignored. */
+	public void add(String term, ResultPart part, long timestamp, long value) {
+		if (value != -1) {
+			runs.get(part).computeIfAbsent(term.trim(), t -> new TimeSeries()).put(timestamp, value);
+		}
+	}
+
+	/**
+	 * Stores the number of Reddit comments per year of creation for the term.
+	 * Counts of more recent searches replace those of older ones, because
+	 * comments are added over time.
+	 */
+	public void putRedditYears(String term, YearHistogram years) {
+		final TimeSeries series = redditYears.computeIfAbsent(term.trim(), t -> new TimeSeries());
+		for (int i = 0; i < years.size(); i++) {
+			series.put(years.getYear(i), years.getCount(i));
+		}
+	}
+
+	/**
+	 * @return the search results of the term over all runs, or an empty series.
+	 */
+	public TimeSeries get(String term, ResultPart part) {
+		final TimeSeries series = runs.get(part).get(term);
+		return series != null ? series : new TimeSeries();
+	}
+
+	/**
+	 * @return the search results of the term of all runs started in [from, to).
+	 */
+	public TimeSeries query(String term, ResultPart part, long from, long to) {
+		return get(term, part).range(from, to);
+	}
+
+	/**
+	 * @return the search results of all runs started in [from, to), keyed with
+	 *         the term and sorted by term. Terms without results in this window
+	 *         are omitted.
+	 */
+	public Map<String, TimeSeries> query(ResultPart part, long from, long to) {
+		final Map<String, TimeSeries> result = new TreeMap<>();
+		for (Map.Entry<String, TimeSeries> e : runs.get(part).entrySet()) {
+			final TimeSeries range = e.getValue().range(from, to);
+			if (range.size() > 0) {
+				result.put(e.getKey(), range);
+			}
+		}
+		return result;
+	}
+
+	/** Adds the rows of the output file of a single run. */
+	private class RunHandler implements SearchResultsCsvParser.RowHandler {
+		private final long timestamp;
+
+		RunHandler(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		@Override
+		public void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact) {
+			onRow(term, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact, null);
+		}
+
+		@Override
+		public void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact, YearHistogram redditYears) {
+			addRun(term, timestamp, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact);
+			if (redditYears != null) {
+				putRedditYears(term, redditYears);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of Reddit comments per year of creation, the timestamp
+	 *         being the year, or an empty series.
+	 */
+	public TimeSeries getRedditYears(String term) {
+		final TimeSeries series = redditYears.get(term);
+		return series != null ? series : new TimeSeries();
+	}
+
+	/** @return the terms with Reddit comments per year, sorted. */
+	public Map<String, TimeSeries> getRedditYears() {
+		return Collections.unmodifiableMap(redditYears);
+	}
+}
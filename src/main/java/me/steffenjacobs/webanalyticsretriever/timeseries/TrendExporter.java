@@ -0,0 +1,84 @@
+package me.steffenjacobs.webanalyticsretriever.timeseries;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import me.steffenjacobs.webanalyticsretriever.aggregation.OutputFiles;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+
+/**
+ * Main entry point for the export of the trend of the search results of each
+ * term over the runs of the
+ * {@link me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever}. The runs
+ * are downsampled to daily or weekly buckets. Configured with system
+ * properties:
+ * <ul>
+ * <li>"trends.granularity": "daily" or "weekly" (default)</li>
+ * <li>"trends.from" and "trends.to": the first and the last day of the runs to
+ * export (yyyy-MM-dd), default: all</li>
+ * <li>"trends.term": export only this term, default: all terms</li>
+ * <li>"trends.time-zone": the time zone of the buckets, default: the system
+ * time zone</li>
+ * </ul>
+ * 
+ * @author Steffen Jacobs
+ */
+public class TrendExporter {
+	private static final Logger LOG = LoggerFactory.getLogger(TrendExporter.class);
+
+	private static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd-HH-mm");
+
+	/*** Main entry point */
+	public static void main(String[] args) throws IOException {
+		final Granularity granularity = Granularity.valueOf(System.getProperty("trends.granularity", "weekly").toUpperCase(Locale.ROOT));
+		final ZoneId zone = ZoneId.of(System.getProperty("trends.time-zone", ZoneId.systemDefault().getId()));
+		final String fromProperty = System.getProperty("trends.from");
+		final String toProperty = System.getProperty("trends.to");
+		final long from = fromProperty != null ? LocalDate.parse(fromProperty).atStartOfDay(zone).toInstant().toEpochMilli() : Long.MIN_VALUE;
+		final long to = toProperty != null ? LocalDate.parse(toProperty).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() : Long.MAX_VALUE;
+		final String term = System.getProperty("trends.term");
+
+		final TimeSeriesStore store = TimeSeriesStore.load(OutputFiles.find(new File(".")));
+
+		final StringBuilder sb = new StringBuilder("name,source,bucket,runs,average,min,max\n");
+		for (ResultPart part : ResultPart.values()) {
+			final Map<String, TimeSeries> series = term != null ? Collections.singletonMap(term, store.query(term, part, from, to)) : store.query(part, from, to);
+			for (Map.Entry<String, TimeSeries> e : series.entrySet()) {
+				final DownsampledSeries buckets = e.getValue().downsample(granularity, zone);
+				for (int i = 0; i < buckets.size(); i++) {
+					sb.append(e.getKey());
+					sb.append(",");
+					sb.append(part.name());
+					sb.append(",");
+					sb.append(Instant.ofEpochMilli(buckets.getBucketStart(i)).atZone(zone).toLocalDate());
+					sb.append(",");
+					sb.append(buckets.getCount(i));
+					sb.append(",");
+					sb.append(buckets.getAverage(i));
+					sb.append(",");
+					sb.append(buckets.getMin(i));
+					sb.append(",");
+					sb.append(buckets.getMax(i));
+					sb.append("\n");
+				}
+			}
+		}
+
+		final String filename = "output-trends-" + sdf.format(Calendar.getInstance().getTime()) + ".csv";
+		FileUtils.write(new File(filename), sb.toString(), StandardCharsets.UTF_8);
+		LOG.info("Exported {} trends to file '{}'.", granularity.name().toLowerCase(Locale.ROOT), filename);
+	}
+}
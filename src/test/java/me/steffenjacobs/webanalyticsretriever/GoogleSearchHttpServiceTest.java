@@ -0,0 +1,142 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.PropertyResourceBundle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.jsoup.Jsoup;
+
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.metrics.ErrorType;
+import me.steffenjacobs.webanalyticsretriever.metrics.SourceMetrics;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.AdaptiveRateLimiter;
+
+/**
+ * Tests the {@link GoogleSearchHttpService} and the {@link GoogleResultPage}
+ * with recorded Google WebSearch pages served by a local HTTP server.
+ *
+ * @author Steffen Jacobs
+ */
+public class GoogleSearchHttpServiceTest extends TestCase {
+
+	private static final String RESULT_PAGE = "result-page.html";
+	private static final String REDIRECTED_PAGE = "redirected-page.html";
+	private static final String CAPTCHA_PAGE = "captcha-page.html";
+
+	/** The pages to answer with, the last one is repeated. */
+	private final Deque<String> pages = new ArrayDeque<>();
+	private final AtomicInteger requests = new AtomicInteger();
+	private HttpServer server;
+	private CloseableHttpClient client;
+	private AdaptiveRateLimiter rateLimiter;
+	private SourceMetrics metrics;
+	private GoogleSearchHttpService service;
+
+	@Override
+	protected void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/search", exchange -> {
+			requests.incrementAndGet();
+			final String page;
+			synchronized (pages) {
+				page = pages.size() > 1 ? pages.poll() : pages.peek();
+			}
+			final byte[] body = load(page);
+			exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+			try (OutputStream out = exchange.getResponseBody()) {
+				exchange.sendResponseHeaders(200, body.length);
+				out.write(body);
+			} catch (IOException e) {
+				// the service aborts as soon as it found the count
+			} finally {
+				exchange.close();
+			}
+		});
+		server.start();
+		client = HttpClientFactory.createPooledClient(new Settings(new PropertyResourceBundle(new StringReader(""))));
+		rateLimiter = new AdaptiveRateLimiter("google-web", 0, 0, 1, 10, null);
+		metrics = new SourceMetrics();
+		service = new GoogleSearchHttpService("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/search", client,
+				rateLimiter, metrics);
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		client.close();
+		server.stop(0);
+	}
+
+	public void testParsesResultCount() {
+		pages.add(RESULT_PAGE);
+
+		assertEquals(1240000, service.search("Thingworx"));
+		assertEquals(1, requests.get());
+		assertEquals(0, rateLimiter.getThrottleSignals());
+	}
+
+	public void testCountsRedirectedSearchAsNoResults() {
+		pages.add(REDIRECTED_PAGE);
+
+		assertEquals(0, service.search("thingwerks"));
+	}
+
+	public void testRetriesAfterCaptcha() {
+		pages.addAll(Arrays.asList(CAPTCHA_PAGE, RESULT_PAGE));
+
+		assertEquals(1240000, service.search("Thingworx"));
+		assertEquals(2, requests.get());
+		assertEquals(1, rateLimiter.getThrottleSignals());
+		assertEquals(1, metrics.getErrors(ErrorType.CAPTCHA));
+		assertEquals(1, metrics.getRetries());
+	}
+
+	public void testFailsOnSecondCaptcha() {
+		pages.add(CAPTCHA_PAGE);
+
+		assertEquals(-1, service.search("Thingworx"));
+		assertEquals(2, requests.get());
+		assertEquals(2, rateLimiter.getThrottleSignals());
+		assertEquals(2, metrics.getErrors(ErrorType.CAPTCHA));
+	}
+
+	/** Scanning the elements must give the same result as parsing the page. */
+	public void testScanMatchesParsedDocument() throws IOException {
+		for (String page : Arrays.asList(RESULT_PAGE, REDIRECTED_PAGE, CAPTCHA_PAGE)) {
+			final String html = new String(load(page), StandardCharsets.UTF_8);
+			final GoogleResultPage scanned;
+			try (InputStreamReader reader = new InputStreamReader(getClass().getResourceAsStream("/google/" + page), StandardCharsets.UTF_8)) {
+				scanned = GoogleResultPage.scan(reader);
+			}
+			final GoogleResultPage parsed = GoogleResultPage.fromDocument(Jsoup.parse(html));
+
+			assertEquals(page, parsed.getResultCount(), scanned.getResultCount());
+			assertEquals(page, parsed.getResultStats() == null, scanned.getResultStats() == null);
+		}
+	}
+
+	private static byte[] load(String page) throws IOException {
+		try (InputStream in = GoogleSearchHttpServiceTest.class.getResourceAsStream("/google/" + page)) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package me.steffenjacobs.webanalyticsretriever;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PropertyResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.loadtest.LatencyDistribution;
+import me.steffenjacobs.webanalyticsretriever.loadtest.StubSearchServer;
+import me.steffenjacobs.webanalyticsretriever.metrics.SourceMetrics;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.AdaptiveRateLimiter;
+
+/**
+ * Tests the asynchronous {@link RedditSearchResultService} against a
+ * {@link StubSearchServer}.
+ *
+ * @author Steffen Jacobs
+ */
+public class RedditSearchResultServiceTest extends TestCase {
+
+	private StubSearchServer server;
+	private CloseableHttpAsyncClient client;
+	private ExecutorService executor;
+
+	@Override
+	protected void setUp() throws IOException {
+		final Map<SearchSource, StubSearchServer.Behavior> behaviors = new EnumMap<>(SearchSource.class);
+		behaviors.put(SearchSource.REDDIT, new StubSearchServer.Behavior(LatencyDistribution.fixed(0), 0, 0, -1));
+		server = new StubSearchServer(0, 1, behaviors);
+		server.start();
+		client = HttpClientFactory.createAsyncClient(new Settings(new PropertyResourceBundle(new StringReader(""))));
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		executor.shutdownNow();
+		client.close();
+		server.close();
+	}
+
+	public void testDecompressesGzipResponses() throws Exception {
+		final HttpResponse response = HttpClientFactory.execute(client, new HttpGet(server.getBaseUrl(SearchSource.REDDIT) + "?q=test")).get();
+
+		assertEquals("gzip", response.getFirstHeader("Content-Encoding").getValue());
+		assertTrue(JsonResultExtractor.extractRedditYears(response.getEntity().getContent()).getTotal() > 0);
+	}
+
+	public void testCompletesOnExecutor() throws Exception {
+		final RedditSearchResultService service = new RedditSearchResultService(server.getBaseUrl(SearchSource.REDDIT), client,
+				new AdaptiveRateLimiter("reddit", 1, 1, 1, 100, null), new SourceMetrics());
+		final AtomicInteger handedOver = new AtomicInteger();
+		final SearchCount count = service.searchAsync("test", r -> {
+			handedOver.incrementAndGet();
+			executor.execute(r);
+		}).get();
+
+		assertTrue(count.getCount() > 0);
+		assertEquals(count.getCount(), count.getYears().getTotal());
+		assertEquals(1, handedOver.get());
+		assertEquals(count.getCount(), service.search("test"));
+	}
+
+	public void testSkipsBucketsWithoutKey() throws IOException {
+		final String json = "{\"aggs\":{\"created_utc\":[{\"key\":1451606400,\"doc_count\":40},{\"doc_count\":7},{\"key\":1420070400,\"doc_count\":12}]}}";
+
+		assertEquals("2015:12;2016:40", JsonResultExtractor.extractRedditYears(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))).encode());
+	}
+}
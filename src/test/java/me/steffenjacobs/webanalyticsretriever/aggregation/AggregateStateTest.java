@@ -0,0 +1,149 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+import me.steffenjacobs.webanalyticsretriever.sink.CsvResultSink;
+
+/**
+ * Tests that the incrementally updated {@link AggregateState} equals a fresh
+ * {@link ParallelAggregator#aggregate(List, int) aggregation} of the same files
+ * when files are added, changed or removed between the runs.
+ *
+ * @author Steffen Jacobs
+ */
+public class AggregateStateTest extends TestCase {
+
+	private static final int FILES = 6;
+	private static final int TERMS = 30;
+	private static final double DELTA = 1e-9;
+
+	private final Random random = new Random(7);
+	private final List<Path> files = new ArrayList<>();
+	private File directory;
+	private File stateFile;
+
+	@Override
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("aggregate-state").toFile();
+		stateFile = new File(directory, "aggregate.state");
+		for (int i = 0; i < FILES; i++) {
+			final File file = new File(directory, String.format("output-2019-08-%02d-10-00.csv", i + 1));
+			write(file);
+			files.add(file.toPath());
+		}
+	}
+
+	@Override
+	protected void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testStoredStateRoundTrips() throws IOException {
+		final PartialAggregate stored = new AggregateState(stateFile).update(files, 2);
+
+		// no new files: the loaded aggregate is returned without parsing anything
+		final PartialAggregate loaded = new AggregateState(stateFile).update(files, 2);
+		assertEquals(stored.getRows(), loaded.getRows());
+		assertEquals(stored.getFiles(), loaded.getFiles());
+		assertEquals(stored.getStatistics().keySet(), loaded.getStatistics().keySet());
+		for (Map.Entry<String, TermStatistics> e : stored.getStatistics().entrySet()) {
+			final TermStatistics actual = loaded.getStatistics().get(e.getKey());
+			for (ResultPart part : ResultPart.values()) {
+				assertIdentical(e.getValue().get(part), actual.get(part));
+			}
+			assertEquals(e.getValue().getRedditYears().keySet(), actual.getRedditYears().keySet());
+			for (Map.Entry<Integer, RunningStatistics> year : e.getValue().getRedditYears().entrySet()) {
+				assertIdentical(year.getValue(), actual.getRedditYears().get(year.getKey()));
+			}
+		}
+	}
+
+	public void testAddedFileIsMergedIntoStoredState() throws IOException {
+		new AggregateState(stateFile).update(files.subList(0, FILES - 2), 2);
+
+		final PartialAggregate updated = new AggregateState(stateFile).update(files, 2);
+		assertSameAggregate(ParallelAggregator.aggregate(files, 2), updated);
+	}
+
+	public void testChangedFileRebuildsState() throws IOException {
+		new AggregateState(stateFile).update(files, 2);
+		final File changed = files.get(1).toFile();
+		write(changed);
+		Files.setLastModifiedTime(changed.toPath(), FileTime.fromMillis(changed.lastModified() + 10000));
+
+		final PartialAggregate updated = new AggregateState(stateFile).update(files, 2);
+		assertSameAggregate(ParallelAggregator.aggregate(files, 2), updated);
+	}
+
+	public void testRemovedFileRebuildsState() throws IOException {
+		new AggregateState(stateFile).update(files, 2);
+		Files.delete(files.remove(2));
+
+		final PartialAggregate updated = new AggregateState(stateFile).update(files, 2);
+		assertSameAggregate(ParallelAggregator.aggregate(files, 2), updated);
+	}
+
+	private void write(File file) throws IOException {
+		try (CsvResultSink sink = new CsvResultSink(file)) {
+			for (int t = 0; t < TERMS; t++) {
+				sink.write(new SearchResults("Platform" + t, count(), count(), count(), count(),
+						random.nextBoolean() ? YearHistogram.parse("2015:" + random.nextInt(1000) + ";2016:" + random.nextInt(1000)) : null));
+			}
+		}
+	}
+
+	private static void assertSameAggregate(PartialAggregate expected, PartialAggregate actual) {
+		assertEquals(expected.getRows(), actual.getRows());
+		assertEquals(expected.getFiles(), actual.getFiles());
+		assertEquals(expected.getStatistics().keySet(), actual.getStatistics().keySet());
+		for (Map.Entry<String, TermStatistics> e : expected.getStatistics().entrySet()) {
+			final TermStatistics statistics = actual.getStatistics().get(e.getKey());
+			for (ResultPart part : ResultPart.values()) {
+				assertEquals(e.getValue().get(part), statistics.get(part));
+			}
+			assertEquals(e.getValue().getRedditYears().keySet(), statistics.getRedditYears().keySet());
+			for (Map.Entry<Integer, RunningStatistics> year : e.getValue().getRedditYears().entrySet()) {
+				assertEquals(year.getValue(), statistics.getRedditYears().get(year.getKey()));
+			}
+		}
+	}
+
+	/** The files may be merged in another order, so the moments may differ slightly. */
+	private static void assertEquals(RunningStatistics expected, RunningStatistics actual) {
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getSum(), actual.getSum());
+		assertEquals(expected.getMin(), actual.getMin());
+		assertEquals(expected.getMax(), actual.getMax());
+		assertEquals(expected.getMean(), actual.getMean(), DELTA * Math.max(1, Math.abs(expected.getMean())));
+		assertEquals(expected.getM2(), actual.getM2(), DELTA * Math.max(1, expected.getM2()));
+	}
+
+	private static void assertIdentical(RunningStatistics expected, RunningStatistics actual) {
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getSum(), actual.getSum());
+		assertEquals(expected.getMin(), actual.getMin());
+		assertEquals(expected.getMax(), actual.getMax());
+		assertEquals(Double.doubleToLongBits(expected.getMean()), Double.doubleToLongBits(actual.getMean()));
+		assertEquals(Double.doubleToLongBits(expected.getM2()), Double.doubleToLongBits(actual.getM2()));
+	}
+
+	/** @return a search result count or -1 for a failed search. */
+	private long count() {
+		return random.nextInt(8) == 0 ? -1 : random.nextInt(1_000_000);
+	}
+}
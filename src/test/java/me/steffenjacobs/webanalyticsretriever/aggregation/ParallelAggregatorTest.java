@@ -0,0 +1,153 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+import me.steffenjacobs.webanalyticsretriever.sink.CsvResultSink;
+import me.steffenjacobs.webanalyticsretriever.store.ColumnarResultReader;
+import me.steffenjacobs.webanalyticsretriever.store.ColumnarResultWriter;
+
+/**
+ * Tests that the {@link ParallelAggregator} computes the same statistics as
+ * adding all rows of the same files one after another to a single
+ * {@link TermStatistics} per term.
+ *
+ * @author Steffen Jacobs
+ */
+public class ParallelAggregatorTest extends TestCase {
+
+	private static final int FILES = 12;
+	private static final int TERMS = 50;
+	private static final double DELTA = 1e-9;
+
+	private final List<Path> files = new ArrayList<>();
+	private File directory;
+
+	@Override
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("aggregator").toFile();
+		final Random random = new Random(42);
+		for (int i = 0; i < FILES; i++) {
+			final List<SearchResults> rows = new ArrayList<>();
+			for (int t = 0; t < TERMS; t++) {
+				rows.add(new SearchResults("Platform" + t, count(random), count(random), count(random), count(random),
+						random.nextBoolean() ? YearHistogram.parse("2015:" + random.nextInt(1000) + ";2016:" + random.nextInt(1000)) : null,
+						random.nextInt(10) == 0 ? EnumSet.of(ResultPart.GOOGLE_SEARCH_API) : EnumSet.noneOf(ResultPart.class)));
+			}
+			// the csv and the columnar format are aggregated alike
+			if (i % 3 == 0) {
+				final File file = new File(directory, String.format("output-2019-08-%02d-10-00.col", i + 1));
+				try (ColumnarResultWriter writer = new ColumnarResultWriter(file, 0)) {
+					for (SearchResults row : rows) {
+						writer.write(row);
+					}
+				}
+				files.add(file.toPath());
+			} else {
+				final File file = new File(directory, String.format("output-2019-08-%02d-10-00.csv", i + 1));
+				try (CsvResultSink sink = new CsvResultSink(file)) {
+					for (SearchResults row : rows) {
+						sink.write(row);
+					}
+				}
+				files.add(file.toPath());
+			}
+		}
+	}
+
+	@Override
+	protected void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testMatchesSequentialAggregation() throws IOException {
+		final Map<String, TermStatistics> expected = new HashMap<>();
+		long rows = 0;
+		for (Path file : files) {
+			rows += PartialAggregate.parse(file).getRows();
+			final SearchResultsCsvParser.RowHandler handler = new SearchResultsCsvParser.RowHandler() {
+				@Override
+				public void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact) {
+					onRow(term, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact, null);
+				}
+
+				@Override
+				public void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact, YearHistogram redditYears) {
+					final TermStatistics statistics = expected.computeIfAbsent(term, t -> new TermStatistics());
+					statistics.add(reddit, googleSearchApi, googleWebSearch, googleWebSearchExact);
+					if (redditYears != null) {
+						statistics.addRedditYears(redditYears);
+					}
+				}
+			};
+			if (file.toString().endsWith(".col")) {
+				ColumnarResultReader.open(file).read(handler);
+			} else {
+				SearchResultsCsvParser.parse(file, handler);
+			}
+		}
+
+		final PartialAggregate aggregate = ParallelAggregator.aggregate(files, 4);
+		assertEquals(FILES * TERMS, rows);
+		assertEquals(rows, aggregate.getRows());
+		assertEquals(FILES, aggregate.getFiles());
+		assertEquals(expected.keySet(), aggregate.getStatistics().keySet());
+		for (Map.Entry<String, TermStatistics> e : expected.entrySet()) {
+			final TermStatistics actual = aggregate.getStatistics().get(e.getKey());
+			for (ResultPart part : ResultPart.values()) {
+				assertEquals(e.getValue().get(part), actual.get(part));
+			}
+			assertEquals(e.getValue().getRedditYears().keySet(), actual.getRedditYears().keySet());
+			for (Map.Entry<Integer, RunningStatistics> year : e.getValue().getRedditYears().entrySet()) {
+				assertEquals(year.getValue(), actual.getRedditYears().get(year.getKey()));
+			}
+		}
+	}
+
+	public void testSameResultForAnyNumberOfThreads() throws IOException {
+		final PartialAggregate sequential = ParallelAggregator.aggregate(files, 1);
+		for (int threads = 2; threads <= 8; threads *= 2) {
+			final PartialAggregate parallel = ParallelAggregator.aggregate(files, threads);
+			assertEquals(sequential.getRows(), parallel.getRows());
+			for (Map.Entry<String, TermStatistics> e : sequential.getStatistics().entrySet()) {
+				for (ResultPart part : ResultPart.values()) {
+					final RunningStatistics expected = e.getValue().get(part);
+					final RunningStatistics actual = parallel.getStatistics().get(e.getKey()).get(part);
+					assertEquals(expected.getCount(), actual.getCount());
+					assertEquals(Double.doubleToLongBits(expected.getAverage()), Double.doubleToLongBits(actual.getAverage()));
+					assertEquals(Double.doubleToLongBits(expected.getVariance()), Double.doubleToLongBits(actual.getVariance()));
+				}
+			}
+		}
+	}
+
+	private static void assertEquals(RunningStatistics expected, RunningStatistics actual) {
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getSum(), actual.getSum());
+		assertEquals(expected.getMin(), actual.getMin());
+		assertEquals(expected.getMax(), actual.getMax());
+		assertEquals(expected.getAverage(), actual.getAverage(), DELTA * Math.max(1, Math.abs(expected.getAverage())));
+		assertEquals(expected.getVariance(), actual.getVariance(), DELTA * Math.max(1, expected.getVariance()));
+		assertEquals(expected.getNormalizedStandardDeviation(), actual.getNormalizedStandardDeviation(), DELTA);
+	}
+
+	/** @return a search result count or -1 for a failed search. */
+	private static long count(Random random) {
+		return random.nextInt(8) == 0 ? -1 : random.nextInt(1_000_000);
+	}
+}
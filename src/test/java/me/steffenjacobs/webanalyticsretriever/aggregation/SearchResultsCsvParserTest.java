@@ -0,0 +1,59 @@
+package me.steffenjacobs.webanalyticsretriever.aggregation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+import me.steffenjacobs.webanalyticsretriever.sink.CsvResultSink;
+
+/**
+ * Tests that the {@link SearchResultsCsvParser} reads the rows written by the
+ * {@link CsvResultSink} and reports counts answered from the cache as missing.
+ *
+ * @author Steffen Jacobs
+ */
+public class SearchResultsCsvParserTest extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = File.createTempFile("output", ".csv");
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+	}
+
+	public void testReportsCachedCountsAsMissing() throws IOException {
+		try (CsvResultSink sink = new CsvResultSink(file)) {
+			sink.write(new SearchResults("a", 1, 2, 3, 4, YearHistogram.parse("2015:1")));
+			sink.write(new SearchResults("b", 1, 2, 3, 4, null, EnumSet.of(ResultPart.GOOGLE_SEARCH_API, ResultPart.GOOGLE_WEB_SEARCH_EXACT)));
+			sink.write(new SearchResults("c", 1, 2, 3, 4, YearHistogram.parse("2015:1"), EnumSet.of(ResultPart.REDDIT)));
+		}
+
+		final List<String> rows = new ArrayList<>();
+		assertEquals(3, SearchResultsCsvParser.parse(file.toPath(), new SearchResultsCsvParser.RowHandler() {
+			@Override
+			public void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact) {
+				onRow(term, reddit, googleSearchApi, googleWebSearch, googleWebSearchExact, null);
+			}
+
+			@Override
+			public void onRow(String term, long reddit, long googleSearchApi, long googleWebSearch, long googleWebSearchExact, YearHistogram redditYears) {
+				rows.add(term + " " + reddit + " " + googleSearchApi + " " + googleWebSearch + " " + googleWebSearchExact + " "
+						+ (redditYears != null ? redditYears.encode() : "-"));
+			}
+		}));
+
+		assertEquals(Arrays.asList("a 1 2 3 4 2015:1", "b 1 -1 3 -1 -", "c -1 2 3 4 2015:1"), rows);
+	}
+}
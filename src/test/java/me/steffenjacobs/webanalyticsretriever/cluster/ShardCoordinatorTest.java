@@ -0,0 +1,264 @@
+package me.steffenjacobs.webanalyticsretriever.cluster;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.PropertyResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+import me.steffenjacobs.webanalyticsretriever.Settings;
+import me.steffenjacobs.webanalyticsretriever.WebAnalyticsRetriever;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.loadtest.LatencyDistribution;
+import me.steffenjacobs.webanalyticsretriever.loadtest.StubSearchServer;
+import me.steffenjacobs.webanalyticsretriever.ratelimit.DailyQuota;
+
+/**
+ * Tests that a {@link ShardCoordinator} delivers the results of each term
+ * exactly once, with several {@link ShardWorker workers} retrieving from a
+ * {@link StubSearchServer} and with scripted workers whose leases expire or who
+ * disconnect.
+ *
+ * @author Steffen Jacobs
+ */
+public class ShardCoordinatorTest extends TestCase {
+
+	private static final long TIMEOUT_SECONDS = 60;
+
+	private final Map<String, List<SearchResults>> delivered = new ConcurrentHashMap<>();
+	private ExecutorService executor;
+	private File quotaFile;
+	private InetSocketAddress address;
+
+	@Override
+	protected void setUp() throws IOException {
+		executor = Executors.newCachedThreadPool();
+		quotaFile = File.createTempFile("quota", ".properties");
+		quotaFile.delete();
+		try (ServerSocket socket = new ServerSocket(0)) {
+			address = new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+		}
+	}
+
+	@Override
+	protected void tearDown() {
+		executor.shutdownNow();
+		quotaFile.delete();
+	}
+
+	public void testDeliversEachTermOnceWithSeveralWorkers() throws Exception {
+		final Map<SearchSource, StubSearchServer.Behavior> behaviors = new EnumMap<>(SearchSource.class);
+		for (SearchSource source : SearchSource.values()) {
+			behaviors.put(source, new StubSearchServer.Behavior(LatencyDistribution.fixed(1), 0, 0, -1));
+		}
+		final List<String> terms = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			terms.add("Platform" + i);
+		}
+
+		try (StubSearchServer server = new StubSearchServer(0, 4, behaviors)) {
+			server.start();
+			final List<Future<Boolean>> workers = new ArrayList<>();
+			try (ShardCoordinator coordinator = new ShardCoordinator(terms, term -> false, 7, 5000, new DailyQuota(quotaFile, 60, ZoneId.of("UTC")))) {
+				final Future<Boolean> run = executor.submit(() -> coordinator.run(address, this::deliver));
+				for (int i = 0; i < 3; i++) {
+					workers.add(executor.submit(() -> runWorker(server)));
+				}
+
+				assertTrue(run.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			}
+			for (Future<Boolean> worker : workers) {
+				assertTrue(worker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			}
+		}
+
+		assertDeliveredOnce(terms);
+		int googleApiResults = 0;
+		for (List<SearchResults> results : delivered.values()) {
+			final SearchResults v = results.get(0);
+			assertTrue(v.getRedditSearchResultCount() >= 0);
+			assertTrue(v.getGoogleBrowserSearchResultCount() >= 0);
+			if (v.getGoogleSearchResultCount() >= 0) {
+				googleApiResults++;
+			}
+		}
+		// the workers share the daily quota of the coordinator
+		assertEquals(60, googleApiResults);
+	}
+
+	public void testRequeuesExpiredLeaseAndDeliversLateResultsOnce() throws Exception {
+		final List<String> terms = Arrays.asList("a", "b", "c", "d");
+		try (ShardCoordinator coordinator = new ShardCoordinator(terms, term -> false, 4, 300, new DailyQuota(quotaFile, 100, ZoneId.of("UTC")))) {
+			final Future<Boolean> run = executor.submit(() -> coordinator.run(address, this::deliver));
+			try (ScriptedWorker stuck = new ScriptedWorker(); ScriptedWorker next = new ScriptedWorker()) {
+				assertEquals(Arrays.asList(0, 1, 2, 3), stuck.lease());
+				stuck.sendResult(0, 1);
+
+				// the remaining terms are leased again once the lease expired
+				assertEquals(Arrays.asList(1, 2, 3), next.lease());
+				stuck.sendResult(1, 1);
+				stuck.sendResult(2, 1);
+				awaitDelivered(3);
+				for (int position = 1; position < 4; position++) {
+					next.sendResult(position, 2);
+				}
+
+				assertTrue(run.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			}
+		}
+
+		assertDeliveredOnce(terms);
+		assertEquals(1, delivered.get("a").get(0).getRedditSearchResultCount());
+		assertEquals(1, delivered.get("b").get(0).getRedditSearchResultCount());
+		assertEquals(1, delivered.get("c").get(0).getRedditSearchResultCount());
+		assertEquals(2, delivered.get("d").get(0).getRedditSearchResultCount());
+	}
+
+	public void testRequeuesLeaseOfDisconnectedWorker() throws Exception {
+		final List<String> terms = Arrays.asList("a", "b", "c");
+		try (ShardCoordinator coordinator = new ShardCoordinator(terms, term -> false, 3, 60000, new DailyQuota(quotaFile, 100, ZoneId.of("UTC")))) {
+			final Future<Boolean> run = executor.submit(() -> coordinator.run(address, this::deliver));
+			try (ScriptedWorker crashing = new ScriptedWorker()) {
+				assertEquals(Arrays.asList(0, 1, 2), crashing.lease());
+				crashing.sendResult(0, 1);
+				awaitDelivered(1);
+			}
+			try (ScriptedWorker next = new ScriptedWorker()) {
+				assertEquals(Arrays.asList(1, 2), next.lease());
+				next.sendResult(1, 2);
+				next.sendResult(2, 2);
+				assertTrue(run.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			}
+		}
+
+		assertDeliveredOnce(terms);
+	}
+
+	private boolean runWorker(StubSearchServer server) throws IOException, InterruptedException {
+		final Properties properties = new Properties();
+		properties.setProperty("cluster.mode", "worker");
+		properties.setProperty("google-api-key", "test");
+		properties.setProperty("google-api.base-url", server.getBaseUrl(SearchSource.GOOGLE_SEARCH_API));
+		properties.setProperty("reddit.base-url", server.getBaseUrl(SearchSource.REDDIT));
+		properties.setProperty("google-web-search.base-url", server.getBaseUrl(SearchSource.GOOGLE_WEB_SEARCH));
+		properties.setProperty("google-web-search.backend", "http");
+		for (SearchSource source : SearchSource.values()) {
+			properties.setProperty("rate-limit." + source.getKey() + ".max-per-second", "100000");
+			properties.setProperty("rate-limit." + source.getKey() + ".burst", "1000");
+		}
+		final StringWriter writer = new StringWriter();
+		properties.store(writer, null);
+
+		final WebAnalyticsRetriever retriever = new WebAnalyticsRetriever();
+		retriever.init(new Settings(new PropertyResourceBundle(new StringReader(writer.toString()))));
+		try {
+			return new ShardWorker(retriever, address, 1000, 10000, retriever.getLeasedQuota()).run();
+		} finally {
+			retriever.close();
+		}
+	}
+
+	private void deliver(SearchResults v) {
+		delivered.computeIfAbsent(v.getTerm(), term -> new ArrayList<>()).add(v);
+		synchronized (delivered) {
+			delivered.notifyAll();
+		}
+	}
+
+	private void awaitDelivered(int terms) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+		synchronized (delivered) {
+			while (delivered.size() < terms) {
+				final long millis = deadline - System.currentTimeMillis();
+				assertTrue("Timed out waiting for " + terms + " terms.", millis > 0);
+				delivered.wait(millis);
+			}
+		}
+	}
+
+	private void assertDeliveredOnce(List<String> terms) {
+		assertEquals(terms.size(), delivered.size());
+		for (String term : terms) {
+			assertEquals(term, 1, delivered.get(term).size());
+		}
+	}
+
+	/** Talks to the coordinator with the {@link ShardProtocol} step by step. */
+	private class ScriptedWorker implements AutoCloseable {
+		private final Socket socket;
+		private final BufferedReader reader;
+		private final Writer writer;
+
+		ScriptedWorker() throws IOException, InterruptedException {
+			socket = connect();
+			reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+		}
+
+		/** Waits for the coordinator to accept connections. */
+		private Socket connect() throws IOException, InterruptedException {
+			final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+			while (true) {
+				try {
+					return new Socket(address.getAddress(), address.getPort());
+				} catch (ConnectException e) {
+					if (System.currentTimeMillis() > deadline) {
+						throw e;
+					}
+					Thread.sleep(50);
+				}
+			}
+		}
+
+		/** Requests leases until the coordinator grants one. */
+		List<Integer> lease() throws IOException, InterruptedException {
+			while (true) {
+				ShardProtocol.write(writer, ShardProtocol.LEASE);
+				final String[] message = ShardProtocol.read(reader, 4);
+				if (ShardProtocol.WAIT.equals(message[0])) {
+					Thread.sleep(Long.parseLong(message[1]) / 5);
+					continue;
+				}
+				assertEquals(ShardProtocol.BATCH, message[0]);
+				final List<Integer> positions = new ArrayList<>();
+				for (int i = Integer.parseInt(message[2]); i > 0; i--) {
+					positions.add(Integer.parseInt(ShardProtocol.read(reader, 3)[1]));
+				}
+				return positions;
+			}
+		}
+
+		void sendResult(int position, long count) throws IOException {
+			ShardProtocol.write(writer, ShardProtocol.encodeResult(position, new SearchResults("", count, count, count, count)));
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+}
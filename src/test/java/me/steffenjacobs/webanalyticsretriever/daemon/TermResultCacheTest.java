@@ -0,0 +1,52 @@
+package me.steffenjacobs.webanalyticsretriever.daemon;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.ResultPart;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.YearHistogram;
+
+/**
+ * Tests that the {@link TermResultCache} keeps results with failed searches,
+ * so that only the failed parts are retrieved again.
+ *
+ * @author Steffen Jacobs
+ */
+public class TermResultCacheTest extends TestCase {
+
+	private final TermResultCache cache = new TermResultCache(10, 60000);
+
+	public void testCachesResultsWithFailedSearch() {
+		cache.put(new SearchResults("Platform IoT", 1, -1, 3, 4, YearHistogram.parse("2015:1")));
+
+		final TermResultCache.CachedResults cached = cache.get("Platform IoT");
+		assertNotNull(cached);
+		assertFalse(cached.isComplete());
+		final Map<ResultPart, Long> known = new EnumMap<>(ResultPart.class);
+		known.put(ResultPart.REDDIT, 1L);
+		known.put(ResultPart.GOOGLE_WEB_SEARCH, 3L);
+		known.put(ResultPart.GOOGLE_WEB_SEARCH_EXACT, 4L);
+		assertEquals(known, cached.getKnownParts());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	public void testKeepsRedditYearsWhenOnlyFailedPartsAreRetrieved() {
+		cache.put(new SearchResults("Platform IoT", 1, -1, 3, 4, YearHistogram.parse("2015:1")));
+		final SearchResults completed = cache.put(new SearchResults("Platform IoT", 1, 2, 3, 4, null));
+
+		assertEquals("2015:1", completed.getRedditYears().encode());
+		final TermResultCache.CachedResults cached = cache.get("Platform IoT");
+		assertTrue(cached.isComplete());
+		assertEquals(2, cached.getResults().getGoogleSearchResultCount());
+		assertEquals(1, cache.getHits());
+	}
+
+	public void testTermWithoutWhitespaceNeedsNoExactSearch() {
+		cache.put(new SearchResults("Platform", 1, 2, 3, 3, null));
+
+		assertTrue(cache.get("Platform").isComplete());
+	}
+}
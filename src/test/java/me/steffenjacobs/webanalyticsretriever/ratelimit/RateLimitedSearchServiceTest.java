@@ -0,0 +1,76 @@
+package me.steffenjacobs.webanalyticsretriever.ratelimit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PropertyResourceBundle;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.GoogleSearchApiService;
+import me.steffenjacobs.webanalyticsretriever.HttpClientFactory;
+import me.steffenjacobs.webanalyticsretriever.SearchSource;
+import me.steffenjacobs.webanalyticsretriever.Settings;
+import me.steffenjacobs.webanalyticsretriever.loadtest.LatencyDistribution;
+import me.steffenjacobs.webanalyticsretriever.loadtest.StubSearchServer;
+import me.steffenjacobs.webanalyticsretriever.metrics.SourceMetrics;
+
+/**
+ * Tests that the {@link RateLimitedSearchService} only returns the quota of
+ * Google Search API requests that have not reached the API.
+ *
+ * @author Steffen Jacobs
+ */
+public class RateLimitedSearchServiceTest extends TestCase {
+
+	private File quotaFile;
+	private CloseableHttpAsyncClient client;
+	private AdaptiveRateLimiter rateLimiter;
+
+	@Override
+	protected void setUp() throws IOException {
+		quotaFile = File.createTempFile("quota", ".properties");
+		quotaFile.delete();
+		client = HttpClientFactory.createAsyncClient(new Settings(new PropertyResourceBundle(new StringReader(""))));
+		rateLimiter = new AdaptiveRateLimiter("google-api", 0, 0, 1, 10, new DailyQuota(quotaFile, 10, ZoneId.of("UTC")));
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		client.close();
+		quotaFile.delete();
+	}
+
+	public void testReturnsQuotaOfRequestNotSent() throws IOException {
+		// a port nobody listens on
+		final int port;
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			port = socket.getLocalPort();
+		}
+		final RateLimitedSearchService service = new RateLimitedSearchService(
+				new GoogleSearchApiService("http://127.0.0.1:" + port + "/customsearch/v1", "key", client, rateLimiter, new SourceMetrics()), rateLimiter);
+
+		assertEquals(-1, service.search("Thingworx"));
+		assertEquals(10, rateLimiter.getRemainingQuota());
+	}
+
+	public void testKeepsQuotaOfFailedRequest() throws IOException {
+		final Map<SearchSource, StubSearchServer.Behavior> behaviors = new EnumMap<>(SearchSource.class);
+		behaviors.put(SearchSource.GOOGLE_SEARCH_API, new StubSearchServer.Behavior(LatencyDistribution.fixed(0), 1, 0, -1));
+		try (StubSearchServer server = new StubSearchServer(0, 1, behaviors)) {
+			server.start();
+			final RateLimitedSearchService service = new RateLimitedSearchService(
+					new GoogleSearchApiService(server.getBaseUrl(SearchSource.GOOGLE_SEARCH_API), "key", client, rateLimiter, new SourceMetrics()), rateLimiter);
+
+			// the API may have counted the request answered with HTTP status 500
+			assertEquals(-1, service.search("Thingworx"));
+			assertEquals(9, rateLimiter.getRemainingQuota());
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package me.steffenjacobs.webanalyticsretriever.sink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import me.steffenjacobs.webanalyticsretriever.domain.shared.SearchResults;
+
+/**
+ * Tests that {@link AsyncResultSink} only reports batches as flushed that all
+ * sinks have written.
+ *
+ * @author Steffen Jacobs
+ */
+public class AsyncResultSinkTest extends TestCase {
+
+	public void testReportsFlushedBatches() throws IOException {
+		final RecordingSink sink = new RecordingSink(false);
+		final List<String> flushed = Collections.synchronizedList(new ArrayList<>());
+		final AsyncResultSink asyncSink = new AsyncResultSink(Collections.singletonList(sink), 1, 10, batch -> batch.forEach(v -> flushed.add(v.getTerm())));
+		asyncSink.write(results("a"));
+		asyncSink.write(results("b"));
+		asyncSink.close();
+
+		assertEquals(Arrays.asList("a", "b"), sink.written);
+		assertEquals(Arrays.asList("a", "b"), flushed);
+	}
+
+	public void testDoesNotReportBatchesAfterFailure() {
+		final RecordingSink working = new RecordingSink(false);
+		final RecordingSink failing = new RecordingSink(true);
+		final List<String> flushed = Collections.synchronizedList(new ArrayList<>());
+		final AsyncResultSink asyncSink = new AsyncResultSink(Arrays.asList(working, failing), 1, 10, batch -> batch.forEach(v -> flushed.add(v.getTerm())));
+		asyncSink.write(results("a"));
+		try {
+			asyncSink.close();
+			fail("The write failure has not been reported.");
+		} catch (IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+
+		assertEquals(Collections.singletonList("a"), working.written);
+		assertTrue(flushed.isEmpty());
+	}
+
+	private static SearchResults results(String term) {
+		return new SearchResults(term, 1, 2, 3, 4);
+	}
+
+	private static class RecordingSink implements ResultSink {
+		private final boolean failing;
+		private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+
+		RecordingSink(boolean failing) {
+			this.failing = failing;
+		}
+
+		@Override
+		public void write(SearchResults results) throws IOException {
+			if (failing) {
+				throw new IOException("disk full");
+			}
+			written.add(results.getTerm());
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
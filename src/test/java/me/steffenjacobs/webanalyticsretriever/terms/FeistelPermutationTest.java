@@ -0,0 +1,52 @@
+package me.steffenjacobs.webanalyticsretriever.terms;
+
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the {@link FeistelPermutation} is a bijection for any size and
+ * depends only on its seed.
+ *
+ * @author Steffen Jacobs
+ */
+public class FeistelPermutationTest extends TestCase {
+
+	public void testIsBijectionForAnySize() {
+		for (long size : new long[] { 1, 2, 3, 7, 15, 16, 17, 100, 1000, 1023, 4097, 10001 }) {
+			for (long seed = 0; seed < 5; seed++) {
+				final FeistelPermutation permutation = new FeistelPermutation(size, seed);
+				final BitSet seen = new BitSet((int) size);
+				for (long position = 0; position < size; position++) {
+					final long value = permutation.apply(position);
+					assertTrue(size + ": " + value, value >= 0 && value < size);
+					assertFalse(size + ": " + value + " twice", seen.get((int) value));
+					seen.set((int) value);
+				}
+				assertEquals(size, seen.cardinality());
+			}
+		}
+	}
+
+	public void testIsDeterministicForSeed() {
+		final FeistelPermutation first = new FeistelPermutation(1000, 42);
+		final FeistelPermutation second = new FeistelPermutation(1000, 42);
+		final FeistelPermutation other = new FeistelPermutation(1000, 43);
+		boolean differs = false;
+		for (long position = 0; position < 1000; position++) {
+			assertEquals(first.apply(position), second.apply(position));
+			differs |= first.apply(position) != other.apply(position);
+		}
+		assertTrue(differs);
+	}
+
+	public void testRejectsPositionOutOfRange() {
+		final FeistelPermutation permutation = new FeistelPermutation(10, 1);
+		try {
+			permutation.apply(10);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package me.steffenjacobs.webanalyticsretriever.terms;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the {@link TermSource} reads the distinct platform names of a
+ * terms file and extends them with the markers.
+ *
+ * @author Steffen Jacobs
+ */
+public class TermSourceTest extends TestCase {
+
+	private static final List<String> MARKERS = Arrays.asList("IoT", "Smart Home");
+
+	private File file;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = File.createTempFile("terms", ".txt");
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+	}
+
+	public void testSkipsDuplicatesAndBlankLines() throws IOException {
+		final TermSource source = load("openHAB\r\n\nThingworx\n   \nopenHAB\nFHEM");
+
+		assertEquals(3, source.getPlatformNames());
+		assertEquals(9, source.size());
+		assertEquals(Arrays.asList("openHAB", "openHAB IoT", "openHAB Smart Home", "Thingworx", "Thingworx IoT", "Thingworx Smart Home", "FHEM", "FHEM IoT",
+				"FHEM Smart Home"), terms(source));
+	}
+
+	public void testPermutedContainsEachTermOnce() throws IOException {
+		final StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			lines.append("Platform").append(i % 700).append('\n');
+		}
+		final TermSource source = load(lines.toString());
+		final List<String> permuted = source.permuted(42);
+
+		assertEquals(2100, permuted.size());
+		assertEquals(new HashSet<>(terms(source)), new HashSet<>(permuted));
+		assertEquals(permuted.size(), new HashSet<>(permuted).size());
+		assertEquals(permuted, source.permuted(42));
+		assertFalse(permuted.equals(source.permuted(43)));
+	}
+
+	public void testFingerprintIgnoresOrderAndDuplicates() throws IOException {
+		final String fingerprint = load("openHAB\nThingworx\nFHEM\n").getFingerprint();
+
+		assertEquals(fingerprint, load("FHEM\nopenHAB\n\nThingworx\nFHEM").getFingerprint());
+		assertFalse(fingerprint.equals(load("openHAB\nThingworx\n").getFingerprint()));
+		load("openHAB\nThingworx\nFHEM\n");
+		assertFalse(fingerprint.equals(TermSource.load(file.toPath(), Collections.singletonList("IoT")).getFingerprint()));
+	}
+
+	private TermSource load(String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return TermSource.load(file.toPath(), MARKERS);
+	}
+
+	private static List<String> terms(TermSource source) {
+		final List<String> terms = new ArrayList<>();
+		for (int i = 0; i < source.size(); i++) {
+			terms.add(source.get(i));
+		}
+		return terms;
+	}
+}